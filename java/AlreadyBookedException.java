@@ -0,0 +1,19 @@
+/**
+ * Thrown by DBProject.bookRoom when the room is already booked on the
+ * requested day, by this process or by another one.
+ *
+ */
+public class AlreadyBookedException extends Exception {
+
+   private static final long serialVersionUID = 1L;
+
+   /**
+    * @param hotelID the hotel of the room
+    * @param roomNo the room
+    * @param bookingDate the day asked for
+    */
+   public AlreadyBookedException (int hotelID, int roomNo, java.sql.Date bookingDate) {
+      super("Room " + roomNo + " of hotel " + hotelID + " is already booked on " + bookingDate + ".");
+   }//end AlreadyBookedException
+
+}//end AlreadyBookedException
@@ -0,0 +1,983 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Column store copy of Booking and Repair for the reports of menu options
+ * 10 and 12 to 16, so they are answered without a query. Every column is
+ * an array of ints, longs or fixed width bytes in a file mapped into
+ * memory (analytics.dir/booking.snap and repair.snap), one column after
+ * the other. Prices are kept in cents and dates as days since 1970-01-01.
+ * A report scans the columns it needs in parallel, analytics.chunkRows
+ * rows per fork-join task.
+ *
+ * The files outlive the process: on start they are mapped as they are and
+ * only the rows added since are read. The header names the database the
+ * rows came from (a hash of the URLs of its shards); files of another
+ * database, or whose rows no longer match the table (a lowest ID that
+ * differs, or more rows than the table has), are built again. --load
+ * deletes them. A background thread reads the new rows every
+ * analytics.refreshMs, those whose bID or rID is above the highest one
+ * loaded minus analytics.idWindow. The window catches the IDs other
+ * clients took from their ID blocks (see IdAllocator) before the highest
+ * one loaded but committed after it; a row committed later than that is
+ * missed until the files are deleted and built again. Bookings and repairs
+ * are never updated or deleted by the menu, so the new rows are all there
+ * is to read.
+ *
+ * Values that do not fit the columns (IDs beyond int, dates not in ISO
+ * format) mark the snapshot stale, and the reports fall back to SQL.
+ * Option 11 is answered by PriceIndex instead.
+ *
+ */
+public class AnalyticsSnapshot {
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   // Booking columns
+   private static final int B_ID = 0;
+   private static final int B_CUSTOMER = 1;
+   private static final int B_HOTEL = 2;
+   private static final int B_ROOM = 3;
+   private static final int B_DAY = 4;
+   private static final int B_CENTS = 5;
+   private static final int[] BOOKING_WIDTHS = {8, 4, 4, 4, 4, 8};
+
+   // Repair columns
+   private static final int R_ID = 0;
+   private static final int R_HOTEL = 1;
+   private static final int R_ROOM = 2;
+   private static final int R_COMPANY = 3;
+   private static final int R_DAY = 4;
+   private static final int R_TYPE = 5;
+   private static final int TYPE_BYTES = 10;
+   private static final int[] REPAIR_WIDTHS = {8, 4, 4, 4, 4, TYPE_BYTES};
+
+   private static final String NEW_BOOKINGS =
+      "SELECT bID, customer, hotelID, roomNo, bookingDate, price FROM Booking WHERE bID > ?";
+   private static final String NEW_REPAIRS =
+      "SELECT rID, hotelID, roomNo, mCompany, repairDate, repairType FROM Repair WHERE rID > ?";
+   private static final String NEW_COMPANIES =
+      "SELECT cmpID, name FROM MaintenanceCompany WHERE cmpID > ?";
+   // one row per shard
+   private static final String BOOKING_EXTENT = "SELECT MIN(bID), Count(*) FROM Booking";
+   private static final String REPAIR_EXTENT = "SELECT MIN(rID), Count(*) FROM Repair";
+
+   // the most companies option 15 counts in an array
+   private static final int MAX_COMPANY_ID = 1 << 22;
+
+   /*
+    * The rows of a table visible to the reports: the mapped file, its
+    * capacity and the number of rows written. Replaced as a whole when
+    * rows are added or the file grows.
+    */
+   private static final class View {
+      final MappedByteBuffer map;
+      final int capacity;
+      final int rows;
+      final int[] offsets;
+
+      View (MappedByteBuffer map, int capacity, int rows, int[] offsets) {
+         this.map = map;
+         this.capacity = capacity;
+         this.rows = rows;
+         this.offsets = offsets;
+      }
+
+      int getInt (int col, int row) {
+         return map.getInt(offsets[col] + row * 4);
+      }
+
+      long getLong (int col, int row) {
+         return map.getLong(offsets[col] + row * 8);
+      }
+   }//end View
+
+   /*
+    * One table in one file: a header (magic, capacity, rows, highest ID
+    * loaded, the column widths and the source database), then the columns,
+    * each sized for the capacity. The file is replaced by a larger one when
+    * it is full. Only the refresh thread writes.
+    */
+   private static final class Table {
+      static final int HEADER = 64;
+      static final long MAGIC = 0x44425053_4E415031L;
+      static final int SOURCE = 56;
+
+      final File file;
+      final int[] widths;
+      final long source;
+      RandomAccessFile raf;
+      volatile View view;
+      long watermark = Long.MIN_VALUE;
+
+      Table (File file, int[] widths, long source) {
+         this.file = file;
+         this.widths = widths;
+         this.source = source;
+      }
+
+      // maps the file, or creates an empty one when it is missing or not a snapshot of this table and database
+      void open (int initialCapacity) throws IOException {
+         if (file.exists()) {
+            raf = new RandomAccessFile(file, "rw");
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            map.order(ByteOrder.nativeOrder());
+            if (isValid(map, raf.length())) {
+               int capacity = map.getInt(8);
+               view = new View(map, capacity, map.getInt(12), offsets(capacity));
+               watermark = map.getLong(16);
+               return;
+            }//end if
+            raf.close();
+            if (!file.delete()) throw new IOException("cannot replace " + file);
+         }//end if
+         File dir = file.getAbsoluteFile().getParentFile();
+         if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+         create(file, initialCapacity);
+         raf = new RandomAccessFile(file, "rw");
+         view = new View(map(raf), initialCapacity, 0, offsets(initialCapacity));
+         watermark = Long.MIN_VALUE;
+      }
+
+      // drops every row, starting over with an empty file
+      void reset (int initialCapacity) throws IOException {
+         raf.close();
+         if (!file.delete()) throw new IOException("cannot replace " + file);
+         open(initialCapacity);
+      }
+
+      private boolean isValid (ByteBuffer map, long length) {
+         if (length < HEADER || map.getLong(0) != MAGIC || map.getInt(24) != widths.length
+             || map.getLong(SOURCE) != source) return false;
+         for (int c = 0; c < widths.length; ++c)
+            if (map.getInt(28 + 4 * c) != widths[c]) return false;
+         long capacity = map.getInt(8);
+         return length == size(capacity) && map.getInt(12) >= 0 && map.getInt(12) <= capacity;
+      }
+
+      // makes room for more rows, moving the table to a larger file when needed
+      void ensure (int more) throws IOException {
+         View v = view;
+         if ((long) v.rows + more <= v.capacity) return;
+         long capacity = Math.max(2L * v.capacity, (long) v.rows + more);
+         if (size(capacity) > Integer.MAX_VALUE) capacity = (Integer.MAX_VALUE - HEADER) / rowWidth();
+         if (capacity < (long) v.rows + more) throw new IOException(file + " is full");
+
+         File tmp = new File(file.getPath() + ".tmp");
+         create(tmp, (int) capacity);
+         RandomAccessFile grown = new RandomAccessFile(tmp, "rw");
+         MappedByteBuffer map = map(grown);
+         int[] offsets = offsets((int) capacity);
+         for (int c = 0; c < widths.length; ++c) {
+            ByteBuffer src = v.map.duplicate();
+            src.limit(v.offsets[c] + v.rows * widths[c]).position(v.offsets[c]);
+            ByteBuffer dst = map.duplicate();
+            dst.position(offsets[c]);
+            dst.put(src);
+         }//end for
+         map.putInt(12, v.rows);
+         map.putLong(16, watermark);
+         map.force();
+         if (!tmp.renameTo(file)) {
+            grown.close();
+            throw new IOException("cannot replace " + file);
+         }//end if
+         // readers of the old view keep its mapping until they are done
+         raf.close();
+         raf = grown;
+         view = new View(map, (int) capacity, v.rows, offsets);
+      }
+
+      // makes rows up to the given count visible to the reports
+      void publish (int rows) {
+         View v = view;
+         view = new View(v.map, v.capacity, rows, v.offsets);
+      }
+
+      // writes the row count and the highest ID to the file, after the rows themselves
+      void sync () {
+         View v = view;
+         v.map.force();
+         v.map.putInt(12, v.rows);
+         v.map.putLong(16, watermark);
+         v.map.force();
+      }
+
+      void close () throws IOException {
+         sync();
+         raf.close();
+      }
+
+      private int rowWidth () {
+         int w = 0;
+         for (int width : widths) w += width;
+         return w;
+      }
+
+      private long size (long capacity) {
+         return HEADER + capacity * rowWidth();
+      }
+
+      private int[] offsets (int capacity) {
+         int[] offsets = new int[widths.length];
+         int pos = HEADER;
+         for (int c = 0; c < widths.length; ++c) {
+            offsets[c] = pos;
+            pos += widths[c] * capacity;
+         }//end for
+         return offsets;
+      }
+
+      private void create (File f, int capacity) throws IOException {
+         RandomAccessFile out = new RandomAccessFile(f, "rw");
+         try {
+            out.setLength(0);
+            out.setLength(size(capacity));
+            MappedByteBuffer map = map(out);
+            map.putLong(0, MAGIC);
+            map.putInt(8, capacity);
+            map.putInt(12, 0);
+            map.putLong(16, Long.MIN_VALUE);
+            map.putInt(24, widths.length);
+            for (int c = 0; c < widths.length; ++c) map.putInt(28 + 4 * c, widths[c]);
+            map.putLong(SOURCE, source);
+            map.force();
+         } finally {
+            out.close();
+         }//end try
+      }
+
+      private static MappedByteBuffer map (RandomAccessFile f) throws IOException {
+         MappedByteBuffer map = f.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, f.length());
+         map.order(ByteOrder.nativeOrder());
+         return map;
+      }
+   }//end Table
+
+   /*
+    * The part of a report computed from rows from to to of a view, and how
+    * two such parts combine.
+    */
+   private interface Reducer<T> {
+      T scan (View v, int from, int to);
+      T combine (T a, T b);
+   }//end Reducer
+
+   // splits rows from to to until each task has at most chunkRows of them
+   private static final class Scan<T> extends RecursiveTask<T> {
+      private static final long serialVersionUID = 1L;
+
+      private final Reducer<T> _reducer;
+      private final View _view;
+      private final int _from;
+      private final int _to;
+      private final int _chunkRows;
+
+      Scan (Reducer<T> reducer, View view, int from, int to, int chunkRows) {
+         this._reducer = reducer;
+         this._view = view;
+         this._from = from;
+         this._to = to;
+         this._chunkRows = chunkRows;
+      }
+
+      protected T compute () {
+         if (_to - _from <= _chunkRows) return _reducer.scan(_view, _from, _to);
+         int mid = (_from + _to) >>> 1;
+         Scan<T> left = new Scan<T>(_reducer, _view, _from, mid, _chunkRows);
+         left.fork();
+         T right = new Scan<T>(_reducer, _view, mid, _to, _chunkRows).compute();
+         return _reducer.combine(left.join(), right);
+      }
+   }//end Scan
+
+   // row numbers in table order
+   private static final class Rows {
+      int[] rows = new int[16];
+      int size = 0;
+
+      void add (int row) {
+         if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+         rows[size++] = row;
+      }
+
+      Rows addAll (Rows more) {
+         for (int i = 0; i < more.size; ++i) add(more.rows[i]);
+         return this;
+      }
+   }//end Rows
+
+   private final DBProject _esql;
+   private final Table _bookings;
+   private final Table _repairs;
+   private final ForkJoinPool _workers;
+   private final ScheduledExecutorService _refresher;
+   private final int _chunkRows;
+   private final long _idWindow;
+
+   // IDs above the watermark minus the window that are loaded, so they are not loaded twice
+   private final Set<Long> _recentBookings = new HashSet<Long>();
+   private final Set<Long> _recentRepairs = new HashSet<Long>();
+
+   // maintenance companies by name, trailing spaces removed; replaced as a whole
+   private volatile Map<String, int[]> _companies = new HashMap<String, int[]>();
+   private long _companyWatermark = Long.MIN_VALUE;
+   private volatile int _maxCompany = 0;
+
+   private volatile boolean _stale = false;
+   private volatile long _refreshedAt = 0;
+   private String _lastError = null;
+
+   private AnalyticsSnapshot (DBProject esql, File dir, int threads, int chunkRows, long idWindow) {
+      this._esql = esql;
+      long source = source(esql);
+      this._bookings = new Table(new File(dir, "booking.snap"), BOOKING_WIDTHS, source);
+      this._repairs = new Table(new File(dir, "repair.snap"), REPAIR_WIDTHS, source);
+      this._workers = new ForkJoinPool(threads);
+      this._chunkRows = chunkRows;
+      this._idWindow = idWindow;
+      this._refresher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+         public Thread newThread (Runnable r) {
+            Thread t = new Thread(r, "analytics-refresh");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }//end AnalyticsSnapshot
+
+   /**
+    * Maps the snapshot files, creating them when missing or when they are
+    * not a copy of the tables of esql, reads the rows added since they were
+    * written and starts refreshing them in the background.
+    *
+    * Configured by the analytics.* system properties:
+    *    -Danalytics.dir=analytics      where the files are kept
+    *    -Danalytics.refreshMs=1000     time between two refreshes, 0 for none
+    *    -Danalytics.idWindow=10000     IDs below the highest one read again on refresh
+    *    -Danalytics.threads=<cpus>     threads scanning the columns
+    *    -Danalytics.chunkRows=65536    rows scanned by one task
+    *
+    * @param esql the database to read from
+    * @return the loaded snapshot
+    * @throws java.sql.SQLException when the tables cannot be read
+    * @throws java.io.IOException when the files cannot be mapped
+    */
+   public static AnalyticsSnapshot open (DBProject esql) throws SQLException, IOException {
+      final AnalyticsSnapshot snapshot = new AnalyticsSnapshot(esql, dir(),
+         Integer.getInteger("analytics.threads", Runtime.getRuntime().availableProcessors()),
+         Math.max(1024, Integer.getInteger("analytics.chunkRows", 1 << 16)),
+         Math.max(0, Long.getLong("analytics.idWindow", 10000)));
+      snapshot._bookings.open(1 << 16);
+      snapshot._repairs.open(1 << 14);
+      if (!snapshot.matches(snapshot._bookings, B_ID, BOOKING_EXTENT)) snapshot._bookings.reset(1 << 16);
+      if (!snapshot.matches(snapshot._repairs, R_ID, REPAIR_EXTENT)) snapshot._repairs.reset(1 << 14);
+      snapshot.recent(snapshot._bookings, B_ID, 0, snapshot._recentBookings);
+      snapshot.recent(snapshot._repairs, R_ID, 0, snapshot._recentRepairs);
+      snapshot.refresh();
+
+      long refreshMs = Long.getLong("analytics.refreshMs", 1000);
+      if (refreshMs > 0) {
+         snapshot._refresher.scheduleWithFixedDelay(new Runnable() {
+            public void run () {
+               snapshot.refreshQuietly();
+            }
+         }, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+      }//end if
+      return snapshot;
+   }//end open
+
+   /**
+    * Deletes the snapshot files, so the next open builds them again. Run
+    * after the tables are reloaded.
+    *
+    * @throws java.io.IOException when a file cannot be deleted
+    */
+   public static void invalidate () throws IOException {
+      for (String name : new String[] {"booking.snap", "repair.snap"}) {
+         File f = new File(dir(), name);
+         if (f.exists() && !f.delete()) throw new IOException("cannot delete " + f);
+      }//end for
+   }//end invalidate
+
+   /**
+    * Reads the bookings, repairs and maintenance companies added since the
+    * last refresh.
+    *
+    * @throws java.sql.SQLException when the tables cannot be read
+    * @throws java.io.IOException when the files cannot be grown
+    */
+   public synchronized void refresh () throws SQLException, IOException {
+      refreshCompanies();
+      refreshBookings();
+      refreshRepairs();
+      _refreshedAt = System.currentTimeMillis();
+   }//end refresh
+
+   /**
+    * Stops the refresh and writes the row counts to the files.
+    */
+   public void close () {
+      _refresher.shutdown();
+      try {
+         _refresher.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }//end try
+      _workers.shutdown();
+      synchronized (this) {
+         try {
+            _bookings.close();
+            _repairs.close();
+         } catch (IOException e) {
+            System.err.println("Analytics snapshot not closed: " + e.getMessage());
+         }//end try
+      }//end synchronized
+   }//end close
+
+   /**
+    * Option 10: the bookings of a hotel from a day to seven days later.
+    *
+    * @param hotelID the hotel
+    * @param fromDay the first day, as days since 1970-01-01
+    * @return rows of room number and booking date, or null when the snapshot cannot tell
+    */
+   public List<String[]> bookingsForAWeek (final int hotelID, final int fromDay) {
+      if (_stale) return null;
+      View v = _bookings.view;
+      Rows found = scan(v, new Reducer<Rows>() {
+         public Rows scan (View v, int from, int to) {
+            Rows rows = new Rows();
+            for (int r = from; r < to; ++r) {
+               if (v.getInt(B_HOTEL, r) != hotelID) continue;
+               int day = v.getInt(B_DAY, r);
+               if (day >= fromDay && day <= fromDay + 7) rows.add(r);
+            }//end for
+            return rows;
+         }
+         public Rows combine (Rows a, Rows b) {
+            return a.addAll(b);
+         }
+      });
+      List<String[]> rows = new ArrayList<String[]>(found.size);
+      for (int i = 0; i < found.size; ++i) {
+         int r = found.rows[i];
+         rows.add(new String[] {String.valueOf(v.getInt(B_ROOM, r)), date(v.getInt(B_DAY, r))});
+      }//end for
+      return rows;
+   }//end bookingsForAWeek
+
+   /**
+    * Option 12: the k highest prices of the bookings of some customers.
+    *
+    * @param customers the customer IDs
+    * @param k the number of prices
+    * @return rows of one price, highest first, or null when the snapshot cannot tell
+    */
+   public List<String[]> topPrices (final long[] customers, final int k) {
+      if (_stale) return null;
+      long[] top = scan(_bookings.view, new Reducer<long[]>() {
+         public long[] scan (View v, int from, int to) {
+            long[] top = new long[0];
+            for (int r = from; r < to; ++r)
+               if (contains(customers, v.getInt(B_CUSTOMER, r))) top = keepTop(top, v.getLong(B_CENTS, r), k);
+            return top;
+         }
+         public long[] combine (long[] a, long[] b) {
+            for (long cents : b) a = keepTop(a, cents, k);
+            return a;
+         }
+      });
+      List<String[]> rows = new ArrayList<String[]>(top.length);
+      for (long cents : top) rows.add(new String[] {price(cents)});
+      return rows;
+   }//end topPrices
+
+   /**
+    * Option 13: the total price of the bookings of some customers at a
+    * hotel for a date range.
+    *
+    * @param hotelID the hotel
+    * @param customers the customer IDs
+    * @param fromDay the first day, as days since 1970-01-01
+    * @param toDay the last day, as days since 1970-01-01
+    * @return one row with the total, null when there are no bookings; or null when the snapshot cannot tell
+    */
+   public List<String[]> totalCost (final int hotelID, final long[] customers, final int fromDay, final int toDay) {
+      if (_stale) return null;
+      long[] total = scan(_bookings.view, new Reducer<long[]>() {
+         public long[] scan (View v, int from, int to) {
+            long[] total = new long[2];
+            for (int r = from; r < to; ++r) {
+               int day = v.getInt(B_DAY, r);
+               if (v.getInt(B_HOTEL, r) != hotelID || day < fromDay || day > toDay
+                   || !contains(customers, v.getInt(B_CUSTOMER, r))) continue;
+               total[0] += v.getLong(B_CENTS, r);
+               ++total[1];
+            }//end for
+            return total;
+         }
+         public long[] combine (long[] a, long[] b) {
+            a[0] += b[0];
+            a[1] += b[1];
+            return a;
+         }
+      });
+      List<String[]> rows = new ArrayList<String[]>(1);
+      rows.add(new String[] {total[1] == 0 ? null : price(total[0])});
+      return rows;
+   }//end totalCost
+
+   /**
+    * Option 14: the repairs made by the maintenance companies of a name.
+    *
+    * @param company the company name
+    * @return rows of repair ID, repair type, hotel and room, or null when the snapshot cannot tell
+    */
+   public List<String[]> repairsBy (String company) {
+      if (_stale) return null;
+      final int[] ids = _companies.get(trim(company));
+      if (ids == null) return new ArrayList<String[]>();
+      View v = _repairs.view;
+      Rows found = scan(v, new Reducer<Rows>() {
+         public Rows scan (View v, int from, int to) {
+            Rows rows = new Rows();
+            for (int r = from; r < to; ++r) {
+               int c = v.getInt(R_COMPANY, r);
+               for (int id : ids) {
+                  if (id == c) {
+                     rows.add(r);
+                     break;
+                  }//end if
+               }//end for
+            }//end for
+            return rows;
+         }
+         public Rows combine (Rows a, Rows b) {
+            return a.addAll(b);
+         }
+      });
+      List<String[]> rows = new ArrayList<String[]>(found.size);
+      byte[] type = new byte[TYPE_BYTES];
+      for (int i = 0; i < found.size; ++i) {
+         int r = found.rows[i];
+         ByteBuffer b = v.map.duplicate();
+         b.position(v.offsets[R_TYPE] + r * TYPE_BYTES);
+         b.get(type);
+         int len = TYPE_BYTES;
+         while (len > 0 && (type[len - 1] == 0 || type[len - 1] == ' ')) --len;
+         rows.add(new String[] {String.valueOf(v.getLong(R_ID, r)), len == 0 ? null : new String(type, 0, len, UTF8),
+                                String.valueOf(v.getInt(R_HOTEL, r)), String.valueOf(v.getInt(R_ROOM, r))});
+      }//end for
+      return rows;
+   }//end repairsBy
+
+   /**
+    * Option 15: the k maintenance companies with the most repairs.
+    *
+    * @param k the number of companies
+    * @return rows of company name and repair count, most repairs first, or null when the snapshot cannot tell
+    * @throws java.sql.SQLException when a company name has to be looked up and the lookup fails
+    */
+   public List<String[]> topCompanies (int k) throws SQLException {
+      final int companies = _maxCompany + 1;
+      if (_stale || companies > MAX_COMPANY_ID) return null;
+      int[] counts = scan(_repairs.view, new Reducer<int[]>() {
+         public int[] scan (View v, int from, int to) {
+            int[] counts = new int[companies];
+            for (int r = from; r < to; ++r) {
+               int c = v.getInt(R_COMPANY, r);
+               if (c >= 0 && c < companies) ++counts[c];
+            }//end for
+            return counts;
+         }
+         public int[] combine (int[] a, int[] b) {
+            for (int i = 0; i < a.length; ++i) a[i] += b[i];
+            return a;
+         }
+      });
+      // count in the high bits, company in the low bits, so sorting sorts by count
+      long[] top = new long[0];
+      for (int c = 0; c < counts.length; ++c)
+         if (counts[c] > 0) top = keepTop(top, ((long) counts[c] << 32) | c, k);
+      List<String[]> rows = new ArrayList<String[]>(top.length);
+      for (long entry : top)
+         rows.add(new String[] {_esql.reference().companyName((int) entry), String.valueOf(entry >>> 32)});
+      return rows;
+   }//end topCompanies
+
+   /**
+    * Option 16: the number of repairs of a room per year.
+    *
+    * @param hotelID the hotel
+    * @param roomNo the room
+    * @return rows of year and repair count, latest year first, or null when the snapshot cannot tell
+    */
+   public List<String[]> repairsPerYear (final int hotelID, final int roomNo) {
+      if (_stale) return null;
+      TreeMap<Integer, Integer> years = scan(_repairs.view, new Reducer<TreeMap<Integer, Integer>>() {
+         public TreeMap<Integer, Integer> scan (View v, int from, int to) {
+            TreeMap<Integer, Integer> years = new TreeMap<Integer, Integer>();
+            for (int r = from; r < to; ++r) {
+               if (v.getInt(R_HOTEL, r) != hotelID || v.getInt(R_ROOM, r) != roomNo) continue;
+               Integer year = Integer.valueOf(civil(v.getInt(R_DAY, r)) / 10000);
+               Integer n = years.get(year);
+               // a repair without a type lists its year but is not counted, as Count(repairType) does
+               int typed = v.map.get(v.offsets[R_TYPE] + r * TYPE_BYTES) == 0 ? 0 : 1;
+               years.put(year, Integer.valueOf(n == null ? typed : n.intValue() + typed));
+            }//end for
+            return years;
+         }
+         public TreeMap<Integer, Integer> combine (TreeMap<Integer, Integer> a, TreeMap<Integer, Integer> b) {
+            for (Map.Entry<Integer, Integer> e : b.entrySet()) {
+               Integer n = a.get(e.getKey());
+               a.put(e.getKey(), Integer.valueOf(e.getValue().intValue() + (n == null ? 0 : n.intValue())));
+            }//end for
+            return a;
+         }
+      });
+      List<String[]> rows = new ArrayList<String[]>(years.size());
+      for (Map.Entry<Integer, Integer> e : years.descendingMap().entrySet())
+         rows.add(new String[] {e.getKey().toString(), e.getValue().toString()});
+      return rows;
+   }//end repairsPerYear
+
+   /**
+    * @return a one line summary of the snapshot
+    */
+   public String stats () {
+      return "bookings=" + _bookings.view.rows + " repairs=" + _repairs.view.rows
+         + " refreshed=" + (System.currentTimeMillis() - _refreshedAt) + "ms ago" + (_stale ? " (stale)" : "");
+   }//end stats
+
+   private <T> T scan (View v, Reducer<T> reducer) {
+      return _workers.invoke(new Scan<T>(reducer, v, 0, v.rows, _chunkRows));
+   }//end scan
+
+   private void refreshQuietly () {
+      try {
+         synchronized (this) {
+            refresh();
+            _lastError = null;
+         }//end synchronized
+      } catch (Exception e) {
+         // reported once, not on every attempt
+         if (!String.valueOf(e.getMessage()).equals(_lastError))
+            System.err.println("Analytics snapshot not refreshed: " + e.getMessage());
+         _lastError = String.valueOf(e.getMessage());
+      }//end try
+   }//end refreshQuietly
+
+   private void refreshCompanies () throws SQLException {
+      final Map<String, int[]> companies = new HashMap<String, int[]>(_companies);
+      final long[] watermark = {_companyWatermark};
+      _esql.scanGlobal(NEW_COMPANIES, new DBProject.PageHandler() {
+         public int page (ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n) {
+               int id = rs.getInt(1);
+               String name = trim(rs.getString(2));
+               int[] ids = companies.get(name);
+               if (ids == null) ids = new int[0];
+               ids = Arrays.copyOf(ids, ids.length + 1);
+               ids[ids.length - 1] = id;
+               companies.put(name, ids);
+               watermark[0] = Math.max(watermark[0], id);
+               if (id > _maxCompany) _maxCompany = id;
+            }//end for
+            return n;
+         }
+      }, Long.valueOf(_companyWatermark));
+      _companyWatermark = watermark[0];
+      _companies = companies;
+   }//end refreshCompanies
+
+   private void refreshBookings () throws SQLException, IOException {
+      final Table t = _bookings;
+      final int first = t.view.rows;
+      _esql.scanQuery(NEW_BOOKINGS, new DBProject.PageHandler() {
+         public int page (ResultSet rs) throws SQLException {
+            int n = 0;
+            int row = t.view.rows;
+            for (; rs.next(); ++n) {
+               long id = number(rs.getBytes(1));
+               if (_recentBookings.contains(Long.valueOf(id))) continue;
+               long customer = number(rs.getBytes(2));
+               long hotel = number(rs.getBytes(3));
+               long room = number(rs.getBytes(4));
+               int day = day(rs, 5);
+               long cents = cents(rs.getBytes(6));
+               if (!fitsInt(customer) || !fitsInt(hotel) || !fitsInt(room) || day == Integer.MIN_VALUE || cents < 0) {
+                  markStale("booking " + id);
+                  continue;
+               }//end if
+               grow(t, row);
+               View v = t.view;
+               v.map.putLong(v.offsets[B_ID] + row * 8, id);
+               v.map.putInt(v.offsets[B_CUSTOMER] + row * 4, (int) customer);
+               v.map.putInt(v.offsets[B_HOTEL] + row * 4, (int) hotel);
+               v.map.putInt(v.offsets[B_ROOM] + row * 4, (int) room);
+               v.map.putInt(v.offsets[B_DAY] + row * 4, day);
+               v.map.putLong(v.offsets[B_CENTS] + row * 8, cents);
+               t.watermark = Math.max(t.watermark, id);
+               ++row;
+            }//end for
+            t.publish(row);
+            return n;
+         }
+      }, Long.valueOf(from(t)));
+      t.sync();
+      recent(t, B_ID, first, _recentBookings);
+   }//end refreshBookings
+
+   private void refreshRepairs () throws SQLException, IOException {
+      final Table t = _repairs;
+      final int first = t.view.rows;
+      _esql.scanQuery(NEW_REPAIRS, new DBProject.PageHandler() {
+         public int page (ResultSet rs) throws SQLException {
+            int n = 0;
+            int row = t.view.rows;
+            for (; rs.next(); ++n) {
+               long id = number(rs.getBytes(1));
+               if (_recentRepairs.contains(Long.valueOf(id))) continue;
+               long hotel = number(rs.getBytes(2));
+               long room = number(rs.getBytes(3));
+               long company = number(rs.getBytes(4));
+               int day = day(rs, 5);
+               byte[] type = rs.getBytes(6);
+               if (!fitsInt(hotel) || !fitsInt(room) || !fitsInt(company) || day == Integer.MIN_VALUE
+                   || (type != null && type.length > TYPE_BYTES)) {
+                  markStale("repair " + id);
+                  continue;
+               }//end if
+               grow(t, row);
+               View v = t.view;
+               v.map.putLong(v.offsets[R_ID] + row * 8, id);
+               v.map.putInt(v.offsets[R_HOTEL] + row * 4, (int) hotel);
+               v.map.putInt(v.offsets[R_ROOM] + row * 4, (int) room);
+               v.map.putInt(v.offsets[R_COMPANY] + row * 4, (int) company);
+               v.map.putInt(v.offsets[R_DAY] + row * 4, day);
+               for (int i = 0; i < TYPE_BYTES; ++i)
+                  v.map.put(v.offsets[R_TYPE] + row * TYPE_BYTES + i, type != null && i < type.length ? type[i] : 0);
+               if (company > _maxCompany) _maxCompany = (int) company;
+               t.watermark = Math.max(t.watermark, id);
+               ++row;
+            }//end for
+            t.publish(row);
+            return n;
+         }
+      }, Long.valueOf(from(t)));
+      t.sync();
+      recent(t, R_ID, first, _recentRepairs);
+   }//end refreshRepairs
+
+   private static File dir () {
+      return new File(System.getProperty("analytics.dir", "analytics"));
+   }//end dir
+
+   // the databases the rows are read from, as a 64-bit FNV-1a hash of the URLs of the shards
+   private static long source (DBProject esql) {
+      long h = 0xcbf29ce484222325L;
+      for (ConnectionPool pool : esql.getShardPools()) {
+         for (byte b : (pool.getUrl() + "\n").getBytes(UTF8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+         }//end for
+      }//end for
+      return h;
+   }//end source
+
+   // false when the rows of the file cannot have come from the table: the lowest IDs differ or the file has more rows
+   private boolean matches (Table t, int idColumn, String extentQuery) throws SQLException {
+      final int idCol = idColumn;
+      View v = t.view;
+      if (v.rows == 0) return true;
+      long lowest = scan(v, new Reducer<long[]>() {
+         public long[] scan (View v, int from, int to) {
+            long[] low = {Long.MAX_VALUE};
+            for (int r = from; r < to; ++r) low[0] = Math.min(low[0], v.getLong(idCol, r));
+            return low;
+         }
+         public long[] combine (long[] a, long[] b) {
+            a[0] = Math.min(a[0], b[0]);
+            return a;
+         }
+      })[0];
+      final long[] extent = {Long.MAX_VALUE, 0};
+      _esql.scanQuery(extentQuery, new DBProject.PageHandler() {
+         public int page (ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n) {
+               if (rs.getBytes(1) != null) extent[0] = Math.min(extent[0], number(rs.getBytes(1)));
+               extent[1] += rs.getLong(2);
+            }//end for
+            return n;
+         }
+      });
+      if (lowest == extent[0] && v.rows <= extent[1]) return true;
+      System.err.println("Analytics snapshot " + t.file + " does not match the database, building it again");
+      return false;
+   }//end matches
+
+   // the ID above which a refresh reads rows
+   private long from (Table t) {
+      return t.watermark == Long.MIN_VALUE ? Long.MIN_VALUE : t.watermark - _idWindow;
+   }//end from
+
+   // makes room for one more row; a full file stops the refresh
+   private static void grow (Table t, int row) throws SQLException {
+      if (row < t.view.capacity) return;
+      t.publish(row);
+      try {
+         t.ensure(1);
+      } catch (IOException e) {
+         throw new SQLException("analytics snapshot: " + e.getMessage());
+      }//end try
+   }//end grow
+
+   // keeps the IDs within the window of the watermark, adding those of the rows from row first on
+   private void recent (Table t, int idColumn, int first, Set<Long> ids) {
+      long low = from(t);
+      for (Iterator<Long> it = ids.iterator(); it.hasNext();)
+         if (it.next().longValue() <= low) it.remove();
+      View v = t.view;
+      for (int r = first; r < v.rows; ++r) {
+         long id = v.getLong(idColumn, r);
+         if (id > low) ids.add(Long.valueOf(id));
+         if (idColumn == R_ID && v.getInt(R_COMPANY, r) > _maxCompany) _maxCompany = v.getInt(R_COMPANY, r);
+      }//end for
+   }//end recent
+
+   private void markStale (String row) {
+      if (!_stale) System.err.println("Analytics snapshot stale: " + row + " does not fit its columns");
+      _stale = true;
+   }//end markStale
+
+   private static boolean fitsInt (long v) {
+      return v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE && v != Long.MIN_VALUE;
+   }//end fitsInt
+
+   // a NUMERIC without decimals as the server sends it, or Long.MIN_VALUE when it is not one
+   private static long number (byte[] v) {
+      if (v == null || v.length == 0 || v.length > 18) return Long.MIN_VALUE;
+      int i = v[0] == '-' ? 1 : 0;
+      if (i == v.length) return Long.MIN_VALUE;
+      long n = 0;
+      for (; i < v.length; ++i) {
+         if (v[i] < '0' || v[i] > '9') return Long.MIN_VALUE;
+         n = n * 10 + (v[i] - '0');
+      }//end for
+      return v[0] == '-' ? -n : n;
+   }//end number
+
+   // a NUMERIC(6,2) as the server sends it in cents, or -1 when it is not a positive amount
+   private static long cents (byte[] v) {
+      if (v == null || v.length == 0 || v.length > 18) return -1;
+      long cents = 0;
+      int decimals = -1;
+      for (byte b : v) {
+         if (b == '.' && decimals < 0) {
+            decimals = 0;
+            continue;
+         }//end if
+         if (b < '0' || b > '9' || decimals == 2) return -1;
+         cents = cents * 10 + (b - '0');
+         if (decimals >= 0) ++decimals;
+      }//end for
+      for (int d = Math.max(decimals, 0); d < 2; ++d) cents *= 10;
+      return cents;
+   }//end cents
+
+   // a date column as days since 1970-01-01, read from the ISO text the server sends, or Integer.MIN_VALUE
+   private static int day (ResultSet rs, int col) throws SQLException {
+      byte[] v = rs.getBytes(col);
+      if (v == null || v.length != 10 || v[4] != '-' || v[7] != '-') return Integer.MIN_VALUE;
+      int y = 0;
+      int m = 0;
+      int d = 0;
+      for (int i = 0; i < 10; ++i) {
+         if (i == 4 || i == 7) continue;
+         if (v[i] < '0' || v[i] > '9') return Integer.MIN_VALUE;
+         if (i < 4) y = y * 10 + v[i] - '0';
+         else if (i < 7) m = m * 10 + v[i] - '0';
+         else d = d * 10 + v[i] - '0';
+      }//end for
+      return Input.epochDay(y, m, d);
+   }//end day
+
+   // a day since 1970-01-01 as yyyymmdd
+   private static int civil (int epochDay) {
+      int z = epochDay + 719468;
+      int era = (z >= 0 ? z : z - 146096) / 146097;
+      int dayOfEra = z - era * 146097;
+      int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+      int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+      int mp = (5 * dayOfYear + 2) / 153;
+      int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+      int month = mp < 10 ? mp + 3 : mp - 9;
+      int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+      return year * 10000 + month * 100 + day;
+   }//end civil
+
+   // a day since 1970-01-01 as the database prints a DATE
+   private static String date (int epochDay) {
+      int c = civil(epochDay);
+      String y = String.valueOf(c / 10000);
+      int m = c / 100 % 100;
+      int d = c % 100;
+      return "0000".substring(Math.min(y.length(), 4)) + y + (m < 10 ? "-0" : "-") + m + (d < 10 ? "-0" : "-") + d;
+   }//end date
+
+   // an amount in cents as the database prints a NUMERIC(n,2)
+   private static String price (long cents) {
+      return cents / 100 + (cents % 100 < 10 ? ".0" : ".") + cents % 100;
+   }//end price
+
+   private static boolean contains (long[] ids, int id) {
+      for (long l : ids)
+         if (l == id) return true;
+      return false;
+   }//end contains
+
+   // adds a value to a descending array of at most k values
+   private static long[] keepTop (long[] top, long value, int k) {
+      if (top.length == k && (k == 0 || value <= top[k - 1])) return top;
+      int pos = top.length;
+      while (pos > 0 && top[pos - 1] < value) --pos;
+      long[] next = new long[Math.min(k, top.length + 1)];
+      System.arraycopy(top, 0, next, 0, pos);
+      next[pos] = value;
+      System.arraycopy(top, pos, next, pos + 1, next.length - pos - 1);
+      return next;
+   }//end keepTop
+
+   // CHAR(n) ignores trailing spaces
+   private static String trim (String s) {
+      int end = s.length();
+      while (end > 0 && s.charAt(end - 1) == ' ') --end;
+      return s.substring(0, end);
+   }//end trim
+
+}//end AnalyticsSnapshot
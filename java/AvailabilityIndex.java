@@ -0,0 +1,222 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory room occupancy of every hotel, used to answer "how many rooms
+ * of hotel H are free on day D (or from D1 to D2)" without a query.
+ *
+ * Each hotel keeps its room numbers in a sorted array and, per room, a
+ * bitmap with one bit per day that is set when the room is booked on that
+ * day. Bit i stands for the day baseDay + i, where baseDay is the earliest
+ * booking found when the index was built.
+ *
+ * The index only sees bookings made through this process after it was
+ * built. A hotel whose bookings it can no longer represent (a room it does
+ * not know, or a day before baseDay) is marked stale, and callers fall
+ * back to SQL for it.
+ *
+ */
+public class AvailabilityIndex {
+
+   private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+   /*
+    * The rooms of one hotel and their occupancy. Guarded by its own monitor.
+    */
+   private static final class Hotel {
+      int[] roomNos = new int[0];
+      BitSet[] booked = new BitSet[0];
+      boolean stale = false;
+
+      int indexOf(int roomNo) {
+         return Arrays.binarySearch(roomNos, roomNo);
+      }
+
+      void addRoom(int roomNo) {
+         int pos = indexOf(roomNo);
+         if (pos >= 0) return;
+         pos = -pos - 1;
+         int[] rooms = new int[roomNos.length + 1];
+         BitSet[] bits = new BitSet[booked.length + 1];
+         System.arraycopy(roomNos, 0, rooms, 0, pos);
+         System.arraycopy(booked, 0, bits, 0, pos);
+         rooms[pos] = roomNo;
+         bits[pos] = new BitSet();
+         System.arraycopy(roomNos, pos, rooms, pos + 1, roomNos.length - pos);
+         System.arraycopy(booked, pos, bits, pos + 1, booked.length - pos);
+         roomNos = rooms;
+         booked = bits;
+      }
+   }//end Hotel
+
+   private final ConcurrentHashMap<Integer, Hotel> _hotels = new ConcurrentHashMap<Integer, Hotel>();
+   private int _baseDay;
+
+   private AvailabilityIndex () {
+   }
+
+   /**
+    * Builds the index from the Room and Booking tables.
+    *
+    * @param esql the database to read from
+    * @return the loaded index
+    * @throws java.sql.SQLException when the tables cannot be read
+    */
+   public static AvailabilityIndex build (DBProject esql) throws SQLException {
+      final AvailabilityIndex index = new AvailabilityIndex();
+
+      // one row per shard
+      final int[] first = {Integer.MAX_VALUE};
+      esql.scanQuery("SELECT MIN(bookingDate) FROM Booking", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n)
+               if (rs.getDate(1) != null) first[0] = Math.min(first[0], epochDay(rs.getDate(1)));
+            return n;
+         }
+      });
+      index._baseDay = first[0] != Integer.MAX_VALUE ? first[0] : epochDay(new java.util.Date());
+
+      esql.scanQuery("SELECT hotelID, roomNo FROM Room ORDER BY hotelID, roomNo", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n)
+               index.hotel(rs.getInt(1)).addRoom(rs.getInt(2));
+            return n;
+         }
+      });
+      esql.scanQuery("SELECT hotelID, roomNo, bookingDate FROM Booking", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n)
+               index.booked(rs.getInt(1), rs.getInt(2), epochDay(rs.getDate(3)));
+            return n;
+         }
+      });
+      return index;
+   }//end build
+
+   /**
+    * Records a room created after the index was built.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNo the room number
+    */
+   public void roomAdded (int hotelID, int roomNo) {
+      Hotel h = hotel(hotelID);
+      synchronized (h) {
+         h.addRoom(roomNo);
+      }//end synchronized
+   }//end roomAdded
+
+   /**
+    * Records a booking.
+    *
+    * @param hotelID the hotel of the booked room
+    * @param roomNo the booked room
+    * @param day the booking date as days since 1970-01-01 (see epochDay)
+    */
+   public void booked (int hotelID, int roomNo, int day) {
+      Hotel h = hotel(hotelID);
+      synchronized (h) {
+         int pos = h.indexOf(roomNo);
+         if (pos < 0 || day < _baseDay) {
+            h.stale = true;
+            return;
+         }//end if
+         h.booked[pos].set(day - _baseDay);
+      }//end synchronized
+   }//end booked
+
+   /**
+    * Counts the rooms of a hotel that are not booked on any day from
+    * fromDay to toDay (both included).
+    *
+    * @param hotelID the hotel
+    * @param fromDay first day, as days since 1970-01-01
+    * @param toDay last day, as days since 1970-01-01
+    * @return the number of free rooms, or -1 when the index cannot tell
+    */
+   public int availableRooms (int hotelID, int fromDay, int toDay) {
+      Hotel h = _hotels.get(Integer.valueOf(hotelID));
+      if (h == null) return -1;
+      synchronized (h) {
+         if (h.stale) return -1;
+         int from = Math.max(0, fromDay - _baseDay);
+         int to = toDay - _baseDay;
+         int free = 0;
+         for (BitSet bits : h.booked) {
+            int next = bits.nextSetBit(from);
+            if (next < 0 || next > to) ++free;
+         }//end for
+         return free;
+      }//end synchronized
+   }//end availableRooms
+
+   /**
+    * Tells whether a room is booked on a day.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNo the room
+    * @param day the day, as days since 1970-01-01
+    * @return 1 when the room is booked, 0 when it is free, -1 when the index cannot tell
+    */
+   public int bookedOn (int hotelID, int roomNo, int day) {
+      Hotel h = _hotels.get(Integer.valueOf(hotelID));
+      if (h == null) return -1;
+      synchronized (h) {
+         int pos = h.indexOf(roomNo);
+         if (h.stale || pos < 0) return -1;
+         if (day < _baseDay) return -1;
+         return h.booked[pos].get(day - _baseDay) ? 1 : 0;
+      }//end synchronized
+   }//end bookedOn
+
+   /**
+    * Counts the rooms of a hotel that have never been booked.
+    *
+    * @param hotelID the hotel
+    * @return the number of rooms without bookings, or -1 when the index cannot tell
+    */
+   public int unbookedRooms (int hotelID) {
+      Hotel h = _hotels.get(Integer.valueOf(hotelID));
+      if (h == null) return -1;
+      synchronized (h) {
+         if (h.stale) return -1;
+         int free = 0;
+         for (BitSet bits : h.booked)
+            if (bits.isEmpty()) ++free;
+         return free;
+      }//end synchronized
+   }//end unbookedRooms
+
+   private Hotel hotel (int hotelID) {
+      Integer key = Integer.valueOf(hotelID);
+      Hotel h = _hotels.get(key);
+      if (h == null) {
+         Hotel created = new Hotel();
+         h = _hotels.putIfAbsent(key, created);
+         if (h == null) h = created;
+      }//end if
+      return h;
+   }//end hotel
+
+   /**
+    * @param date a date in the default time zone
+    * @return the number of days between 1970-01-01 and date
+    */
+   public static int epochDay (java.util.Date date) {
+      Calendar cal = Calendar.getInstance();
+      cal.setTime(date);
+      Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+      utc.clear();
+      utc.set(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH));
+      return (int) Math.floor(utc.getTimeInMillis() / (double) MILLIS_PER_DAY);
+   }//end epochDay
+
+}//end AvailabilityIndex
@@ -0,0 +1,202 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a workload file of menu operations without prompts. Each line holds
+ * one operation and its named arguments (see Operation), for instance
+ *
+ *    bookRoom customer=12 hotel=381 room=5 date=05/12/2015 people=2 price=150
+ *    listRepairsMade company="iqcq"
+ *
+ * Empty lines and lines starting with # are skipped. Values containing
+ * spaces are written in double quotes.
+ *
+ * Operations are spread over a number of lanes that run in parallel.
+ * Operations naming the same hotel always go to the same lane, so they run
+ * in file order (a room is added before it is booked); the others are
+ * dealt round robin. Report rows are dropped unless batch.print is set.
+ * When the file is done, a throughput and latency summary per operation
+ * is printed.
+ *
+ */
+public class BatchRunner {
+
+   // marks the end of the workload in a lane queue
+   private static final Object[] END = new Object[0];
+
+   private final DBProject _esql;
+   private final int _lanes;
+   private final boolean _print = Boolean.getBoolean("batch.print");
+
+   private final Map<Operation, LatencyHistogram> _latencies =
+      new EnumMap<Operation, LatencyHistogram>(Operation.class);
+   private final Map<Operation, AtomicLong> _errors = new EnumMap<Operation, AtomicLong>(Operation.class);
+
+   /**
+    * @param esql the database to run against
+    * @param lanes the number of operations run at the same time
+    */
+   public BatchRunner (DBProject esql, int lanes) {
+      this._esql = esql;
+      this._lanes = Math.max(1, lanes);
+      for (Operation op : Operation.values()) {
+         _latencies.put(op, new LatencyHistogram());
+         _errors.put(op, new AtomicLong());
+      }//end for
+   }//end BatchRunner
+
+   /**
+    * Runs every operation of a workload file and prints the summary.
+    *
+    * @param file the workload file, or "-" for standard in
+    * @throws java.io.IOException when the file cannot be read
+    * @throws InterruptedException when interrupted while waiting for the lanes
+    */
+   public void run (String file) throws IOException, InterruptedException {
+      BufferedReader reader = file.equals("-")
+         ? new BufferedReader(new InputStreamReader(System.in))
+         : new BufferedReader(new FileReader(new File(file)));
+
+      List<BlockingQueue<Object[]>> queues = new ArrayList<BlockingQueue<Object[]>>();
+      List<Thread> workers = new ArrayList<Thread>();
+      for (int i = 0; i < _lanes; ++i) {
+         final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<Object[]>(256);
+         Thread t = new Thread(new Runnable() {
+            public void run () {
+               lane(queue);
+            }
+         }, "batch-lane-" + i);
+         queues.add(queue);
+         workers.add(t);
+         t.start();
+      }//end for
+
+      long start = System.nanoTime();
+      int lineNo = 0;
+      int next = 0;
+      try {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            ++lineNo;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) continue;
+
+            Operation op;
+            Map<String, String> args = new LinkedHashMap<String, String>();
+            try {
+               op = parse(line, args);
+            } catch (IllegalArgumentException e) {
+               System.err.println("line " + lineNo + ": " + e.getMessage());
+               continue;
+            }//end try
+
+            int lane;
+            if (args.containsKey("hotel")) {
+               lane = (args.get("hotel").trim().hashCode() & 0x7fffffff) % _lanes;
+            } else {
+               lane = next;
+               next = (next + 1) % _lanes;
+            }//end if
+            queues.get(lane).put(new Object[] {Integer.valueOf(lineNo), op, args});
+         }//end while
+      } finally {
+         reader.close();
+         for (BlockingQueue<Object[]> queue : queues) queue.put(END);
+         for (Thread t : workers) t.join();
+      }//end try
+      summary(System.nanoTime() - start);
+   }//end run
+
+   @SuppressWarnings("unchecked")
+   private void lane (BlockingQueue<Object[]> queue) {
+      while (true) {
+         Object[] task;
+         try {
+            task = queue.take();
+         } catch (InterruptedException e) {
+            return;
+         }//end try
+         if (task == END) return;
+
+         Operation op = (Operation) task[1];
+         ResultPrinter out = _print ? ResultPrinter.fromSystemProperties() : ResultPrinter.discard();
+         long t0 = System.nanoTime();
+         try {
+            op.execute(_esql, (Map<String, String>) task[2], out);
+            _latencies.get(op).record(System.nanoTime() - t0);
+         } catch (Exception e) {
+            _errors.get(op).incrementAndGet();
+            System.err.println("line " + task[0] + ": " + e.getMessage());
+         }//end try
+      }//end while
+   }//end lane
+
+   /*
+    * Splits a workload line into its operation and arguments.
+    */
+   static Operation parse (String line, Map<String, String> args) {
+      int pos = 0;
+      int len = line.length();
+      while (pos < len && !Character.isWhitespace(line.charAt(pos))) ++pos;
+      Operation op = Operation.forName(line.substring(0, pos));
+      if (op == null) throw new IllegalArgumentException("unknown operation " + line.substring(0, pos));
+
+      while (true) {
+         while (pos < len && Character.isWhitespace(line.charAt(pos))) ++pos;
+         if (pos == len) return op;
+         int eq = line.indexOf('=', pos);
+         if (eq < 0) throw new IllegalArgumentException("expected name=value at " + line.substring(pos));
+         String name = line.substring(pos, eq);
+         for (int i = 0; i < name.length(); ++i)
+            if (Character.isWhitespace(name.charAt(i))) throw new IllegalArgumentException("expected name=value at " + name);
+         if (name.length() == 0) throw new IllegalArgumentException("missing argument name at " + line.substring(pos));
+         pos = eq + 1;
+         StringBuilder value = new StringBuilder();
+         if (pos < len && line.charAt(pos) == '"') {
+            ++pos;
+            while (pos < len && line.charAt(pos) != '"') {
+               if (line.charAt(pos) == '\\' && pos + 1 < len) ++pos;
+               value.append(line.charAt(pos++));
+            }//end while
+            if (pos == len) throw new IllegalArgumentException("unterminated quote after " + name + "=");
+            ++pos;
+         } else {
+            while (pos < len && !Character.isWhitespace(line.charAt(pos))) value.append(line.charAt(pos++));
+         }//end if
+         args.put(name, value.toString());
+      }//end while
+   }//end parse
+
+   private void summary (long elapsedNanos) {
+      long ops = 0;
+      long errors = 0;
+      System.out.println();
+      System.out.println(String.format("%-36s %8s %7s %10s %10s %10s %10s",
+                                       "operation", "ops", "errors", "mean us", "p50 us", "p99 us", "max us"));
+      for (Operation op : Operation.values()) {
+         LatencyHistogram h = _latencies.get(op);
+         long e = _errors.get(op).get();
+         if (h.getCount() == 0 && e == 0) continue;
+         ops += h.getCount();
+         errors += e;
+         System.out.println(String.format("%-36s %8d %7d %10.0f %10d %10d %10d", op.getName(), h.getCount(), e,
+                                          h.getMean() / 1000, h.percentile(50) / 1000, h.percentile(99) / 1000,
+                                          h.getMax() / 1000));
+      }//end for
+      double seconds = elapsedNanos / 1e9;
+      System.out.println(String.format("%d operations, %d errors in %.2f s with %d lanes: %.1f ops/s",
+                                       ops, errors, seconds, _lanes, ops / seconds));
+   }//end summary
+
+}//end BatchRunner
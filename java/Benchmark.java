@@ -0,0 +1,252 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of the menu operations against a local database seeded
+ * from data/. Every operation runs through Operation, so what is measured
+ * is the query logic of the menu without its prompts. Each operation is
+ * warmed up, then run for a fixed time by bench.threads threads; the
+ * throughput and latency percentiles are printed and appended to a CSV
+ * file so that runs can be compared.
+ *
+ * The inserts really commit: run it against a scratch database. Report
+ * rows are formatted as TSV and thrown away.
+ *
+ * Usage: java Benchmark <dbname> <port> <user> [<operation> ...]
+ *    -Dbench.warmupMs=2000   warm up time per operation
+ *    -Dbench.measureMs=5000  measured time per operation
+ *    -Dbench.threads=1       concurrent callers
+ *    -Dbench.out=benchmark.csv  results file, appended to
+ *
+ */
+public class Benchmark {
+
+   private static final String CSV_HEADER =
+      "timestamp,operation,threads,ops,errors,ops_per_sec,p50_us,p90_us,p99_us,max_us";
+
+   // keeps the rooms and dates written by two runs apart
+   private static final int RUN = new Random().nextInt(1 << 20);
+
+   public static void main (String[] args) throws Exception {
+      if (args.length < 3) {
+         System.err.println("Usage: java [-classpath <classpath>] " + Benchmark.class.getName()
+                            + " <dbname> <port> <user> [<operation> ...]");
+         System.exit(2);
+      }//end if
+
+      List<Operation> ops = new ArrayList<Operation>();
+      for (int i = 3; i < args.length; ++i) {
+         Operation op = Operation.forName(args[i]);
+         if (op == null) {
+            System.err.println("Unknown operation " + args[i]);
+            System.exit(2);
+         }//end if
+         ops.add(op);
+      }//end for
+      if (ops.isEmpty()) ops.addAll(Arrays.asList(Operation.values()));
+
+      long warmupMs = Long.getLong("bench.warmupMs", 2000);
+      long measureMs = Long.getLong("bench.measureMs", 5000);
+      int threads = Integer.getInteger("bench.threads", 1);
+      File out = new File(System.getProperty("bench.out", "benchmark.csv"));
+
+      Class.forName("org.postgresql.Driver");
+      DBProject esql = new DBProject(args[0], args[1], args[2], "");
+      ExecutorService workers = Executors.newFixedThreadPool(threads);
+      try {
+         esql.buildIndexes();
+         System.out.println(String.format("%-36s %10s %7s %10s %10s %10s %10s",
+                                          "operation", "ops/s", "errors", "p50 us", "p90 us", "p99 us", "max us"));
+         for (Operation op : ops) {
+            // one counter for both runs, so the measured run does not replay the warm up's inserts
+            AtomicInteger iteration = new AtomicInteger();
+            run(esql, workers, op, iteration, threads, warmupMs);
+            Result r = run(esql, workers, op, iteration, threads, measureMs);
+            System.out.println(String.format("%-36s %10.1f %7d %10d %10d %10d %10d", op.getName(), r.throughput(),
+                                             r.errors, r.percentile(50), r.percentile(90), r.percentile(99), r.percentile(100)));
+            if (r.firstError != null) System.out.println("     first error: " + r.firstError);
+            append(out, op, threads, r);
+         }//end for
+      } finally {
+         workers.shutdownNow();
+         esql.cleanup();
+      }//end try
+      System.out.println("Results appended to " + out);
+   }//end main
+
+   /*
+    * The latencies and errors of one timed run.
+    */
+   private static final class Result {
+      long[] latencies = new long[0];
+      int count = 0;
+      int errors = 0;
+      long elapsedNanos;
+      String firstError = null;
+
+      synchronized void add (long[] l, int n, int e, String error) {
+         if (count + n > latencies.length) latencies = Arrays.copyOf(latencies, count + n);
+         System.arraycopy(l, 0, latencies, count, n);
+         count += n;
+         errors += e;
+         if (firstError == null) firstError = error;
+      }
+
+      double throughput () {
+         return count * 1e9 / elapsedNanos;
+      }
+
+      // in microseconds; the latencies must be sorted
+      long percentile (int p) {
+         if (count == 0) return 0;
+         int idx = (int) Math.ceil(p / 100.0 * count) - 1;
+         return latencies[Math.max(0, idx)] / 1000;
+      }
+   }//end Result
+
+   private static Result run (final DBProject esql, ExecutorService workers, final Operation op,
+                              final AtomicInteger iteration, int threads, long millis) throws Exception {
+      final Result result = new Result();
+      final long deadline = System.nanoTime() + millis * 1000000L;
+      List<Future<?>> done = new ArrayList<Future<?>>();
+      long start = System.nanoTime();
+      for (int t = 0; t < threads; ++t) {
+         done.add(workers.submit(new Callable<Void>() {
+            public Void call () {
+               long[] latencies = new long[1024];
+               int n = 0;
+               int errors = 0;
+               String error = null;
+               while (System.nanoTime() < deadline) {
+                  Map<String, String> args = sampleArgs(op, iteration.getAndIncrement());
+                  long t0 = System.nanoTime();
+                  try {
+                     op.execute(esql, args, ResultPrinter.discard());
+                  } catch (Exception e) {
+                     ++errors;
+                     if (error == null) error = e.getMessage();
+                     continue;
+                  }//end try
+                  if (n == latencies.length) latencies = Arrays.copyOf(latencies, n * 2);
+                  latencies[n++] = System.nanoTime() - t0;
+               }//end while
+               result.add(latencies, n, errors, error);
+               return null;
+            }
+         }));
+      }//end for
+      for (Future<?> f : done) f.get();
+      result.elapsedNanos = System.nanoTime() - start;
+      Arrays.sort(result.latencies, 0, result.count);
+      return result;
+   }//end run
+
+   /*
+    * Arguments taken from the shipped data, as in PlanCheck. The inserts
+    * spread over hotels, rooms and days so that no two of them collide.
+    */
+   static Map<String, String> sampleArgs (Operation op, int i) {
+      Map<String, String> a = new HashMap<String, String>();
+      int hotel = 1 + i % 1000;
+      int room = 1 + (i / 1000) % 10;
+      String day = day(RUN % 20000 + i / 10000);
+      switch (op) {
+         case ADD_CUSTOMER:
+            put(a, "fname", "bench", "lname", "mark", "address", "addr", "phone", "5550100", "dob", "01/01/1980", "gender", "Other");
+            break;
+         case ADD_ROOM:
+            put(a, "hotel", String.valueOf(hotel), "room", String.valueOf(1000000 + RUN * 1000 + i / 1000), "type", "Suite");
+            break;
+         case ADD_MAINTENANCE_COMPANY:
+            put(a, "name", "bench", "address", "addr", "certified", "T");
+            break;
+         case ADD_REPAIR:
+            put(a, "hotel", String.valueOf(hotel), "room", String.valueOf(room), "company", "1",
+                "date", day, "description", "bench", "type", "Small");
+            break;
+         case BOOK_ROOM:
+            put(a, "customer", "1", "hotel", String.valueOf(hotel), "room", String.valueOf(room),
+                "date", day, "people", "2", "price", "150");
+            break;
+         case ASSIGN_HOUSE_CLEANING:
+            put(a, "staff", "3", "hotel", String.valueOf(hotel), "room", String.valueOf(room));
+            break;
+         case REPAIR_REQUEST:
+            put(a, "staff", "1", "hotel", "145", "room", "4", "repair", "1", "date", day, "description", "bench");
+            break;
+         case AVAILABLE_ROOMS:
+            put(a, "hotel", "381", "from", "05/12/2015", "to", "05/19/2015");
+            break;
+         case BOOKED_ROOMS:
+            put(a, "hotel", "381");
+            break;
+         case HOTEL_BOOKINGS_FOR_A_WEEK:
+            put(a, "hotel", "381", "date", "05/12/2015");
+            break;
+         case TOP_K_ROOM_PRICE:
+            put(a, "from", "05/12/2015", "to", "05/19/2015", "k", "5");
+            break;
+         case TOP_K_CUSTOMER_BOOKINGS:
+            put(a, "fname", "rzqs", "lname", "eyeg", "k", "5");
+            break;
+         case CUSTOMER_TOTAL_COST:
+            put(a, "hotel", "381", "fname", "rzqs", "lname", "eyeg", "from", "05/12/2015", "to", "05/19/2015");
+            break;
+         case REPAIRS_BY_COMPANY:
+            put(a, "company", "iqcq");
+            break;
+         case TOP_K_MAINTENANCE_COMPANY:
+            put(a, "k", "5");
+            break;
+         case REPAIRS_PER_YEAR:
+            put(a, "hotel", "145", "room", "4");
+            break;
+         case FIND_CUSTOMERS:
+            put(a, "lname", "ey");
+            break;
+      }//end switch
+      return a;
+   }//end sampleArgs
+
+   private static void put (Map<String, String> a, String... pairs) {
+      for (int i = 0; i < pairs.length; i += 2) a.put(pairs[i], pairs[i + 1]);
+   }//end put
+
+   // the given number of days after 01/01/2030, in the MM/DD/YYYY format of the prompts
+   private static String day (int offset) {
+      Calendar cal = Calendar.getInstance();
+      cal.clear();
+      cal.set(2030, Calendar.JANUARY, 1);
+      cal.add(Calendar.DATE, offset);
+      return new SimpleDateFormat("MM/dd/yyyy").format(cal.getTime());
+   }//end day
+
+   private static void append (File file, Operation op, int threads, Result r) throws Exception {
+      boolean header = !file.exists() || file.length() == 0;
+      PrintWriter w = new PrintWriter(new FileWriter(file, true));
+      try {
+         if (header) w.println(CSV_HEADER);
+         w.println(System.currentTimeMillis() / 1000 + "," + op.getName() + "," + threads + "," + r.count + ","
+                   + r.errors + "," + String.format(Locale.ROOT, "%.1f", r.throughput()) + "," + r.percentile(50) + ","
+                   + r.percentile(90) + "," + r.percentile(99) + "," + r.percentile(100));
+      } finally {
+         w.close();
+      }//end try
+   }//end append
+
+}//end Benchmark
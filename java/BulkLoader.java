@@ -0,0 +1,343 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+
+/**
+ * Loads the data/*.csv files into an existing schema from the client
+ * side, so the files do not have to be copied to the database host first.
+ *
+ * The files are in the COPY text format used by sql/create.sql (comma
+ * delimited, \N for NULL). The JDBC driver shipped with the project has
+ * no COPY support, so rows are streamed into multi-row INSERT statements
+ * instead, each table in a single transaction on its own connection.
+ * Foreign keys are dropped for the duration of the load so that all
+ * tables can be loaded in parallel, then re-created and checked once at
+ * the end together with the hotel manager fixup. When a table fails to
+ * load, the other tables still finish, the foreign keys are re-created
+ * without checking the rows already there (NOT VALID), and the error
+ * names the tables left empty.
+ *
+ */
+public class BulkLoader {
+
+   // rows sent per INSERT statement
+   private static final int ROWS_PER_STATEMENT = Integer.getInteger("load.rowsPerStatement", 250);
+
+   /*
+    * A table, the file it is loaded from and its column types.
+    */
+   private static final class Table {
+      final String name;
+      final String file;
+      final String[] columns;
+      final String[] types;
+
+      Table(String name, String file, String[] columns, String[] types) {
+         this.name = name;
+         this.file = file;
+         this.columns = columns;
+         this.types = types;
+      }
+   }//end Table
+
+   private static final Table[] TABLES = {
+      new Table("Hotel", "hotel.csv",
+         new String[] {"hotelID", "address", "manager"},
+         new String[] {"numeric", "text", "numeric"}),
+      new Table("Staff", "staff.csv",
+         new String[] {"SSN", "fName", "lName", "address", "role", "employerID"},
+         new String[] {"numeric", "char(30)", "char(30)", "text", "StaffRole", "numeric"}),
+      new Table("Room", "room.csv",
+         new String[] {"hotelID", "roomNo", "roomType"},
+         new String[] {"numeric", "numeric", "char(10)"}),
+      new Table("Customer", "customer.csv",
+         new String[] {"customerID", "fName", "lName", "Address", "phNo", "DOB", "gender"},
+         new String[] {"numeric", "char(30)", "char(30)", "text", "numeric", "date", "GenderType"}),
+      new Table("MaintenanceCompany", "maintenanceCompany.csv",
+         new String[] {"cmpID", "name", "address", "isCertified"},
+         new String[] {"numeric", "char(30)", "text", "boolean"}),
+      new Table("Booking", "booking.csv",
+         new String[] {"bID", "customer", "hotelID", "roomNo", "bookingDate", "noOfPeople", "price"},
+         new String[] {"numeric", "numeric", "numeric", "numeric", "date", "numeric", "numeric"}),
+      new Table("Repair", "repair.csv",
+         new String[] {"rID", "hotelID", "roomNo", "mCompany", "repairDate", "description", "repairType"},
+         new String[] {"numeric", "numeric", "numeric", "numeric", "date", "text", "char(10)"}),
+      new Table("Request", "request.csv",
+         new String[] {"reqID", "managerID", "repairID", "requestDate", "description"},
+         new String[] {"numeric", "numeric", "numeric", "date", "text"}),
+      new Table("Assigned", "assigned.csv",
+         new String[] {"asgID", "staffID", "hotelID", "roomNo"},
+         new String[] {"numeric", "numeric", "numeric", "numeric"})
+   };
+
+   // the foreign keys of sql/create.sql as {table, constraint, definition}
+   private static final String[][] FOREIGN_KEYS = {
+      {"Hotel", "managerConstraint", "FOREIGN KEY(manager) REFERENCES Staff(SSN) ON DELETE SET DEFAULT"},
+      {"Staff", "employerConstraint", "FOREIGN KEY(employerID) REFERENCES Hotel(hotelID) ON DELETE CASCADE"},
+      {"Room", "weakEntityConstraint", "FOREIGN KEY(hotelID) REFERENCES Hotel(hotelID) ON DELETE CASCADE"},
+      {"Booking", "bookingCustomerConstraint", "FOREIGN KEY(customer) REFERENCES Customer(customerID) ON DELETE SET DEFAULT"},
+      {"Booking", "bookingRoomConstraint", "FOREIGN KEY(hotelID, roomNo) REFERENCES Room(hotelID, roomNo) ON DELETE SET DEFAULT"},
+      {"Repair", "repairMcmpConstraint", "FOREIGN KEY(mCompany) REFERENCES MaintenanceCompany(cmpID) ON DELETE SET DEFAULT"},
+      {"Repair", "repairRoomConstraint", "FOREIGN KEY(hotelID, roomNo) REFERENCES Room(hotelID, roomNo) ON DELETE SET DEFAULT"},
+      {"Request", "requestMngrConstraint", "FOREIGN KEY(managerID) REFERENCES Staff(SSN) ON DELETE SET DEFAULT"},
+      {"Request", "requestRepairConstraint", "FOREIGN KEY(repairID) REFERENCES Repair(rID) ON DELETE SET DEFAULT"},
+      {"Assigned", "assgndStaffConstraint", "FOREIGN KEY(staffID) REFERENCES Staff(SSN) ON DELETE SET DEFAULT"},
+      {"Assigned", "assgndRoomConstraint", "FOREIGN KEY(hotelID, roomNo) REFERENCES Room(hotelID, roomNo) ON DELETE SET DEFAULT"}
+   };
+
+   // ID sequences to restart after the load, as {sequence, table, key column}
+   private static final String[][] SEQUENCES = {
+      {"customer_id_seq", "Customer", "customerID"},
+      {"maintenancecompany_id_seq", "MaintenanceCompany", "cmpID"},
+      {"repair_id_seq", "Repair", "rID"},
+      {"booking_id_seq", "Booking", "bID"},
+      {"assigned_id_seq", "Assigned", "asgID"},
+      {"request_id_seq", "Request", "reqID"}
+   };
+
+   private final ConnectionPool _pool;
+   private final File _dataDir;
+   private final int _threads;
+
+   /**
+    * @param pool the pool the load connections are borrowed from
+    * @param dataDir the folder holding the csv files
+    * @param threads number of tables loaded at the same time
+    */
+   public BulkLoader (ConnectionPool pool, File dataDir, int threads) {
+      this._pool = pool;
+      this._dataDir = dataDir;
+      this._threads = Math.max(1, Math.min(threads, pool.getMaxSize()));
+   }//end BulkLoader
+
+   /**
+    * Empties every table and loads it again from the csv files.
+    *
+    * @return the total number of rows loaded
+    * @throws Exception when a file cannot be read or a statement fails
+    */
+   public long load () throws Exception {
+      for (Table t : TABLES) {
+         File f = new File(_dataDir, t.file);
+         if (!f.canRead()) throw new IOException("Cannot read " + f.getPath());
+      }//end for
+
+      long start = System.nanoTime();
+      System.out.println("Dropping foreign keys and emptying tables...");
+      Connection conn = _pool.acquire();
+      try {
+         for (String[] fk : FOREIGN_KEYS)
+            execute(conn, "ALTER TABLE " + fk[0] + " DROP CONSTRAINT IF EXISTS " + fk[1]);
+         StringBuilder truncate = new StringBuilder("TRUNCATE ");
+         for (int i = 0; i < TABLES.length; ++i)
+            truncate.append(i == 0 ? "" : ", ").append(TABLES[i].name);
+         execute(conn, truncate.toString());
+      } finally {
+         _pool.release(conn);
+      }//end try
+
+      // every table is independent while the foreign keys are gone
+      ExecutorService workers = Executors.newFixedThreadPool(_threads);
+      List<Future<Long>> results = new ArrayList<Future<Long>>();
+      for (final Table t : TABLES) {
+         results.add(workers.submit(new Callable<Long>() {
+            public Long call() throws Exception { return loadTable(t); }
+         }));
+      }//end for
+      workers.shutdown();
+
+      // each table commits or rolls back on its own, so a failed one is left empty and the others are loaded
+      long rows = 0;
+      Exception failure = null;
+      StringBuilder empty = new StringBuilder();
+      for (int i = 0; i < TABLES.length; ++i) {
+         try {
+            rows += results.get(i).get().longValue();
+         } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (failure == null) failure = cause instanceof Exception ? (Exception) cause : e;
+            empty.append(empty.length() == 0 ? "" : ", ").append(TABLES[i].name);
+         }//end try
+      }//end for
+
+      System.out.println(failure == null ? "Fixing hotel managers, re-creating foreign keys and counting repairs..."
+                                         : "Load failed, re-creating foreign keys...");
+      String invalid = null;
+      conn = _pool.acquire();
+      try {
+         if (failure == null)
+            execute(conn, "UPDATE hotel SET manager = Staff.ssn FROM Staff "
+                        + "WHERE hotel.hotelID = Staff.employerID AND Staff.role = 'Manager'");
+         for (String[] fk : FOREIGN_KEYS) {
+            // a partitioned Repair has no unique rID to reference, see sql/partitioning.sql
+            if (fk[2].contains("REFERENCES Repair(") && Partitions.isPartitioned(conn, "repair")) continue;
+            String add = "ALTER TABLE " + fk[0] + " ADD CONSTRAINT " + fk[1] + " " + fk[2];
+            if (failure == null) {
+               try {
+                  execute(conn, add);
+                  continue;
+               } catch (SQLException e) {
+                  // the rows break the key; keep it for new rows and report it
+                  if (invalid == null) invalid = fk[1] + ": " + e.getMessage();
+               }//end try
+            }//end if
+            execute(conn, add + " NOT VALID");
+         }//end for
+         for (String[] seq : SEQUENCES)
+            execute(conn, "SELECT setval('" + seq[0] + "', (SELECT COALESCE(MAX(" + seq[2] + "), 0) + 1 FROM "
+                        + seq[1] + "), false)");
+         RepairCounts.rebuild(conn);
+         if (failure == null) execute(conn, "ANALYZE");
+      } finally {
+         _pool.release(conn);
+      }//end try
+      if (failure != null)
+         throw new Exception("Load failed, " + empty + " left empty and the foreign keys not checked: "
+                             + failure.getMessage(), failure);
+      if (invalid != null)
+         throw new Exception("Loaded, but the rows break foreign key " + invalid
+                             + " (re-created without checking the rows already there)");
+
+      double secs = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("Loaded %d rows in %.2f s (%.0f rows/s)", rows, secs, rows / secs));
+      return rows;
+   }//end load
+
+   /*
+    * Streams one csv file into its table inside a single transaction.
+    */
+   private long loadTable (Table t) throws Exception {
+      long start = System.nanoTime();
+      int width = t.columns.length;
+      String fullSql = insertSql(t, ROWS_PER_STATEMENT);
+
+      long rows = 0;
+      Connection conn = _pool.acquire();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+         new FileInputStream(new File(_dataDir, t.file)), "UTF-8"), 1 << 16);
+      try {
+         conn.setAutoCommit(false);
+         PreparedStatement full = conn.prepareStatement(fullSql);
+         String[][] pending = new String[ROWS_PER_STATEMENT][];
+         int n = 0;
+         String line;
+         int lineNo = 0;
+         while ((line = reader.readLine()) != null) {
+            ++lineNo;
+            if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+            if (line.length() == 0) continue;
+            pending[n++] = split(line, width, t.file, lineNo);
+            if (n == ROWS_PER_STATEMENT) {
+               insert(full, pending, n, width);
+               rows += n;
+               n = 0;
+            }//end if
+         }//end while
+         full.close();
+         if (n > 0) {
+            PreparedStatement rest = conn.prepareStatement(insertSql(t, n));
+            insert(rest, pending, n, width);
+            rest.close();
+            rows += n;
+         }//end if
+         conn.commit();
+      } finally {
+         reader.close();
+         _pool.release(conn);
+      }//end try
+
+      double secs = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("  %-20s %9d rows %8.2f s %10.0f rows/s", t.name, rows, secs, rows / secs));
+      return rows;
+   }//end loadTable
+
+   private static void insert (PreparedStatement stmt, String[][] rows, int n, int width) throws SQLException {
+      int idx = 1;
+      for (int r = 0; r < n; ++r) {
+         for (int c = 0; c < width; ++c) {
+            String v = rows[r][c];
+            if (v == null) stmt.setNull(idx++, java.sql.Types.VARCHAR);
+            else stmt.setString(idx++, v);
+         }//end for
+      }//end for
+      stmt.executeUpdate();
+   }//end insert
+
+   /*
+    * INSERT INTO t (cols) VALUES (...), (...) with one typed placeholder
+    * per value, so the text from the file is converted by the server just
+    * like COPY would.
+    */
+   private static String insertSql (Table t, int rows) {
+      StringBuilder row = new StringBuilder("(");
+      for (int c = 0; c < t.columns.length; ++c)
+         row.append(c == 0 ? "" : ", ").append("CAST(? AS ").append(t.types[c]).append(")");
+      row.append(")");
+
+      StringBuilder sql = new StringBuilder("INSERT INTO ").append(t.name).append(" (");
+      for (int c = 0; c < t.columns.length; ++c)
+         sql.append(c == 0 ? "" : ", ").append(t.columns[c]);
+      sql.append(") VALUES ");
+      for (int r = 0; r < rows; ++r)
+         sql.append(r == 0 ? "" : ", ").append(row);
+      return sql.toString();
+   }//end insertSql
+
+   /*
+    * Splits one line of COPY text format into its fields, turning \N into
+    * null and undoing backslash escapes.
+    */
+   static String[] split (String line, int width, String file, int lineNo) throws IOException {
+      String[] fields = new String[width];
+      int col = 0;
+      int fieldStart = 0;
+      StringBuilder cur = new StringBuilder();
+      for (int i = 0; i <= line.length(); ++i) {
+         if (i == line.length() || line.charAt(i) == ',') {
+            if (col == width) throw new IOException(file + ":" + lineNo + ": more than " + width + " fields");
+            boolean isNull = i - fieldStart == 2 && line.startsWith("\\N", fieldStart);
+            fields[col++] = isNull ? null : cur.toString();
+            cur.setLength(0);
+            fieldStart = i + 1;
+            continue;
+         }//end if
+         char ch = line.charAt(i);
+         if (ch == '\\' && i + 1 < line.length()) {
+            char next = line.charAt(++i);
+            switch (next) {
+               case 't': cur.append('\t'); break;
+               case 'n': cur.append('\n'); break;
+               case 'r': cur.append('\r'); break;
+               default:  cur.append(next); break;
+            }//end switch
+         } else {
+            cur.append(ch);
+         }//end if
+      }//end for
+      if (col != width) throw new IOException(file + ":" + lineNo + ": expected " + width + " fields, found " + col);
+      return fields;
+   }//end split
+
+   private static void execute (Connection conn, String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         stmt.execute(sql);
+      } finally {
+         stmt.close();
+      }//end try
+   }//end execute
+
+}//end BulkLoader
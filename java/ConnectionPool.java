@@ -0,0 +1,450 @@
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of physical PostgreSQL connections shared by every
+ * operation of DBProject. Connections are handed out most-recently-used
+ * first so that surplus connections age at the tail of the idle list and
+ * are evicted once they stay idle longer than the idle timeout.
+ *
+ */
+public class ConnectionPool {
+
+   // query used to check a connection that has been idle for a while
+   private static final String VALIDATION_QUERY = "SELECT 1";
+
+   private final String _url;
+   private final String _user;
+   private final String _passwd;
+
+   private final int _minSize;
+   private final int _maxSize;
+   private final long _idleTimeoutMs;
+   private final long _acquireTimeoutMs;
+   private final long _validateAfterMs;
+
+   // idle connections, most recently released first. Guarded by _lock.
+   private final ArrayDeque<Entry> _idle = new ArrayDeque<Entry>();
+   // number of open physical connections (idle + borrowed). Guarded by _lock.
+   private int _open = 0;
+   private int _inUse = 0;
+   private int _peakInUse = 0;
+   private boolean _closed = false;
+
+   private final ReentrantLock _lock = new ReentrantLock();
+   private final Condition _available = _lock.newCondition();
+
+   private final ScheduledExecutorService _evictor;
+
+   // prepared statement cache of every open connection
+   private final Map<Connection, StatementCache> _statements =
+      new ConcurrentHashMap<Connection, StatementCache>();
+
+   // counters
+   private final AtomicLong _acquired = new AtomicLong();
+   private final AtomicLong _released = new AtomicLong();
+   private final AtomicLong _created = new AtomicLong();
+   private final AtomicLong _destroyed = new AtomicLong();
+   private final AtomicLong _saturated = new AtomicLong();
+   private final AtomicLong _waitNanos = new AtomicLong();
+   private final AtomicLong _timeouts = new AtomicLong();
+   private final AtomicLong _validationFailures = new AtomicLong();
+
+   /*
+    * A pooled physical connection together with the time it was last
+    * handed back to the pool.
+    */
+   private static final class Entry {
+      final Connection conn;
+      long lastUsed;
+
+      Entry(Connection conn) {
+         this.conn = conn;
+         this.lastUsed = System.currentTimeMillis();
+      }
+   }//end Entry
+
+   /**
+    * Creates a new pool and opens minSize connections up front.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param minSize number of connections kept open even when idle
+    * @param maxSize upper bound on open connections
+    * @param idleTimeoutMs idle time after which surplus connections are closed
+    * @param acquireTimeoutMs how long acquire() waits on a saturated pool
+    * @param validateAfterMs idle time after which a connection is validated before reuse
+    * @throws java.sql.SQLException when the initial connections cannot be opened
+    */
+   public ConnectionPool (String url, String user, String passwd,
+                          int minSize, int maxSize, long idleTimeoutMs,
+                          long acquireTimeoutMs, long validateAfterMs) throws SQLException {
+      if (maxSize < 1 || minSize < 0 || minSize > maxSize)
+         throw new IllegalArgumentException("Invalid pool size: min=" + minSize + " max=" + maxSize);
+      this._url = url;
+      this._user = user;
+      this._passwd = passwd;
+      this._minSize = minSize;
+      this._maxSize = maxSize;
+      this._idleTimeoutMs = idleTimeoutMs;
+      this._acquireTimeoutMs = acquireTimeoutMs;
+      this._validateAfterMs = validateAfterMs;
+
+      for (int i = 0; i < minSize; ++i) {
+         _idle.addLast(new Entry(open()));
+         ++_open;
+      }//end for
+
+      this._evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "pool-evictor");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      long period = Math.max(1000L, idleTimeoutMs / 2);
+      this._evictor.scheduleWithFixedDelay(new Runnable() {
+         public void run() { evictIdle(); }
+      }, period, period, TimeUnit.MILLISECONDS);
+   }//end ConnectionPool
+
+   /**
+    * Creates a pool configured from the pool.* system properties.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @return the new pool
+    * @throws java.sql.SQLException when the initial connections cannot be opened
+    */
+   public static ConnectionPool fromSystemProperties (String url, String user, String passwd) throws SQLException {
+      return new ConnectionPool(url, user, passwd,
+         Integer.getInteger("pool.min", 1),
+         Integer.getInteger("pool.max", 8),
+         Long.getLong("pool.idleTimeoutMs", 60000L),
+         Long.getLong("pool.acquireTimeoutMs", 10000L),
+         Long.getLong("pool.validateAfterMs", 5000L));
+   }//end fromSystemProperties
+
+   /**
+    * Borrows a connection from the pool, opening a new one if the pool is
+    * below its maximum size, or waiting up to the acquire timeout otherwise.
+    * Every connection obtained here must be given back with release().
+    *
+    * @return a connection in autocommit mode
+    * @throws java.sql.SQLException when no connection becomes available in time
+    */
+   public Connection acquire () throws SQLException {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_acquireTimeoutMs);
+      boolean waited = false;
+      long waitStart = 0;
+      while (true) {
+         Entry entry = null;
+         boolean create = false;
+         _lock.lock();
+         try {
+            while (!_closed && _idle.isEmpty() && _open >= _maxSize) {
+               if (!waited) {
+                  waited = true;
+                  waitStart = System.nanoTime();
+                  _saturated.incrementAndGet();
+               }//end if
+               long remaining = deadline - System.nanoTime();
+               if (remaining <= 0) {
+                  _timeouts.incrementAndGet();
+                  _waitNanos.addAndGet(System.nanoTime() - waitStart);
+                  throw new SQLException("Timed out after " + _acquireTimeoutMs
+                     + " ms waiting for a database connection (pool size " + _maxSize + ")");
+               }//end if
+               try {
+                  _available.awaitNanos(remaining);
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  throw new SQLException("Interrupted while waiting for a database connection");
+               }//end try
+            }//end while
+            if (_closed) throw new SQLException("Connection pool is closed");
+
+            entry = _idle.pollFirst();
+            if (entry == null) {
+               ++_open;
+               create = true;
+            }//end if
+            markBorrowed();
+         } finally {
+            _lock.unlock();
+         }//end try
+
+         if (waited) _waitNanos.addAndGet(System.nanoTime() - waitStart);
+         waited = false;
+
+         if (create) {
+            try {
+               Connection conn = open();
+               _acquired.incrementAndGet();
+               return conn;
+            } catch (SQLException e) {
+               forget(true);
+               throw e;
+            }//end try
+         }//end if
+
+         if (System.currentTimeMillis() - entry.lastUsed < _validateAfterMs || isValid(entry.conn)) {
+            _acquired.incrementAndGet();
+            return entry.conn;
+         }//end if
+
+         // stale connection, drop it and try again
+         _validationFailures.incrementAndGet();
+         closeQuietly(entry.conn);
+         forget(true);
+      }//end while
+   }//end acquire
+
+   /**
+    * Returns the prepared statement cache of a borrowed connection. The
+    * cache lives as long as the physical connection does.
+    *
+    * @param conn a connection obtained from acquire()
+    * @return the statement cache of that connection
+    */
+   public StatementCache statements (Connection conn) {
+      StatementCache cache = _statements.get(conn);
+      if (cache == null) {
+         cache = StatementCache.fromSystemProperties(conn);
+         _statements.put(conn, cache);
+      }//end if
+      return cache;
+   }//end statements
+
+   /**
+    * @param conn a connection
+    * @return true when the connection was opened by this pool and is still open
+    */
+   public boolean owns (Connection conn) {
+      return _statements.containsKey(conn);
+   }//end owns
+
+   /**
+    * Returns a borrowed connection to the pool. A connection left inside a
+    * transaction is rolled back and put back into autocommit mode first.
+    *
+    * @param conn a connection obtained from acquire()
+    */
+   public void release (Connection conn) {
+      if (conn == null) return;
+      boolean healthy = true;
+      try {
+         if (conn.isClosed()) {
+            healthy = false;
+         } else if (!conn.getAutoCommit()) {
+            conn.rollback();
+            conn.setAutoCommit(true);
+         }//end if
+      } catch (SQLException e) {
+         healthy = false;
+      }//end try
+
+      if (!healthy) {
+         invalidate(conn);
+         return;
+      }//end if
+
+      _released.incrementAndGet();
+      _lock.lock();
+      try {
+         --_inUse;
+         if (_closed) {
+            --_open;
+            closeQuietly(conn);
+         } else {
+            _idle.addFirst(new Entry(conn));
+         }//end if
+         _available.signal();
+      } finally {
+         _lock.unlock();
+      }//end try
+   }//end release
+
+   /**
+    * Discards a borrowed connection that is known to be broken instead of
+    * returning it to the pool.
+    *
+    * @param conn a connection obtained from acquire()
+    */
+   public void invalidate (Connection conn) {
+      if (conn == null) return;
+      _released.incrementAndGet();
+      closeQuietly(conn);
+      forget(true);
+   }//end invalidate
+
+   /**
+    * Closes every idle connection and refuses further acquires. Borrowed
+    * connections are closed as they are released.
+    */
+   public void close () {
+      _evictor.shutdownNow();
+      _lock.lock();
+      try {
+         _closed = true;
+         Entry entry;
+         while ((entry = _idle.pollFirst()) != null) {
+            --_open;
+            closeQuietly(entry.conn);
+         }//end while
+         _available.signalAll();
+      } finally {
+         _lock.unlock();
+      }//end try
+   }//end close
+
+   /*
+    * Closes connections that stayed idle past the idle timeout, oldest
+    * first, without dropping below the minimum size.
+    */
+   private void evictIdle () {
+      long cutoff = System.currentTimeMillis() - _idleTimeoutMs;
+      _lock.lock();
+      try {
+         Iterator<Entry> it = _idle.descendingIterator();
+         while (it.hasNext() && _open > _minSize) {
+            Entry entry = it.next();
+            if (entry.lastUsed > cutoff) break;
+            it.remove();
+            --_open;
+            closeQuietly(entry.conn);
+         }//end while
+      } finally {
+         _lock.unlock();
+      }//end try
+   }//end evictIdle
+
+   // must be called with _lock held
+   private void markBorrowed () {
+      ++_inUse;
+      if (_inUse > _peakInUse) _peakInUse = _inUse;
+   }//end markBorrowed
+
+   // forgets a borrowed connection that has been (or failed to be) closed
+   private void forget (boolean borrowed) {
+      _lock.lock();
+      try {
+         --_open;
+         if (borrowed) --_inUse;
+         _available.signal();
+      } finally {
+         _lock.unlock();
+      }//end try
+   }//end forget
+
+   private Connection open () throws SQLException {
+      Connection conn = DriverManager.getConnection(_url, _user, _passwd);
+      _statements.put(conn, StatementCache.fromSystemProperties(conn));
+      _created.incrementAndGet();
+      return conn;
+   }//end open
+
+   private boolean isValid (Connection conn) {
+      Statement stmt = null;
+      try {
+         stmt = conn.createStatement();
+         stmt.executeQuery(VALIDATION_QUERY).close();
+         return true;
+      } catch (SQLException e) {
+         return false;
+      } finally {
+         if (stmt != null) {
+            try { stmt.close(); } catch (SQLException e) { /* ignored */ }
+         }//end if
+      }//end try
+   }//end isValid
+
+   private void closeQuietly (Connection conn) {
+      StatementCache cache = _statements.remove(conn);
+      if (cache != null) cache.close();
+      try {
+         conn.close();
+      } catch (SQLException e) {
+         // ignored.
+      }//end try
+      _destroyed.incrementAndGet();
+   }//end closeQuietly
+
+   public int getOpenCount () {
+      _lock.lock();
+      try { return _open; } finally { _lock.unlock(); }
+   }
+
+   public int getInUseCount () {
+      _lock.lock();
+      try { return _inUse; } finally { _lock.unlock(); }
+   }
+
+   public int getPeakInUseCount () {
+      _lock.lock();
+      try { return _peakInUse; } finally { _lock.unlock(); }
+   }
+
+   public int getMaxSize () { return _maxSize; }
+
+   /** @return number of connections handed out by acquire() */
+   public long getAcquiredCount () { return _acquired.get(); }
+
+   /** @return number of connections given back through release() or invalidate() */
+   public long getReleasedCount () { return _released.get(); }
+
+   /** @return number of physical connections opened (churn, together with getDestroyedCount) */
+   public long getCreatedCount () { return _created.get(); }
+
+   /** @return number of physical connections closed */
+   public long getDestroyedCount () { return _destroyed.get(); }
+
+   /** @return number of acquires that found the pool saturated and had to wait */
+   public long getSaturatedCount () { return _saturated.get(); }
+
+   /** @return total time spent waiting in acquire(), in nanoseconds */
+   public long getWaitNanos () { return _waitNanos.get(); }
+
+   /** @return number of acquires that gave up after the acquire timeout */
+   public long getTimeoutCount () { return _timeouts.get(); }
+
+   /** @return number of idle connections that failed validation */
+   public long getValidationFailureCount () { return _validationFailures.get(); }
+
+   /** @return the JDBC URL of the database the connections are opened to */
+   public String getUrl () { return _url; }
+
+   /**
+    * @return a one line summary of the pool counters
+    */
+   public String stats () {
+      return "open=" + getOpenCount()
+         + " inUse=" + getInUseCount()
+         + " peakInUse=" + getPeakInUseCount()
+         + " max=" + _maxSize
+         + " acquired=" + getAcquiredCount()
+         + " released=" + getReleasedCount()
+         + " created=" + getCreatedCount()
+         + " destroyed=" + getDestroyedCount()
+         + " saturated=" + getSaturatedCount()
+         + " waitMs=" + TimeUnit.NANOSECONDS.toMillis(getWaitNanos())
+         + " timeouts=" + getTimeoutCount()
+         + " validationFailures=" + getValidationFailureCount();
+   }//end stats
+
+}//end ConnectionPool
@@ -0,0 +1,141 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory index from customer names to customer IDs, used by the name
+ * keyed reports (menu options 12 and 13) to look up the customer first
+ * and then read Booking by customer, and by the front desk search of
+ * menu option 17.
+ *
+ * Names are kept the way CHAR(30) compares them: trailing spaces do not
+ * count, case does. The entries are sorted by last name, then first name,
+ * so a prefix of the name is a range of the map. Several customers may
+ * share a name, so every entry holds an array of IDs.
+ *
+ * Names missing from the index are looked up in the database, so
+ * customers added by other clients are found too.
+ *
+ */
+public class CustomerIndex {
+
+   private static final String CUSTOMERS_BY_NAME =
+      "SELECT customerID FROM Customer WHERE fname = CAST(? AS CHAR(30)) AND lname = CAST(? AS CHAR(30))";
+
+   // separates the last name from the first name in a key; sorts before any printable character
+   private static final char SEPARATOR = '\t';
+
+   private final DBProject _esql;
+   private final ConcurrentSkipListMap<String, long[]> _names = new ConcurrentSkipListMap<String, long[]>();
+
+   private CustomerIndex (DBProject esql) {
+      this._esql = esql;
+   }//end CustomerIndex
+
+   /**
+    * Builds the index from the Customer table.
+    *
+    * @param esql the database to read from
+    * @return the loaded index
+    * @throws java.sql.SQLException when the table cannot be read
+    */
+   public static CustomerIndex build (DBProject esql) throws SQLException {
+      final CustomerIndex index = new CustomerIndex(esql);
+      esql.scanGlobal("SELECT customerID, fname, lname FROM Customer", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n)
+               index.customerAdded(rs.getLong(1), rs.getString(2), rs.getString(3));
+            return n;
+         }
+      });
+      return index;
+   }//end build
+
+   /**
+    * Records a customer.
+    *
+    * @param customerID the ID of the customer
+    * @param fname the first name
+    * @param lname the last name
+    */
+   public void customerAdded (long customerID, String fname, String lname) {
+      String key = key(fname, lname);
+      while (true) {
+         long[] ids = _names.get(key);
+         if (ids == null) {
+            if (_names.putIfAbsent(key, new long[] {customerID}) == null) return;
+            continue;
+         }//end if
+         for (long id : ids)
+            if (id == customerID) return;
+         long[] more = Arrays.copyOf(ids, ids.length + 1);
+         more[ids.length] = customerID;
+         if (_names.replace(key, ids, more)) return;
+      }//end while
+   }//end customerAdded
+
+   /**
+    * @param fname the first name
+    * @param lname the last name
+    * @return the IDs of the customers with that name, empty if there are none
+    * @throws java.sql.SQLException when the name is not in the index and the lookup fails
+    */
+   public long[] lookup (String fname, String lname) throws SQLException {
+      long[] ids = _names.get(key(fname, lname));
+      if (ids != null) return ids;
+      // not cached when missing, a customer of that name may still be added
+      ResultSet rs = _esql.executeQuery(CUSTOMERS_BY_NAME, fname, lname);
+      while (rs.next()) customerAdded(rs.getLong(1), fname, lname);
+      ids = _names.get(key(fname, lname));
+      return ids == null ? new long[0] : ids;
+   }//end lookup
+
+   /**
+    * Finds the customers whose last name starts with lnamePrefix or,
+    * when fnamePrefix is given, whose last name is lnamePrefix and whose
+    * first name starts with fnamePrefix. Only customers in the index are
+    * found.
+    *
+    * @param lnamePrefix the last name or its beginning
+    * @param fnamePrefix the beginning of the first name, or null
+    * @param limit the most customers to return
+    * @return rows of customer ID, first name and last name, sorted by name
+    */
+   public List<String[]> search (String lnamePrefix, String fnamePrefix, int limit) {
+      String from = fnamePrefix == null ? trim(lnamePrefix) : key(fnamePrefix, lnamePrefix);
+      List<String[]> rows = new ArrayList<String[]>();
+      for (Map.Entry<String, long[]> e : _names.subMap(from, true, from + Character.MAX_VALUE, false).entrySet()) {
+         String key = e.getKey();
+         int sep = key.indexOf(SEPARATOR);
+         for (long id : e.getValue()) {
+            if (rows.size() >= limit) return rows;
+            rows.add(new String[] {String.valueOf(id), key.substring(sep + 1), key.substring(0, sep)});
+         }//end for
+      }//end for
+      return rows;
+   }//end search
+
+   /**
+    * @return the number of distinct names in the index
+    */
+   public int size () {
+      return _names.size();
+   }//end size
+
+   private static String key (String fname, String lname) {
+      return trim(lname) + SEPARATOR + trim(fname);
+   }//end key
+
+   // CHAR(n) ignores trailing spaces
+   private static String trim (String s) {
+      int end = s.length();
+      while (end > 0 && s.charAt(end - 1) == ' ') --end;
+      return s.substring(0, end);
+   }//end trim
+
+}//end CustomerIndex
@@ -11,18 +11,28 @@
  */
 
 
-import java.sql.DriverManager;
 import java.sql.Connection;
-import java.sql.Statement;
+import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.math.BigDecimal;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 import java.io.File;
+import java.io.IOException;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
-import java.util.regex.Matcher; 
-import java.util.regex.Pattern; 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -31,8 +41,58 @@ import java.util.regex.Pattern;
  */
 public class DBProject {
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool of physical database connections shared by all operations.
+   private ConnectionPool _pool = null;
+
+   // sends the reports to a replica, null when there is none.
+   private ReadRouter _router = null;
+
+   // spreads the hotels over several databases, null when there is one.
+   private ShardRouter _shards = null;
+
+   // name of the cursor used by scanQuery, one per connection at a time.
+   private static final String CURSOR_NAME = "dbproject_stream";
+
+   // block allocator for the primary keys of new rows.
+   private final IdAllocator _ids = new IdAllocator(this);
+
+   // cache of hotels, rooms, maintenance companies and staff roles.
+   private final ReferenceData _reference = new ReferenceData(this, Integer.getInteger("refcache.capacity", 50000));
+
+   // timings and counters of the operations and statements.
+   private final Metrics _metrics = new Metrics();
+
+   // column names of option 11, as the database returns them
+   private static final String[] TOP_K_ROOM_PRICE_COLUMNS = {"hotelid", "roomno", "roomtype", "price"};
+
+   // column names of option 17, as the database returns them
+   private static final String[] FIND_CUSTOMERS_COLUMNS = {"customerid", "fname", "lname"};
+
+   // column names of options 10 and 12 to 16, as the database returns them
+   private static final String[] HOTEL_BOOKINGS_FOR_A_WEEK_COLUMNS = {"roomno", "bookingdate"};
+   private static final String[] TOP_K_CUSTOMER_BOOKINGS_COLUMNS = {"price"};
+   private static final String[] CUSTOMER_TOTAL_COST_COLUMNS = {"sum"};
+   private static final String[] REPAIRS_BY_COMPANY_COLUMNS = {"rid", "repairtype", "hotelid", "roomno"};
+   private static final String[] TOP_K_MAINTENANCE_COMPANY_COLUMNS = {"name", "repairs"};
+   private static final String[] REPAIRS_PER_YEAR_COLUMNS = {"repairyear", "repairs"};
+
+   // room occupancy per hotel and day, null when not loaded.
+   private volatile AvailabilityIndex _availability = null;
+
+   // top booking prices per range of days, null when not loaded.
+   private volatile PriceIndex _prices = null;
+
+   // customer IDs by name, null when not loaded.
+   private volatile CustomerIndex _customers = null;
+
+   // column store copy of Booking and Repair for the reports, null when not loaded.
+   private volatile AnalyticsSnapshot _analytics = null;
+
+   // locks serializing the bookings of the same room, a room maps to one of them.
+   private final ReentrantLock[] _roomLocks = roomLocks(Integer.getInteger("booking.lockStripes", 256));
+
+   // group commit of the inserts, one per shard, null when they commit one by one.
+   private WritePipeline[] _writes = null;
 
    // handling the keyboard inputs through a BufferedReader
    // This variable can be global for convenience.
@@ -56,8 +116,18 @@ public class DBProject {
          String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
          System.out.println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
+         // open the connection pool, sized by the pool.* system properties
+         this._pool = ConnectionPool.fromSystemProperties(url, user, passwd);
+         this._shards = ShardRouter.fromSystemProperties(this._pool, user, passwd);
+         // a replica of a single database only, see ReadRouter
+         if (this._shards == null) this._router = ReadRouter.fromSystemProperties(this._pool, dbname, user, passwd);
+         if (Boolean.getBoolean("writes.groupCommit")) {
+            ConnectionPool[] pools = shardPools();
+            this._writes = new WritePipeline[pools.length];
+            for (int i = 0; i < pools.length; ++i)
+               this._writes[i] = new WritePipeline(this, pools[i], Integer.getInteger("writes.batchSize", 64),
+                                                   Long.getLong("writes.maxDelayMs", 2L).longValue());
+         }//end if
          System.out.println("Done");
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
@@ -70,122 +140,1062 @@ public class DBProject {
     * Method to execute an update SQL statement.  Update SQL instructions
     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
     *
-    * @param sql the input SQL string
+    * @param sql the input SQL string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
     * @throws java.sql.SQLException when update failed
     */
-   public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      return executeUpdate (this._pool, sql, params);
+   }//end executeUpdate
 
-      // issues the update instruction
-      stmt.executeUpdate (sql);
+   // executeUpdate on a connection of the given pool
+   private int executeUpdate (ConnectionPool pool, String sql, Object... params) throws SQLException {
+      Connection conn = pool.acquire ();
+      try {
+         int rows = executeUpdate (conn, sql, params);
+         wrote ();
+         return rows;
+      } finally {
+         pool.release (conn);
+      }//end try
+   }//end executeUpdate
 
-      // close the instruction
-      stmt.close ();
+   /*
+    * executeUpdate on every shard, for the inserts into the global tables.
+    * When a shard fails, the row is deleted again (undo, with the ID of the
+    * row as its only parameter) from the shards that already have it, so
+    * the shards keep the same rows. Shards where the delete fails too are
+    * named in the error.
+    */
+   private int executeUpdateEverywhere (String sql, String undo, long id, Object... params) throws SQLException {
+      ConnectionPool[] pools = shardPools ();
+      int rows = 0;
+      for (int i = 0; i < pools.length; ++i) {
+         try {
+            rows = executeUpdate (pools[i], sql, params);
+         } catch (SQLException e) {
+            StringBuilder inconsistent = new StringBuilder ();
+            for (int done = 0; done < i; ++done) {
+               try {
+                  executeUpdate (pools[done], undo, id);
+               } catch (SQLException undoFailed) {
+                  inconsistent.append (inconsistent.length () == 0 ? "" : ", ").append (done);
+               }//end try
+            }//end for
+            if (inconsistent.length () == 0) throw e;
+            SQLException partial = new SQLException (e.getMessage () + " (row " + id + " failed on shard " + i
+                                                     + " and is left on shards " + inconsistent + ")", e.getSQLState ());
+            partial.initCause (e);
+            throw partial;
+         }//end try
+      }//end for
+      return rows;
+   }//end executeUpdateEverywhere
+
+   /**
+    * Method to execute an update SQL statement on a connection taken from
+    * the pool by the caller, e.g. inside a transaction (see inTransaction).
+    *
+    * @param conn the connection to run the statement on
+    * @param sql the input SQL string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (Connection conn, String sql, Object... params) throws SQLException {
+      boolean ok = false;
+      try {
+         // looks up (or prepares) the statement and binds the parameters
+         ConnectionPool pool = this._shards == null ? this._pool : this._shards.owner (conn);
+         PreparedStatement stmt = pool.statements (conn).prepare (sql);
+         bind (stmt, params);
+
+         // issues the update instruction
+         long t0 = System.nanoTime ();
+         int rows = stmt.executeUpdate ();
+         this._metrics.statement (sql, System.nanoTime () - t0, 0, rows, 0, true);
+         ok = true;
+         return rows;
+      } finally {
+         if (!ok) this._metrics.statement (sql, 0, 0, 0, 0, false);
+      }//end try
    }//end executeUpdate
 
+   /**
+    * Method to execute an insert of a menu operation. With
+    * -Dwrites.groupCommit=true it is committed together with the inserts
+    * of other threads (see WritePipeline), otherwise on its own.
+    *
+    * @param sql the input SQL string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when the insert failed
+    */
+   public int write (String sql, Object... params) throws SQLException {
+      return writeOn (0, sql, params);
+   }//end write
+
+   /**
+    * Method to execute an insert of a menu operation on the shard of a
+    * hotel, see write(String, Object...).
+    *
+    * @param hotelID the hotel the inserted row belongs to
+    * @param sql the input SQL string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when the insert failed
+    */
+   public int write (int hotelID, String sql, Object... params) throws SQLException {
+      return writeOn (shardOf (hotelID), sql, params);
+   }//end write
+
+   private int writeOn (int shard, String sql, Object... params) throws SQLException {
+      if (this._writes == null) return executeUpdate (shardPool (shard), sql, params);
+      int rows = WritePipeline.await (this._writes[shard].submit (sql, params));
+      wrote ();
+      return rows;
+   }//end writeOn
+
+   /**
+    * Method to run the statements of a menu operation in one transaction,
+    * which with -Dwrites.groupCommit=true is shared with the inserts of
+    * other threads (see WritePipeline).
+    *
+    * @param work the statements to run
+    * @throws java.sql.SQLException when a statement or the commit fails
+    */
+   public void write (Transaction work) throws SQLException {
+      writeOn (0, work);
+   }//end write
+
+   /**
+    * Method to run the statements of a menu operation in one transaction
+    * on the shard of a hotel, see write(Transaction).
+    *
+    * @param hotelID the hotel the statements write to
+    * @param work the statements to run
+    * @throws java.sql.SQLException when a statement or the commit fails
+    */
+   public void write (int hotelID, Transaction work) throws SQLException {
+      writeOn (shardOf (hotelID), work);
+   }//end write
+
+   private void writeOn (int shard, Transaction work) throws SQLException {
+      if (this._writes == null) {
+         inTransaction (shardPool (shard), work);
+      } else {
+         WritePipeline.await (this._writes[shard].submit (work));
+         wrote ();
+      }//end if
+   }//end writeOn
+
+   // the reports of this thread read from the primary until the replica has this write
+   private void wrote () {
+      if (this._router != null) this._router.wrote ();
+   }//end wrote
+
+   // the pool the reports read from
+   private ConnectionPool readPool () {
+      return this._router == null ? this._pool : this._router.route ();
+   }//end readPool
+
+   // the pools of every shard, the first shard first
+   private ConnectionPool[] shardPools () {
+      return this._shards == null ? new ConnectionPool[] {this._pool} : this._shards.pools ();
+   }//end shardPools
+
+   private ConnectionPool shardPool (int shard) {
+      return this._shards == null ? this._pool : this._shards.get (shard);
+   }//end shardPool
+
+   private int shardOf (int hotelID) {
+      return this._shards == null ? 0 : this._shards.shard (hotelID);
+   }//end shardOf
+
+   // the pool the reports on a hotel read from
+   private ConnectionPool hotelPool (int hotelID) {
+      return this._shards == null ? readPool () : this._shards.forHotel (hotelID);
+   }//end hotelPool
+
+   /**
+    * Statements run together in one transaction, see inTransaction.
+    */
+   public interface Transaction {
+      /**
+       * @param conn the connection holding the transaction
+       * @throws java.sql.SQLException when a statement fails, which rolls the transaction back
+       */
+      void run (Connection conn) throws SQLException;
+   }//end Transaction
+
+   /**
+    * Method to run several statements in one transaction. The transaction
+    * is committed when work returns and rolled back when it throws.
+    *
+    * @param work the statements to run
+    * @throws java.sql.SQLException when a statement or the commit fails
+    */
+   public void inTransaction (Transaction work) throws SQLException {
+      inTransaction (this._pool, work);
+   }//end inTransaction
+
+   // inTransaction on a connection of the given pool
+   private void inTransaction (ConnectionPool pool, Transaction work) throws SQLException {
+      Connection conn = pool.acquire ();
+      try {
+         conn.setAutoCommit (false);
+         work.run (conn);
+         conn.commit ();
+         wrote ();
+      } finally {
+         // rolls back and restores autocommit if the commit was not reached
+         pool.release (conn);
+      }//end try
+   }//end inTransaction
+
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and outputs the results to
     * standard out.
     *
-    * @param query the input query string
-    * @return the number of rows returned
+    * The rows are copied into a disconnected result set so that the
+    * connection can go back to the pool before the caller reads them.
+    *
+    * @param query the input query string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the rows returned by the query
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public ResultSet executeQuery (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+   public ResultSet executeQuery (String query, Object... params) throws SQLException {
+      return executeQuery (this._pool, query, params);
+   }//end executeQuery
 
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-      return rs;
+   /**
+    * Method to execute a query on the rows of one hotel, on the shard
+    * holding the hotel, see executeQuery.
+    *
+    * @param hotelID the hotel the query reads
+    * @param query the input query string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the rows returned by the query
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ResultSet executeHotelQuery (int hotelID, String query, Object... params) throws SQLException {
+      return executeQuery (shardPool (shardOf (hotelID)), query, params);
+   }//end executeHotelQuery
+
+   // executeQuery on a connection of the given pool
+   private ResultSet executeQuery (ConnectionPool pool, String query, Object... params) throws SQLException {
+      boolean ok = false;
+      Connection conn = pool.acquire ();
+      try {
+         PreparedStatement stmt = pool.statements (conn).prepare (query);
+         bind (stmt, params);
+
+         // issues the query instruction
+         long t0 = System.nanoTime ();
+         ResultSet rs = stmt.executeQuery ();
+         long t1 = System.nanoTime ();
+         CachedRowSet rows = RowSetProvider.newFactory ().createCachedRowSet ();
+         rows.populate (rs);
+         rs.close ();
+         this._metrics.statement (query, t1 - t0, System.nanoTime () - t1, rows.size (), 0, true);
+         ok = true;
+         return rows;
+      } finally {
+         if (!ok) this._metrics.statement (query, 0, 0, 0, 0, false);
+         pool.release (conn);
+      }//end try
    }//end executeQuery
 
-   public int executeQuery2 (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+   /**
+    * Method to execute a query and print its rows to standard out.
+    *
+    * @param query the input query string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows printed
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery2 (String query, Object... params) throws SQLException {
+      return executeQuery2 (ResultPrinter.fromSystemProperties (), query, params);
+   }//end executeQuery2
 
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
+   /**
+    * Method to execute a query and print its rows with the given printer.
+    *
+    * @param printer where the rows are printed
+    * @param query the input query string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows printed
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery2 (ResultPrinter printer, String query, Object... params) throws SQLException {
+      return executeQuery2 (readPool (), printer, query, params);
+   }//end executeQuery2
+
+   // executeQuery2 on a connection of the given pool
+   private int executeQuery2 (ConnectionPool pool, ResultPrinter printer, String query, Object... params) throws SQLException {
+      // exports may be of any size, the driver would hold the whole result
+      if (printer instanceof ExportPrinter) return streamQuery (pool, printer, query, params);
+      boolean ok = false;
+      Connection conn = pool.acquire ();
+      try {
+         PreparedStatement stmt = pool.statements (conn).prepare (query);
+         bind (stmt, params);
+
+         // issues the query instruction
+         long t0 = System.nanoTime ();
+         ResultSet rs = stmt.executeQuery ();
+         long t1 = System.nanoTime ();
+         int rows = printer.print (rs);
+         rs.close ();
+         this._metrics.statement (query, t1 - t0, System.nanoTime () - t1, rows, printer.getCharsRead (), true);
+         ok = true;
+      } finally {
+         if (!ok) this._metrics.statement (query, 0, 0, 0, 0, false);
+         pool.release (conn);
+      }//end try
+      return printer.finish ();
+   }//end executeQuery2
+
+   /**
+    * Method to execute a query that may return many rows and print them to
+    * standard out as they arrive, one page at a time (see scanQuery).
+    *
+    * @param query the input query string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows printed
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int streamQuery (String query, Object... params) throws SQLException {
+      return streamQuery (ResultPrinter.fromSystemProperties (), query, params);
+   }//end streamQuery
+
+   /**
+    * Method to stream the rows of a query to the given printer.
+    *
+    * @param printer where the rows are printed
+    * @param query the input query string, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows printed
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int streamQuery (ResultPrinter printer, String query, Object... params) throws SQLException {
+      return streamQuery (readPool (), printer, query, params);
+   }//end streamQuery
+
+   // streamQuery on a connection of the given pool
+   private int streamQuery (ConnectionPool pool, ResultPrinter printer, String query, Object... params) throws SQLException {
+      return streamQuery (new ConnectionPool[] {pool}, printer, query, params);
+   }//end streamQuery
+
+   // streamQuery on each of the pools in turn, into the same printer
+   private int streamQuery (ConnectionPool[] pools, final ResultPrinter printer, String query, Object... params) throws SQLException {
+      PageHandler handler = new PageHandler () {
+         public int page (ResultSet rs) throws SQLException {
+            int printed = printer.print (rs);
+            return printer.isFull () ? -1 : printed;
+         }
+      };
+      for (ConnectionPool pool : pools) {
+         if (printer.isFull ()) break;
+         scan (pool, query, handler, printer, params);
+      }//end for
+      return printer.finish ();
+   }//end streamQuery
+
+   /**
+    * Callback for the pages of a query run by scanQuery.
+    */
+   public interface PageHandler {
+      /**
+       * @param rs the rows of one page
+       * @return the number of rows read from rs, or -1 to stop the scan
+       * @throws java.sql.SQLException when the rows cannot be read
        */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-    if(outputHeader){
-       for(int i = 1; i <= numCol; i++){
-      System.out.print(rsmd.getColumnName(i) + "\t");
-       }
-       System.out.println();
-       outputHeader = false;
-    }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         // System.out.println ();
-         ++rowCount;
-      }//end while
-      stmt.close ();
-      return rowCount;
-   }
+      int page (ResultSet rs) throws SQLException;
+   }//end PageHandler
+
+   /**
+    * Method to read a query result of any size. The query runs through a
+    * server side cursor inside a transaction, and rows are fetched
+    * output.fetchSize at a time, so only one page of the result is ever
+    * held by the client. With shards, the query runs on each shard in
+    * turn and handler receives the pages of all of them.
+    *
+    * @param query the input query string, with a ? placeholder for every parameter
+    * @param handler receives the pages of the result, in order
+    * @param params the values bound to the placeholders, in order
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public void scanQuery (String query, PageHandler handler, Object... params) throws SQLException {
+      for (ConnectionPool pool : shardPools ()) scan (pool, query, handler, null, params);
+   }//end scanQuery
+
+   /**
+    * Method to read a query on the global tables (Customer,
+    * MaintenanceCompany, Staff), which every shard holds in full, from the
+    * first shard only, see scanQuery.
+    *
+    * @param query the input query string, with a ? placeholder for every parameter
+    * @param handler receives the pages of the result, in order
+    * @param params the values bound to the placeholders, in order
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public void scanGlobal (String query, PageHandler handler, Object... params) throws SQLException {
+      scan (this._pool, query, handler, null, params);
+   }//end scanGlobal
+
+   // scanQuery on the given pool, also counting the characters printed when the pages go to a printer
+   private void scan (ConnectionPool pool, String query, PageHandler handler, ResultPrinter printer, Object... params) throws SQLException {
+      int fetchSize = Integer.getInteger ("output.fetchSize", 500);
+      long dbNanos = 0;
+      long clientNanos = 0;
+      long rows = 0;
+      boolean ok = false;
+      Connection conn = pool.acquire ();
+      try {
+         // cursors only live inside a transaction
+         conn.setAutoCommit (false);
+         StatementCache statements = pool.statements (conn);
+
+         long t0 = System.nanoTime ();
+         PreparedStatement declare = statements.prepare ("DECLARE " + CURSOR_NAME + " NO SCROLL CURSOR FOR " + query, false);
+         bind (declare, params);
+         declare.execute ();
+
+         PreparedStatement fetch = statements.prepare ("FETCH FORWARD " + fetchSize + " FROM " + CURSOR_NAME, false);
+         while (true) {
+            ResultSet rs = fetch.executeQuery ();
+            long t1 = System.nanoTime ();
+            dbNanos += t1 - t0;
+            int read = handler.page (rs);
+            rs.close ();
+            t0 = System.nanoTime ();
+            clientNanos += t0 - t1;
+            if (read > 0) rows += read;
+            if (read < fetchSize) break;
+         }//end while
+
+         statements.prepare ("CLOSE " + CURSOR_NAME, false).execute ();
+         conn.commit ();
+         dbNanos += System.nanoTime () - t0;
+         ok = true;
+      } finally {
+         this._metrics.statement (query, dbNanos, clientNanos, rows, printer == null ? 0 : printer.getCharsRead (), ok);
+         // rolls back and restores autocommit if the commit was not reached
+         pool.release (conn);
+      }//end try
+   }//end scan
+
+   /*
+    * Binds the parameters to the statement by their Java type, so that
+    * each value reaches Postgres as a typed parameter instead of text
+    * spliced into the query.
+    */
+   static void bind (PreparedStatement stmt, Object[] params) throws SQLException {
+      for (int i = 0; i < params.length; ++i) {
+         Object p = params[i];
+         int idx = i + 1;
+         if (p == null)                    stmt.setNull (idx, Types.NUMERIC);
+         else if (p instanceof Integer)    stmt.setInt (idx, ((Integer) p).intValue ());
+         else if (p instanceof Long)       stmt.setLong (idx, ((Long) p).longValue ());
+         else if (p instanceof BigDecimal) stmt.setBigDecimal (idx, (BigDecimal) p);
+         else if (p instanceof Date)       stmt.setDate (idx, (Date) p);
+         else if (p instanceof Boolean)    stmt.setBoolean (idx, ((Boolean) p).booleanValue ());
+         else                              stmt.setString (idx, p.toString ());
+      }//end for
+   }//end bind
 
-   
    public static void checkEmpty(String type,String str) throws Exception {
-      if(str.length() == 0 || str == null) throw new Exception("Invalid input! " + type + " cannot be empty.");
+      if(str == null || str.length() == 0) throw new Exception("Invalid input! " + type + " cannot be empty.");
    }
 
    public static void checkDigit(String type,String str) throws Exception {
-      if(str.matches(".*\\d.*")) throw new Exception("Invalid input! " + type + " can not have any numbers.");
+      if(Input.hasDigit(str)) throw new Exception("Invalid input! " + type + " can not have any numbers.");
    }
 
    public static void checkAlpha(String type,String str) throws Exception {
-      if(str.matches(".*[a-zA-Z]+.*")) throw new Exception("Invalid input! " + type + " can not have any alpha characters.");
+      if(Input.hasLetter(str)) throw new Exception("Invalid input! " + type + " can not have any alpha characters.");
    }
 
    public static void checkDate(String type, String str) throws Exception {
-      String dateRegex = "^[0-3]?[0-9]/[0-3]?[0-9]/(?:[0-9]{2})?[0-9]{2}$"; 
-        Pattern pattern = Pattern.compile(dateRegex); 
-        Matcher checker = pattern.matcher((CharSequence)str);
-        if(!checker.matches()) throw new Exception("Invalid input! " + type + " is not in correct date format (MM/DD/YYYY)");
+      Input.parseEpochDay(type, str);
+   }
+
+   public static void checkTorF(String type,String str) throws Exception {
+      Input.parseTorF(type, str);
+   }
+
+   public static void checkHotel(DBProject esql, int hotelID) throws Exception {
+      if(esql.reference().hotel(hotelID) == null) throw new Exception("Invalid input! There is no hotel " + hotelID + ".");
    }
 
-     public static void checkTorF(String type,String str) throws Exception {
-      if(!str.equals("T") || !str.equals("F")) throw new Exception("Invalid input. " + type + " has to be T or F.");
+   public static void checkRoom(DBProject esql, int hotelID, int roomNo) throws Exception {
+      if(esql.reference().roomType(hotelID, roomNo) == null) throw new Exception("Invalid input! Hotel " + hotelID + " has no room " + roomNo + ".");
    }
 
+   public static void checkCompany(DBProject esql, int cmpID) throws Exception {
+      if(esql.reference().companyName(cmpID) == null) throw new Exception("Invalid input! There is no maintenance company " + cmpID + ".");
+   }
+
+   public static void checkStaffRole(DBProject esql, long ssn, Input.StaffRole role) throws Exception {
+      String actual = esql.reference().staffRole(ssn);
+      if(actual == null) throw new Exception("Invalid input! There is no staff member " + ssn + ".");
+      if(!actual.equals(role.name())) throw new Exception("Invalid input! Staff member " + ssn + " is a " + actual + ", not a " + role + ".");
+   }
+
+   public static int toInt(String type, String str) throws Exception {
+      return Input.parseInt(type, str);
+   }
+
+   public static BigDecimal toDecimal(String type, String str) throws Exception {
+      if(str.trim().length() == 0) return null;
+      try {
+         return new BigDecimal(str.trim());
+      } catch (NumberFormatException e) {
+         throw new Exception("Invalid input! " + type + " has to be a number.");
+      }
+   }
+
+   public static Date plusDays(Date date, int days) {
+      java.util.Calendar cal = java.util.Calendar.getInstance();
+      cal.setTime(date);
+      cal.add(java.util.Calendar.DATE, days);
+      return new Date(cal.getTimeInMillis());
+   }
+
+   public static Date toDate(String type, String str) throws Exception {
+      return Input.toDate(Input.parseEpochDay(type, str));
+   }
+
+
+
+   /**
+    * Allocates the primary key for a new row.
+    *
+    * @param seq the table the row is inserted into
+    * @return an unused ID for that table
+    * @throws java.sql.SQLException when a new block of IDs cannot be reserved
+    */
+   public long nextId (IdAllocator.Sequence seq) throws SQLException {
+      return this._ids.nextId(seq);
+   }//end nextId
+
+   /**
+    * Loads the in-memory indexes used by the menu operations. An index
+    * that cannot be loaded is left out and its operations use SQL only.
+    */
+   public void buildIndexes () {
+      if (Boolean.parseBoolean(System.getProperty("refcache.preload", "true"))) {
+         try {
+            this._reference.load();
+         } catch (SQLException e) {
+            System.err.println("Reference data not preloaded: " + e.getMessage());
+         }//end try
+      }//end if
+      if (Boolean.parseBoolean(System.getProperty("availability.index", "true"))) {
+         try {
+            this._availability = AvailabilityIndex.build(this);
+         } catch (SQLException e) {
+            System.err.println("Room availability index not loaded: " + e.getMessage());
+         }//end try
+      }//end if
+      if (Boolean.parseBoolean(System.getProperty("prices.index", "true"))) {
+         try {
+            this._prices = PriceIndex.build(this, Math.max(1, Integer.getInteger("prices.maxK", 100)));
+         } catch (SQLException e) {
+            System.err.println("Booking price index not loaded: " + e.getMessage());
+         }//end try
+      }//end if
+      if (Boolean.parseBoolean(System.getProperty("customers.index", "true"))) {
+         try {
+            this._customers = CustomerIndex.build(this);
+         } catch (SQLException e) {
+            System.err.println("Customer name index not loaded: " + e.getMessage());
+         }//end try
+      }//end if
+      if (Boolean.getBoolean("analytics.snapshot")) {
+         try {
+            this._analytics = AnalyticsSnapshot.open(this);
+         } catch (SQLException e) {
+            System.err.println("Analytics snapshot not loaded: " + e.getMessage());
+         } catch (IOException e) {
+            System.err.println("Analytics snapshot not loaded: " + e.getMessage());
+         }//end try
+      }//end if
+   }//end buildIndexes
+
+   /**
+    * Counts the rooms of a hotel that are free on every day of a date
+    * range, or that were never booked when no range is given. Answers from
+    * the availability index when it can, from SQL otherwise; with
+    * -Davailability.crossCheck=true both are computed and compared.
+    *
+    * @param hotelID the hotel
+    * @param from first day of the range, or null
+    * @param to last day of the range, or null
+    * @return the number of free rooms
+    * @throws java.sql.SQLException when the SQL query fails
+    */
+   public int availableRooms (int hotelID, Date from, Date to) throws SQLException {
+      int fromIndex = -1;
+      AvailabilityIndex index = this._availability;
+      if (index != null) {
+         fromIndex = from == null ? index.unbookedRooms(hotelID)
+            : index.availableRooms(hotelID, AvailabilityIndex.epochDay(from), AvailabilityIndex.epochDay(to));
+      }//end if
+      if (fromIndex >= 0 && !Boolean.getBoolean("availability.crossCheck")) return fromIndex;
+
+      ResultSet rs = from == null ? executeQuery(hotelPool(hotelID), Queries.AVAILABLE_ROOMS, hotelID)
+                                  : executeQuery(hotelPool(hotelID), Queries.AVAILABLE_ROOMS_FOR_DATES, hotelID, from, to);
+      int fromSql = rs.next() ? rs.getInt(1) : 0;
+      if (fromIndex >= 0 && fromIndex != fromSql)
+         System.err.println("Availability index mismatch for hotel " + hotelID + ": index says "
+                            + fromIndex + ", database says " + fromSql);
+      return fromSql;
+   }//end availableRooms
+
+   /**
+    * @return the timings and counters of the operations and statements run so far
+    */
+   public Metrics metrics () {
+      return this._metrics;
+   }//end metrics
+
+   /**
+    * @return the cache of hotels, rooms, maintenance companies and staff roles
+    */
+   public ReferenceData reference () {
+      return this._reference;
+   }//end reference
 
+   /**
+    * Keeps the in-memory indexes current after a room was added.
+    *
+    * @param hotelID the hotel of the new room
+    * @param roomNo the number of the new room
+    * @param roomType the type of the new room
+    */
+   public void roomAdded (int hotelID, int roomNo, String roomType) {
+      this._reference.roomAdded(hotelID, roomNo, roomType);
+      AvailabilityIndex index = this._availability;
+      if (index != null) index.roomAdded(hotelID, roomNo);
+   }//end roomAdded
+
+   /**
+    * Keeps the in-memory indexes current after a booking was made.
+    *
+    * @param hotelID the hotel of the booked room
+    * @param roomNo the booked room
+    * @param bookingDate the day it is booked for
+    * @param priceCents the price of the booking in cents
+    */
+   public void bookingAdded (int hotelID, int roomNo, Date bookingDate, long priceCents) {
+      int day = AvailabilityIndex.epochDay(bookingDate);
+      AvailabilityIndex index = this._availability;
+      if (index != null) index.booked(hotelID, roomNo, day);
+      PriceIndex prices = this._prices;
+      if (prices != null) prices.booked(hotelID, roomNo, day, priceCents);
+   }//end bookingAdded
 
    /**
-    * Method to close the physical connection if it is open.
+    * @return the connection pool used by this instance, the pool of the
+    *         first shard when the hotels are spread over several databases
+    */
+   public ConnectionPool getPool () {
+      return this._pool;
+   }//end getPool
+
+   /**
+    * @return the pools of every shard, the first shard first; the pool of
+    *         the database alone when there are no shards
+    */
+   public ConnectionPool[] getShardPools () {
+      return shardPools();
+   }//end getShardPools
+
+   /**
+    * Method to close the physical connections if they are open.
     */
    public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
+      if (this._writes != null){
+         for (WritePipeline writes : this._writes) writes.close ();
+      }//end if
+      if (this._analytics != null){
+         this._analytics.close ();
+      }//end if
+      if (this._router != null){
+         this._router.close ();
+      }//end if
+      if (this._shards != null){
+         this._shards.close ();
+      }//end if
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
+   /*
+    * The menu operations without their prompts. The static methods at the
+    * end of the file read and check the keyboard input and call these, and
+    * so does Operation for named arguments. Inserts check the rows they
+    * refer to and return the ID of the new row; reports print through the
+    * given printer and return the number of rows printed.
+    */
+
+   public long addCustomer (String fname, String lname, String address, BigDecimal phNo, Date dob, Input.GenderType gender) throws Exception {
+      long id = nextId(IdAllocator.Sequence.CUSTOMER);
+      executeUpdateEverywhere(Queries.ADD_CUSTOMER, Queries.UNDO_ADD_CUSTOMER, id, id, fname, lname, address, phNo, dob, gender);
+      CustomerIndex customers = this._customers;
+      if (customers != null) customers.customerAdded(id, fname, lname);
+      return id;
+   }//end addCustomer
+
+   public void addRoom (int hotelID, int roomNo, String roomType) throws Exception {
+      checkHotel(this, hotelID);
+      executeUpdate(shardPool(shardOf(hotelID)), Queries.ADD_ROOM, hotelID, roomNo, roomType);
+      roomAdded(hotelID, roomNo, roomType);
+   }//end addRoom
+
+   public long addMaintenanceCompany (String name, String address, boolean certified) throws Exception {
+      long id = nextId(IdAllocator.Sequence.MAINTENANCE_COMPANY);
+      executeUpdateEverywhere(Queries.ADD_MAINTENANCE_COMPANY, Queries.UNDO_ADD_MAINTENANCE_COMPANY, id, id, name, address, Boolean.valueOf(certified));
+      this._reference.companyAdded(id, name);
+      return id;
+   }//end addMaintenanceCompany
+
+   public long addRepair (final int hotelID, final int roomNo, final int mCompany, final Date repairDate,
+                          final String description, final String repairType) throws Exception {
+      checkRoom(this, hotelID, roomNo);
+      checkCompany(this, mCompany);
+      final long id = nextId(IdAllocator.Sequence.REPAIR);
+      Transaction insert = new Transaction() {
+         public void run (Connection conn) throws SQLException {
+            executeUpdate(conn, Queries.ADD_REPAIR, id, hotelID, roomNo, mCompany, repairDate, description, repairType);
+            RepairCounts.repairAdded(DBProject.this, conn, hotelID, roomNo, mCompany, repairDate, repairType != null);
+         }
+      };
+      try {
+         write(hotelID, insert);
+      } catch (SQLException e) {
+         // a concurrent repair inserted the count row first; the retry updates it
+         if (!RepairCounts.lostFirstCount(e)) throw e;
+         write(hotelID, insert);
+      }//end try
+      return id;
+   }//end addRepair
+
+   public long bookRoom (int customer, int hotelID, int roomNo, Date bookingDate, BigDecimal noOfPeople, long priceCents) throws Exception {
+      checkRoom(this, hotelID, roomNo);
+      // bookings of other rooms go on in parallel; a second booking of this room waits and then sees the first
+      ReentrantLock lock = this._roomLocks[stripe(hotelID, roomNo)];
+      lock.lock();
+      try {
+         AvailabilityIndex index = this._availability;
+         if (index != null && index.bookedOn(hotelID, roomNo, AvailabilityIndex.epochDay(bookingDate)) == 1)
+            throw new AlreadyBookedException(hotelID, roomNo, bookingDate);
+         long id = nextId(IdAllocator.Sequence.BOOKING);
+         try {
+            write(hotelID, Queries.BOOK_ROOM, id, customer, hotelID, roomNo, bookingDate, noOfPeople, Input.fromCents(priceCents));
+         } catch (SQLException e) {
+            // booked by another process, caught by booking_room_day_idx
+            if ("23505".equals(e.getSQLState()) || String.valueOf(e.getMessage()).contains("booking_room_day_idx"))
+               throw new AlreadyBookedException(hotelID, roomNo, bookingDate);
+            throw e;
+         }//end try
+         bookingAdded(hotelID, roomNo, bookingDate, priceCents);
+         return id;
+      } finally {
+         lock.unlock();
+      }//end try
+   }//end bookRoom
+
+   public long assignHouseCleaningToRoom (int staffID, int hotelID, int roomNo) throws Exception {
+      checkStaffRole(this, staffID, Input.StaffRole.HouseCleaning);
+      checkRoom(this, hotelID, roomNo);
+      long id = nextId(IdAllocator.Sequence.ASSIGNED);
+      write(hotelID, Queries.ASSIGN_HOUSE_CLEANING, id, staffID, hotelID, roomNo);
+      return id;
+   }//end assignHouseCleaningToRoom
+
+   public long repairRequest (int staffID, int hotelID, int roomNo, int repairID, Date requestDate, String description) throws Exception {
+      checkStaffRole(this, staffID, Input.StaffRole.Manager);
+      checkRoom(this, hotelID, roomNo);
+      long id = nextId(IdAllocator.Sequence.REQUEST);
+      write(hotelID, Queries.REPAIR_REQUEST, id, staffID, repairID, requestDate, description);
+      return id;
+   }//end repairRequest
+
+   public int numberOfBookedRooms (int hotelID, ResultPrinter out) throws SQLException {
+      return executeQuery2(hotelPool(hotelID), out, Queries.BOOKED_ROOMS, hotelID);
+   }//end numberOfBookedRooms
+
+   public int listHotelRoomBookingsForAWeek (int hotelID, Date start, ResultPrinter out) throws SQLException {
+      AnalyticsSnapshot analytics = this._analytics;
+      List<String[]> rows = analytics == null ? null
+         : analytics.bookingsForAWeek(hotelID, AvailabilityIndex.epochDay(start));
+      if (rows != null) return print(out, HOTEL_BOOKINGS_FOR_A_WEEK_COLUMNS, rows);
+      return streamQuery(hotelPool(hotelID), out, Queries.HOTEL_BOOKINGS_FOR_A_WEEK, hotelID, start, plusDays(start, 7));
+   }//end listHotelRoomBookingsForAWeek
+
+   /**
+    * Option 10 a page at a time, by keyset pagination: the bookings right
+    * after (or before) the booking of room keyRoomNo on keyDate, in
+    * (bookingDate, roomNo) order. Every page is one index range scan of
+    * at most size rows, however deep it is.
+    *
+    * @param hotelID the hotel
+    * @param start the first day of the week
+    * @param keyDate the day of the last booking of the page shown before (of the first one going back),
+    *        or null for the first page
+    * @param keyRoomNo the room of that booking
+    * @param forward true for the page after the key, false for the page before it
+    * @param size the most rows of the page
+    * @return the rows of the page, as roomNo and bookingDate, in (bookingDate, roomNo) order
+    * @throws java.sql.SQLException when the query fails
+    */
+   public List<String[]> hotelBookingsPage (int hotelID, Date start, Date keyDate, int keyRoomNo, boolean forward, int size) throws SQLException {
+      if (keyDate == null) {
+         keyDate = start;
+         keyRoomNo = Integer.MIN_VALUE;
+      }//end if
+      List<String[]> rows = rows(executeQuery(hotelPool(hotelID),
+                                              forward ? Queries.HOTEL_BOOKINGS_PAGE_AFTER : Queries.HOTEL_BOOKINGS_PAGE_BEFORE,
+                                              hotelID, start, plusDays(start, 7), keyDate, keyRoomNo, size));
+      if (!forward) Collections.reverse(rows);
+      return rows;
+   }//end hotelBookingsPage
+
+   public int topKHighestRoomPriceForADateRange (Date from, Date to, int k, ResultPrinter out) throws SQLException {
+      PriceIndex prices = this._prices;
+      long[] top = prices == null ? null
+         : prices.topK(AvailabilityIndex.epochDay(from), AvailabilityIndex.epochDay(to), k);
+      if (top == null && this._shards != null)
+         return print(out, TOP_K_ROOM_PRICE_COLUMNS, gatherTop(3, k, Queries.TOP_K_ROOM_PRICE, from, to, k));
+      if (top == null) return executeQuery2(out, Queries.TOP_K_ROOM_PRICE, from, to, k);
+
+      // the same columns as the query
+      List<String[]> rows = new ArrayList<String[]>(top.length);
+      for (long entry : top) {
+         int hotelID = PriceIndex.hotelID(entry);
+         int roomNo = PriceIndex.roomNo(entry);
+         int cents = PriceIndex.cents(entry);
+         rows.add(new String[] {String.valueOf(hotelID), String.valueOf(roomNo), this._reference.roomType(hotelID, roomNo),
+                                cents / 100 + "." + (cents % 100 < 10 ? "0" : "") + cents % 100});
+      }//end for
+      out.print(TOP_K_ROOM_PRICE_COLUMNS, rows);
+      return out.finish();
+   }//end topKHighestRoomPriceForADateRange
+
+   public int topKHighestPriceBookingsForACustomer (String fname, String lname, int k, ResultPrinter out) throws SQLException {
+      long[] ids = customersNamed(fname, lname);
+      AnalyticsSnapshot analytics = this._analytics;
+      List<String[]> rows = analytics == null || ids == null ? null : analytics.topPrices(ids, k);
+      if (rows != null) return print(out, TOP_K_CUSTOMER_BOOKINGS_COLUMNS, rows);
+      if (this._shards != null) {
+         rows = ids != null && ids.length == 1 ? gatherTop(0, k, Queries.TOP_K_CUSTOMER_BOOKINGS_BY_ID, ids[0], k)
+                                               : gatherTop(0, k, Queries.TOP_K_CUSTOMER_BOOKINGS, fname, lname, k);
+         return print(out, TOP_K_CUSTOMER_BOOKINGS_COLUMNS, rows);
+      }//end if
+      if (ids != null && ids.length == 1) return executeQuery2(out, Queries.TOP_K_CUSTOMER_BOOKINGS_BY_ID, ids[0], k);
+      return executeQuery2(out, Queries.TOP_K_CUSTOMER_BOOKINGS, fname, lname, k);
+   }//end topKHighestPriceBookingsForACustomer
+
+   public int totalCostForCustomer (int hotelID, String fname, String lname, Date from, Date to, ResultPrinter out) throws SQLException {
+      long[] ids = customersNamed(fname, lname);
+      AnalyticsSnapshot analytics = this._analytics;
+      List<String[]> rows = analytics == null || ids == null ? null
+         : analytics.totalCost(hotelID, ids, AvailabilityIndex.epochDay(from), AvailabilityIndex.epochDay(to));
+      if (rows != null) return print(out, CUSTOMER_TOTAL_COST_COLUMNS, rows);
+      if (ids != null && ids.length == 1)
+         return executeQuery2(hotelPool(hotelID), out, Queries.CUSTOMER_TOTAL_COST_BY_ID, hotelID, ids[0], from, to);
+      return executeQuery2(hotelPool(hotelID), out, Queries.CUSTOMER_TOTAL_COST, hotelID, fname, lname, from, to);
+   }//end totalCostForCustomer
+
+   public int findCustomers (String lnamePrefix, String fnamePrefix, int limit, ResultPrinter out) throws SQLException {
+      CustomerIndex customers = this._customers;
+      if (customers == null) {
+         String fname = fnamePrefix == null ? "%" : likePrefix(fnamePrefix) + "%";
+         String lname = likePrefix(lnamePrefix) + (fnamePrefix == null ? "%" : "");
+         return executeQuery2(out, Queries.FIND_CUSTOMERS, lname, fname, limit);
+      }//end if
+      out.print(FIND_CUSTOMERS_COLUMNS, customers.search(lnamePrefix, fnamePrefix, limit));
+      return out.finish();
+   }//end findCustomers
+
+   // the IDs of the customers with a name, or null when the customer index is not loaded
+   private long[] customersNamed (String fname, String lname) throws SQLException {
+      CustomerIndex customers = this._customers;
+      return customers == null ? null : customers.lookup(fname, lname);
+   }//end customersNamed
+
+   private static ReentrantLock[] roomLocks (int stripes) {
+      int n = 1;
+      while (n < stripes) n <<= 1;
+      ReentrantLock[] locks = new ReentrantLock[n];
+      for (int i = 0; i < n; ++i) locks[i] = new ReentrantLock();
+      return locks;
+   }//end roomLocks
+
+   // the lock stripe of a room
+   private int stripe (int hotelID, int roomNo) {
+      int h = hotelID * 0x9E3779B1 + roomNo;
+      return (h ^ (h >>> 16)) & (this._roomLocks.length - 1);
+   }//end stripe
+
+   // escapes the LIKE wildcards of a literal prefix
+   private static String likePrefix (String s) {
+      return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+   }//end likePrefix
+
+   public int listRepairsMade (String company, ResultPrinter out) throws SQLException {
+      AnalyticsSnapshot analytics = this._analytics;
+      List<String[]> rows = analytics == null ? null : analytics.repairsBy(company);
+      if (rows != null) return print(out, REPAIRS_BY_COMPANY_COLUMNS, rows);
+      if (this._shards != null) return streamQuery(this._shards.pools(), out, Queries.REPAIRS_BY_COMPANY, company);
+      return streamQuery(out, Queries.REPAIRS_BY_COMPANY, company);
+   }//end listRepairsMade
+
+   /**
+    * Option 14 a page at a time, by keyset pagination: the repairs right
+    * after (or before) the repair keyRID, in rID order. With shards every
+    * shard returns its own page and the pages are merged.
+    *
+    * @param company the name of the maintenance company
+    * @param keyRID the last repair of the page shown before (the first one going back),
+    *        or Integer.MIN_VALUE for the first page
+    * @param forward true for the page after the key, false for the page before it
+    * @param size the most rows of the page
+    * @return the rows of the page, as rID, repairType, hotelID and roomNo, in rID order
+    * @throws java.sql.SQLException when the query fails
+    */
+   public List<String[]> repairsPage (final String company, final int keyRID, final boolean forward, final int size) throws SQLException {
+      final String query = forward ? Queries.REPAIRS_PAGE_AFTER : Queries.REPAIRS_PAGE_BEFORE;
+      List<String[]> rows;
+      if (this._shards == null) {
+         rows = rows(executeQuery(readPool(), query, company, keyRID, size));
+      } else {
+         List<List<String[]>> perShard = this._shards.scatter(new ShardRouter.ShardCall<List<String[]>>() {
+            public List<String[]> call (ConnectionPool pool) throws SQLException {
+               return rows(executeQuery(pool, query, company, keyRID, size));
+            }
+         });
+         rows = ShardRouter.merge(perShard, new Comparator<String[]>() {
+            public int compare (String[] a, String[] b) {
+               int c = Integer.valueOf(a[0].trim()).compareTo(Integer.valueOf(b[0].trim()));
+               return forward ? c : -c;
+            }
+         }, size);
+      }//end if
+      if (!forward) Collections.reverse(rows);
+      return rows;
+   }//end repairsPage
+
+   public int topKMaintenanceCompany (int k, ResultPrinter out) throws SQLException {
+      AnalyticsSnapshot analytics = this._analytics;
+      List<String[]> rows = analytics == null ? null : analytics.topCompanies(k);
+      if (rows != null) return print(out, TOP_K_MAINTENANCE_COMPANY_COLUMNS, rows);
+      if (this._shards != null) return print(out, TOP_K_MAINTENANCE_COMPANY_COLUMNS, gatherCompanies(k));
+      return executeQuery2(out, Queries.TOP_K_MAINTENANCE_COMPANY, k);
+   }//end topKMaintenanceCompany
+
+   /*
+    * Runs a top k query on every shard in parallel and merges the rows,
+    * which each shard returns by the decimal in column priceColumn,
+    * highest first, into the k highest overall.
+    */
+   private List<String[]> gatherTop (final int priceColumn, int k, final String query, final Object... params) throws SQLException {
+      List<List<String[]>> perShard = this._shards.scatter(new ShardRouter.ShardCall<List<String[]>>() {
+         public List<String[]> call (ConnectionPool pool) throws SQLException {
+            return rows(executeQuery(pool, query, params));
+         }
+      });
+      return ShardRouter.merge(perShard, new Comparator<String[]>() {
+         public int compare (String[] a, String[] b) {
+            return new BigDecimal(b[priceColumn].trim()).compareTo(new BigDecimal(a[priceColumn].trim()));
+         }
+      }, k);
+   }//end gatherTop
+
+   /*
+    * Option 15 on shards. The repairs of a company are spread over the
+    * shards, so the top k of each shard cannot be merged: all the counts
+    * are summed first, one row per company and shard.
+    */
+   private List<String[]> gatherCompanies (int k) throws SQLException {
+      List<List<String[]>> perShard = this._shards.scatter(new ShardRouter.ShardCall<List<String[]>>() {
+         public List<String[]> call (ConnectionPool pool) throws SQLException {
+            return rows(executeQuery(pool, Queries.REPAIR_COUNTS_BY_COMPANY));
+         }
+      });
+      final Map<Integer, long[]> repairs = new HashMap<Integer, long[]>();
+      for (List<String[]> shard : perShard) {
+         for (String[] row : shard) {
+            Integer cmpID = Integer.valueOf(row[0].trim());
+            long[] sum = repairs.get(cmpID);
+            if (sum == null) repairs.put(cmpID, sum = new long[1]);
+            sum[0] += Long.parseLong(row[1].trim());
+         }//end for
+      }//end for
+      List<Integer> companies = new ArrayList<Integer>(repairs.keySet());
+      Collections.sort(companies, new Comparator<Integer>() {
+         public int compare (Integer a, Integer b) {
+            long ra = repairs.get(a)[0];
+            long rb = repairs.get(b)[0];
+            return ra != rb ? (ra > rb ? -1 : 1) : a.compareTo(b);
+         }
+      });
+      List<String[]> rows = new ArrayList<String[]>();
+      for (Integer cmpID : companies.subList(0, Math.min(k, companies.size())))
+         rows.add(new String[] {this._reference.companyName(cmpID.intValue()), String.valueOf(repairs.get(cmpID)[0])});
+      return rows;
+   }//end gatherCompanies
+
+   // the rows of a result set as strings
+   private static List<String[]> rows (ResultSet rs) throws SQLException {
+      int numCol = rs.getMetaData().getColumnCount();
+      List<String[]> rows = new ArrayList<String[]>();
+      while (rs.next()) {
+         String[] row = new String[numCol];
+         for (int i = 1; i <= numCol; ++i) row[i - 1] = rs.getString(i);
+         rows.add(row);
+      }//end while
+      return rows;
+   }//end rows
+
+   public int numberOfRepairsForEachRoomPerYear (int hotelID, int roomNo, ResultPrinter out) throws SQLException {
+      AnalyticsSnapshot analytics = this._analytics;
+      List<String[]> rows = analytics == null ? null : analytics.repairsPerYear(hotelID, roomNo);
+      if (rows != null) return print(out, REPAIRS_PER_YEAR_COLUMNS, rows);
+      return executeQuery2(hotelPool(hotelID), out, Queries.REPAIRS_PER_YEAR, roomNo, hotelID);
+   }//end numberOfRepairsForEachRoomPerYear
+
+   // prints rows computed in memory
+   private static int print (ResultPrinter out, String[] header, List<String[]> rows) {
+      out.print(header, rows);
+      return out.finish();
+   }//end print
+
    /**
     * The main execution method
     *
     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
     */
    public static void main (String[] args) {
-      if (args.length != 3) {
+      boolean load = args.length >= 4 && args[3].equals("--load");
+      boolean batch = args.length == 5 && args[3].equals("--batch");
+      boolean rebuildCounts = args.length == 4 && args[3].equals("--rebuild-counts");
+      boolean maintainPartitions = args.length == 4 && args[3].equals("--maintain-partitions");
+      boolean export = args.length >= 6 && args[3].equals("--export");
+      if (args.length != 3 && !(load && args.length <= 5) && !batch && !rebuildCounts && !maintainPartitions && !export) {
          System.err.println (
             "Usage: " +
             "java [-classpath <classpath>] " +
             DBProject.class.getName () +
-            " <dbname> <port> <user>");
+             " <dbname> <port> <user> [--load [<data folder>] | --batch <workload file> | --rebuild-counts | --maintain-partitions\n" +
+            "    | --export <file> <operation> [<name>=<value> ...]]");
          return;
       }//end if
       
@@ -201,6 +1211,59 @@ public class DBProject {
          String user = args[2];
          esql = new DBProject (dbname, dbport, user, "");
 
+         if (load) {
+            // non-interactive mode: reload every table from the csv files and quit
+            File dataDir = new File(args.length == 5 ? args[4] : "../data");
+            // the snapshot holds the rows of the tables about to be replaced, even if the load fails
+            AnalyticsSnapshot.invalidate();
+            // every shard gets the full data, then keeps the rooms of its own hotels only
+            for (ConnectionPool pool : esql.getShardPools())
+               new BulkLoader(pool, dataDir, Integer.getInteger("load.threads", 4)).load();
+            if (esql._shards != null) esql._shards.keepOwnHotels();
+            return;
+         }//end if
+         if (rebuildCounts) {
+            // non-interactive mode: recompute the repair counts of options 15 and 16 and quit
+            for (ConnectionPool pool : esql.getShardPools()) {
+               Connection conn = pool.acquire();
+               try {
+                  RepairCounts.rebuild(conn);
+               } finally {
+                  pool.release(conn);
+               }//end try
+            }//end for
+            System.out.println("Repair counts rebuilt");
+            return;
+         }//end if
+         if (maintainPartitions) {
+            // non-interactive mode: create and detach the yearly partitions of Booking and Repair and quit
+            for (ConnectionPool pool : esql.getShardPools()) {
+               Connection conn = pool.acquire();
+               try {
+                  Partitions.maintain(conn, Integer.getInteger("partitions.aheadYears", 2),
+                                      Integer.getInteger("partitions.retainYears", 0));
+               } finally {
+                  pool.release(conn);
+               }//end try
+            }//end for
+            return;
+         }//end if
+         if (export) {
+            // non-interactive mode: write the rows of one report to a file and quit
+            export(esql, new File(args[4]), args[5], Arrays.copyOfRange(args, 6, args.length));
+            return;
+         }//end if
+         esql.buildIndexes();
+         String metricsFile = System.getProperty("metrics.file", "dbproject-metrics.prom");
+         if (metricsFile.length() > 0)
+            esql.metrics().startDumper(new File(metricsFile), Integer.getInteger("metrics.intervalSec", 15) * 1000L);
+
+         if (batch) {
+            // non-interactive mode: run the operations of a workload file and quit
+            new BatchRunner(esql, Integer.getInteger("batch.lanes", 4)).run(args[4]);
+            return;
+         }//end if
+
          boolean keepon = true;
          while(keepon) {
             // These are sample SQL statements
@@ -222,7 +1285,9 @@ public class DBProject {
 				System.out.println("14. List the repairs made by maintenance company");
 				System.out.println("15. Get top k maintenance companies based on repair count");
 				System.out.println("16. Get number of repairs occurred per year for a given hotel room");
-				System.out.println("17. < EXIT");
+				System.out.println("17. Find customers by name");
+				System.out.println("18. Statistics");
+				System.out.println("19. < EXIT");
 
             switch (readChoice()){
 				   case 1: addCustomer(esql); break;
@@ -241,7 +1306,9 @@ public class DBProject {
 				   case 14: listRepairsMade(esql); break;
 				   case 15: topKMaintenanceCompany(esql); break;
 				   case 16: numberOfRepairsForEachRoomPerYear(esql); break;
-				   case 17: keepon = false; break;
+				   case 17: findCustomers(esql); break;
+				   case 18: statistics(esql); break;
+				   case 19: keepon = false; break;
 				   default : System.out.println("Unrecognized choice!"); break;
             }//end switch
          }//end while
@@ -260,7 +1327,34 @@ public class DBProject {
          }//end try
       }//end try
    }//end main
-   
+
+   /*
+    * Runs one report with its rows going to a file (see ExportPrinter).
+    * The indexes are not loaded, so every report reads the tables through
+    * a cursor.
+    */
+   private static void export (DBProject esql, File file, String name, String[] pairs) throws Exception {
+      Operation op = Operation.forName(name);
+      if (op == null || op.isUpdate()) throw new Exception("Invalid input! " + name + " is not a report.");
+      Map<String, String> args = new HashMap<String, String>();
+      for (String pair : pairs) {
+         int eq = pair.indexOf('=');
+         if (eq <= 0) throw new Exception("Invalid input! expected name=value instead of " + pair + ".");
+         args.put(pair.substring(0, eq), pair.substring(eq + 1));
+      }//end for
+
+      long t0 = System.nanoTime();
+      ExportPrinter out = new ExportPrinter(file);
+      int rows;
+      try {
+         rows = op.execute(esql, args, out);
+      } finally {
+         out.close();
+      }//end try
+      System.out.println(String.format("%d rows, %d bytes written to %s in %.1f s", rows, out.getCharsRead(),
+                                       file, (System.nanoTime() - t0) / 1e9));
+   }//end export
+
    public static void Greeting(){
       System.out.println(
          "\n\n*******************************************************\n" +
@@ -292,14 +1386,6 @@ public class DBProject {
 	  // Given customer details add the customer in the DB 
 
       try {
-         String maxFind = "SELECT MAX(CustomerID) FROM CUSTOMER";
-         ResultSet customerID = esql.executeQuery(maxFind);
-
-         int nextID = 0;
-         if(customerID.next()) {
-            nextID = customerID.getInt(1) + 1;
-         }
-
          System.out.println("Enter first name:");
          String fname = in.readLine();
          checkEmpty("First Name", fname);
@@ -324,9 +1410,7 @@ public class DBProject {
          System.out.println("Enter gender (Male,Female,Other):");
          String gender = in.readLine();
          
-         String q = String.format("INSERT INTO CUSTOMER (customerID, fName, lName, Address, phNo, DOB, gender) VALUES('%1$s','%2$s','%3$s','%4$s','%5$s','%6$s','%7$s');",nextID,fname,lname,address,phNo,dob,gender);
-
-         esql.executeUpdate(q);
+         Operation.ADD_CUSTOMER.execute(esql, Operation.args("fname", fname, "lname", lname, "address", address, "phone", phNo, "dob", dob, "gender", gender), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -350,9 +1434,7 @@ public class DBProject {
          String roomType = in.readLine();
          checkEmpty("Room Type", roomType);
          
-         String q = String.format("INSERT INTO ROOM (hotelID, roomNo, roomType) VALUES('%1$s','%2$s','%3$s');", hotelID, roomNo, roomType);
-
-         esql.executeUpdate(q);
+         Operation.ADD_ROOM.execute(esql, Operation.args("hotel", hotelID, "room", roomNo, "type", roomType), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -361,16 +1443,6 @@ public class DBProject {
    public static void addMaintenanceCompany(DBProject esql){
       // Given maintenance Company details add the maintenance company in the DB
       try {
-         String maxFind = "SELECT MAX(cmpID) FROM MaintenanceCompany";
-         ResultSet cmpID = esql.executeQuery(maxFind);
-
-         int nextID = 0;
-         if(cmpID.next()) {
-            nextID = cmpID.getInt(1) + 1;
-         }
-
-         System.out.println(nextID);
-
          System.out.println("Enter Maintenance Company name:");
          String name = in.readLine();
          checkEmpty("Maintenance Company", name);
@@ -383,9 +1455,7 @@ public class DBProject {
          checkTorF("Certification", certified);
          checkEmpty("Ceritifcation", certified);
          
-         String q = String.format("INSERT INTO MaintenanceCompany (cmpID, name, address, isCertified) VALUES('%1$s','%2$s','%3$s','%4$s');",nextID,name,address,certified);
-
-         esql.executeUpdate(q);
+         Operation.ADD_MAINTENANCE_COMPANY.execute(esql, Operation.args("name", name, "address", address, "certified", certified), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -394,14 +1464,6 @@ public class DBProject {
    public static void addRepair(DBProject esql){
 	  // Given repair details add repair in the DB
       try {
-         String maxFind = "SELECT MAX(rID) FROM Repair";
-         ResultSet rID = esql.executeQuery(maxFind);
-
-         int nextID = 0;
-         if(rID.next()) {
-            nextID = rID.getInt(1) + 1;
-         }
-
          System.out.println("Enter HotelID:");
          String hotelID = in.readLine();
          checkEmpty("Hotel ID", hotelID);
@@ -427,9 +1489,7 @@ public class DBProject {
          System.out.println("Enter repairType:");
          String repairType = in.readLine();
          
-         String q = String.format("INSERT INTO Repair (rID, hotelID, roomNo, mCompany, repairDate, description, repairType) VALUES('%1$s','%2$s','%3$s','%4$s', '%5$s', '%6$s', '%7$s');",nextID,hotelID,roomNo,mCompany,repairDate,description,repairType);
-
-         esql.executeUpdate(q);
+         Operation.ADD_REPAIR.execute(esql, Operation.args("hotel", hotelID, "room", roomNo, "company", mCompany, "date", repairDate, "description", description, "type", repairType), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -438,14 +1498,6 @@ public class DBProject {
    public static void bookRoom(DBProject esql){
 	  // Given hotelID, roomNo and customer Name create a booking in the DB 
       try {
-         String maxFind = "SELECT MAX(bID) FROM Booking";
-         ResultSet bID = esql.executeQuery(maxFind);
-
-         int nextID = 0;
-         if(bID.next()) {
-            nextID = bID.getInt(1) + 1;
-         }
-
          System.out.println("Enter Customer ID:");
          String customer = in.readLine();
          checkEmpty("Customer ID", customer);
@@ -475,9 +1527,7 @@ public class DBProject {
          checkAlpha("Price", price);
          checkEmpty("Price", price);
          
-         String q = String.format("INSERT INTO Booking (bID, customer, hotelID, roomNo, bookingDate, noOfPeople, price) VALUES('%1$s','%2$s','%3$s','%4$s', '%5$s', '%6$s', '%7$s');",nextID,customer,hotelID,roomNo,bookingDate,noOfPeople,price);
-
-         esql.executeUpdate(q);
+         Operation.BOOK_ROOM.execute(esql, Operation.args("customer", customer, "hotel", hotelID, "room", roomNo, "date", bookingDate, "people", noOfPeople, "price", price), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -486,16 +1536,6 @@ public class DBProject {
    public static void assignHouseCleaningToRoom(DBProject esql){
 	  // Given Staff SSN, HotelID, roomNo Assign the staff to the room 
       try {
-         String maxFind = "SELECT MAX(asgID) FROM Assigned";
-         ResultSet asgID = esql.executeQuery(maxFind);
-
-         int nextID = 0;
-         if(asgID.next()) {
-            nextID = asgID.getInt(1) + 1;
-         }
-
-         System.out.println(nextID);
-
          System.out.println("Enter staff ID:");
          String staffID = in.readLine();
          checkEmpty("Staff ID", staffID);
@@ -511,9 +1551,7 @@ public class DBProject {
          checkEmpty("Room No", roomNo);
          checkAlpha("Toom No", roomNo);
 
-         String q = String.format("INSERT INTO Assigned (asgID, staffID, hotelID, roomNo) VALUES('%1$s','%2$s','%3$s','%4$s');",nextID,staffID,hotelID,roomNo);
-
-         esql.executeUpdate(q);
+         Operation.ASSIGN_HOUSE_CLEANING.execute(esql, Operation.args("staff", staffID, "hotel", hotelID, "room", roomNo), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -522,16 +1560,6 @@ public class DBProject {
    public static void repairRequest(DBProject esql){
 	  // Given a hotelID, Staff SSN, roomNo, repairID , date create a repair request in the DB
       try {
-         String maxFind = "SELECT MAX(reqID) FROM Request";
-         ResultSet reqID = esql.executeQuery(maxFind);
-
-         int nextID = 0;
-         if(reqID.next()) {
-            nextID = reqID.getInt(1) + 1;
-         }
-
-         System.out.println(nextID);
-
          System.out.println("Enter hotel ID:");
          String hotelID = in.readLine();
          checkEmpty("Hotel ID", hotelID);
@@ -559,9 +1587,7 @@ public class DBProject {
          System.out.println("Enter a description:");
          String description = in.readLine();
 
-         String q = String.format("INSERT INTO Request (reqID, managerID, repairID,requestDate,description) VALUES('%1$s','%2$s','%3$s','%4$s','%5$s');",nextID,staffID,repairID,requestDate,description);
-
-         esql.executeUpdate(q);
+         Operation.REPAIR_REQUEST.execute(esql, Operation.args("staff", staffID, "hotel", hotelID, "room", roomNo, "repair", repairID, "date", requestDate, "description", description), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -575,13 +1601,18 @@ public class DBProject {
          checkEmpty("Hotel ID", hid);
          checkAlpha("Hotel ID", hid);
 
-         String q = "SELECT Count(R.roomNo) FROM Room R WHERE R.roomNo IN ( SELECT R.roomNo FROM Room R WHERE R.HotelID = ";
-         q += hid;
-         q += " ) AND R.roomNo NOT IN ( SELECT R.roomNo FROM Booking B, Room R WHERE B.roomNo = R.roomNo AND B.hotelID = ";
-         q += hid;
-         q += " );";
+         System.out.println("Enter Date (in MM/DD/YYYY), or leave empty for rooms never booked:");
+         String ds = in.readLine();
+         String de = "";
+         if (ds.length() > 0) {
+            checkDate("Date", ds);
+
+            System.out.println("Enter end date (in MM/DD/YYYY), or leave empty for a single day:");
+            de = in.readLine();
+            if (de.length() > 0) checkDate("End date", de);
+         }
 
-         esql.executeQuery2(q);
+         Operation.AVAILABLE_ROOMS.execute(esql, Operation.args("hotel", hid, "from", ds.length() > 0 ? ds : null, "to", de.length() > 0 ? de : null), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -595,10 +1626,7 @@ public class DBProject {
          checkEmpty("Hotel ID", hid);
          checkAlpha("Hotel ID", hid);
          
-         String q = "SELECT Count(*) FROM Booking B WHERE B.HotelID = ";
-         q += hid + ";";
-
-         esql.executeQuery2(q);
+         Operation.BOOKED_ROOMS.execute(esql, Operation.args("hotel", hid), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -615,17 +1643,20 @@ public class DBProject {
          System.out.println("Enter Date (in MM/DD/YYYY):");
          String date = in.readLine();
          checkDate("Date", date);
-         date = date.replace("/","");
-
-         String q = "SELECT B.roomNo, B.bookingDate FROM Booking B WHERE B.HotelID = ";
-         q += hid;
-         q += " AND B.bookingDate BETWEEN TO_DATE(\' ";
-         q += date;
-         q += " \', 'MMDDYYYY') AND TO_DATE(\' ";
-         q += date;
-         q += " \', 'MMDDYYYY') + 7";
 
-         esql.executeQuery2(q);
+         if (pageSize() <= 0) {
+            Operation.HOTEL_BOOKINGS_FOR_A_WEEK.execute(esql, Operation.args("hotel", hid, "date", date), ResultPrinter.fromSystemProperties());
+            return;
+         }//end if
+         final int hotelID = toInt("Hotel ID", hid);
+         final Date start = toDate("Date", date);
+         final DBProject db = esql;
+         browse(esql, Operation.HOTEL_BOOKINGS_FOR_A_WEEK, HOTEL_BOOKINGS_FOR_A_WEEK_COLUMNS, new Pages() {
+            public List<String[]> page (String[] key, boolean forward) throws SQLException {
+               return key == null ? db.hotelBookingsPage(hotelID, start, null, 0, true, pageSize())
+                  : db.hotelBookingsPage(hotelID, start, Date.valueOf(key[1].trim()), Integer.parseInt(key[0].trim()), forward, pageSize());
+            }
+         });
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -637,25 +1668,17 @@ public class DBProject {
          System.out.println("Enter Starting Date:");
          String ds = in.readLine();
          checkDate("Start date",ds);
-         ds = ds.replace("/","");
 
          System.out.println("Enter Ending Date:");
          String de = in.readLine();
          checkDate("End date",de);
-         de = de.replace("/","");
          
          System.out.println("Enter number of rooms to return:");
          String rmno = in.readLine();
          checkEmpty("Rooms to return", rmno);
          checkAlpha("Rooms to return", rmno);
 
-         String q = "SELECT DISTINCT B.hotelID, R.roomNo, R.roomType, B.price FROM Booking B, Room R WHERE B.roomNo = R.roomNo AND B.bookingDate BETWEEN TO_DATE(\' ";
-         q += ds;
-         q += "\','MMDDYYYY') AND TO_DATE(\' ";
-         q += de;
-         q += "\','MMDDYYYY') ORDER BY B.price DESC LIMIT ";
-         q += rmno;
-         esql.executeQuery2(q);
+         Operation.TOP_K_ROOM_PRICE.execute(esql, Operation.args("from", ds, "to", de, "k", rmno), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -680,14 +1703,7 @@ public class DBProject {
          checkEmpty("No. of Bookings", b);
          checkAlpha("No. of Bookings", b);
 
-         String q = "SELECT B.price FROM Booking B, Customer C WHERE B.customer = C.customerID AND C.fname =  \'";
-         q += cfn;
-         q += "\' AND C.lname = \'";
-         q += cln;
-         q += "\' ORDER BY B.price DESC LIMIT ";
-         q += b;
-
-         esql.executeQuery2(q);
+         Operation.TOP_K_CUSTOMER_BOOKINGS.execute(esql, Operation.args("fname", cfn, "lname", cln, "k", b), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -714,26 +1730,12 @@ public class DBProject {
          System.out.println("Enter starting date:");
          String ds = in.readLine();
          checkDate("Starting Date", ds);
-         ds = ds.replace("/","");
 
          System.out.println("Enter ending date:");
          String de = in.readLine();
          checkDate("Ending Date", de);
-         de = de.replace("/","");
-
-         String q = "SELECT SUM(B.price) FROM Booking B, Customer C WHERE B.hotelID = \'";
-         q += hid;
-         q += "\' AND B.customer = C.customerID AND C.fname = \'";
-         q += cfn;
-         q += "\' AND C.lname = \'";
-         q += cln;
-         q += "\' AND B.bookingDate BETWEEN TO_DATE(\'";
-         q += ds;
-         q += "\','MMDDYYYY') AND TO_DATE(\' ";
-         q += de;
-         q += "\','MMDDYYYY') ";
-
-         esql.executeQuery2(q);
+
+         Operation.CUSTOMER_TOTAL_COST.execute(esql, Operation.args("hotel", hid, "fname", cfn, "lname", cln, "from", ds, "to", de), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -747,13 +1749,77 @@ public class DBProject {
          String mn = in.readLine();
          checkEmpty("Maintainance Company",mn);
 
-         String q = String.format("SELECT R.rID, R.repairType, R.hotelID, R.roomNo FROM Repair R, MaintenanceCompany M WHERE M.name = '%s' AND M.cmpID = R.mCompany", mn);
-
-         esql.executeQuery2(q);
+         if (pageSize() <= 0) {
+            Operation.REPAIRS_BY_COMPANY.execute(esql, Operation.args("company", mn), ResultPrinter.fromSystemProperties());
+            return;
+         }//end if
+         final DBProject db = esql;
+         final String company = mn;
+         browse(esql, Operation.REPAIRS_BY_COMPANY, REPAIRS_BY_COMPANY_COLUMNS, new Pages() {
+            public List<String[]> page (String[] key, boolean forward) throws SQLException {
+               return db.repairsPage(company, key == null ? Integer.MIN_VALUE : Integer.parseInt(key[0].trim()), forward, pageSize());
+            }
+         });
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
    }//end listRepairsMade
+
+   /*
+    * The pages of a listing, see browse.
+    */
+   private interface Pages {
+      /**
+       * @param key the row the page starts after (or ends before), null for the first page
+       * @param forward true for the page after key, false for the page before it
+       * @return the rows of the page, in listing order
+       * @throws java.sql.SQLException when the page cannot be read
+       */
+      List<String[]> page (String[] key, boolean forward) throws SQLException;
+   }//end Pages
+
+   // rows per page of options 10 and 14, 0 to print the whole listing at once
+   private static int pageSize () {
+      return Integer.getInteger("output.pageSize", 20);
+   }//end pageSize
+
+   /*
+    * Shows a listing one page at a time: n (or just enter) for the next
+    * page, p for the previous one, q to go back to the menu. Only the page
+    * on screen is held; the next and previous pages are read again from
+    * its last and first rows. Each page read is recorded in the metrics of
+    * esql as one run of op.
+    */
+   private static void browse (DBProject esql, Operation op, String[] header, Pages pages) throws Exception {
+      List<String[]> page = page(esql, op, pages, null, true);
+      if (page.isEmpty()) {
+         System.out.println("No rows.");
+         return;
+      }//end if
+      while (true) {
+         ResultPrinter out = ResultPrinter.fromSystemProperties();
+         out.print(header, page);
+         out.finish();
+         System.out.println("n: next page, p: previous page, q: back to the menu");
+         String cmd = in.readLine();
+         if (cmd == null || cmd.trim().equalsIgnoreCase("q")) return;
+         boolean forward = !cmd.trim().equalsIgnoreCase("p");
+         List<String[]> next = page(esql, op, pages, forward ? page.get(page.size() - 1) : page.get(0), forward);
+         if (next.isEmpty()) System.out.println(forward ? "This is the last page." : "This is the first page.");
+         else page = next;
+      }//end while
+   }//end browse
+
+   private static List<String[]> page (DBProject esql, Operation op, Pages pages, String[] key, boolean forward) throws SQLException {
+      long t0 = System.nanoTime();
+      List<String[]> rows = null;
+      try {
+         rows = pages.page(key, forward);
+         return rows;
+      } finally {
+         esql.metrics().operation(op, System.nanoTime() - t0, rows == null ? 0 : rows.size(), rows != null);
+      }//end try
+   }//end page
    
    public static void topKMaintenanceCompany(DBProject esql){
 	  // List Top K Maintenance Company Names based on total repair count (descending order)
@@ -763,9 +1829,7 @@ public class DBProject {
          checkEmpty("Number", mn);
          checkAlpha("Number", mn);
 
-         String q = String.format("SELECT M.name, Count(M.name) FROM MaintenanceCompany M, Repair R WHERE M.cmpID = R.mCompany GROUP BY M.name ORDER BY Count(M.name) DESC Limit %s",mn);
-
-         esql.executeQuery2(q);
+         Operation.TOP_K_MAINTENANCE_COMPANY.execute(esql, Operation.args("k", mn), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
@@ -784,16 +1848,41 @@ public class DBProject {
          checkEmpty("Number", rmno);
          checkAlpha("Number", rmno);
 
-         String q = "SELECT EXTRACT (YEAR FROM R.repairDate), Count(R.repairType) FROM Repair R WHERE R.roomNo = ";
-         q += rmno;
-         q += " AND R.hotelID = ";
-         q += hid;
-         q += " GROUP BY EXTRACT(YEAR FROM R.repairDate) ORDER BY EXTRACT (YEAR FROM R.repairDate) DESC";
-
-         esql.executeQuery2(q);
+         Operation.REPAIRS_PER_YEAR.execute(esql, Operation.args("hotel", hid, "room", rmno), ResultPrinter.fromSystemProperties());
       } catch (Exception e) {
          System.err.println(e.getMessage());
       }
    }//end listRepairsMade
 
+   public static void findCustomers(DBProject esql){
+	  // Given the beginning of a last name, or a last name and the beginning of a first name, list the customers
+      try {
+         System.out.println("Enter Customer last Name (or its beginning):");
+         String cln = in.readLine();
+         checkEmpty("Last Name", cln);
+         checkDigit("Last Name", cln);
+
+         System.out.println("Enter beginning of Customer first Name (optional):");
+         String cfn = in.readLine();
+         if (cfn != null && cfn.length() > 0) checkDigit("First Name", cfn);
+         else cfn = null;
+
+         Operation.FIND_CUSTOMERS.execute(esql, Operation.args("lname", cln, "fname", cfn), ResultPrinter.fromSystemProperties());
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }//end findCustomers
+
+   public static void statistics(DBProject esql){
+      // Show the timings of the operations run so far and the state of the caches
+      System.out.print(esql.metrics().report());
+      System.out.println();
+      System.out.println("connection pool: " + esql.getPool().stats());
+      System.out.println("reference data: " + esql.reference().stats());
+      if (esql._customers != null) System.out.println("customer names: " + esql._customers.size());
+      if (esql._analytics != null) System.out.println("analytics snapshot: " + esql._analytics.stats());
+      if (esql._router != null) System.out.println("report routing: " + esql._router.stats());
+      if (esql._shards != null) System.out.println("shards: " + esql._shards.stats());
+   }//end statistics
+
 }//end DBProject
\ No newline at end of file
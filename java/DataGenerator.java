@@ -0,0 +1,637 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the csv files of data/ at any size, for tests beyond the few
+ * thousand rows shipped with the project. The files have the format of
+ * the shipped ones, start with the same "default" rows and satisfy the
+ * foreign keys and the one booking per room and day of sql/create.sql,
+ * so they load with create.sql or java DBProject ... --load <folder>.
+ *
+ * The data is skewed the way a real chain is:
+ * - hotels get bookings, repairs and house cleaning by a Zipf law, the
+ *   busiest ones spread over the ID range rather than first;
+ * - bookings fall on summer and end of year days more often, and on
+ *   later years more than earlier ones;
+ * - customers book by a Zipf law, maintenance companies repair by one.
+ *
+ * Every row is drawn from a random stream seeded by gen.seed, its table
+ * and its ID (its hotel for the bookings), so the files only depend on
+ * the seed and the sizes, not on the number of threads. The rows are made
+ * in chunks by gen.threads threads and written to the files in order.
+ *
+ * Run with java DataGenerator <output folder>
+ *    -Dgen.scale=1           multiplies the shipped sizes (1000 hotels, 10 rooms and 5 staff
+ *                            per hotel, 2000 customers, 20 companies, 4000 bookings, 2000
+ *                            repairs, requests and assignments)
+ *    -Dgen.hotels, -Dgen.customers, -Dgen.companies, -Dgen.bookings, -Dgen.repairs,
+ *    -Dgen.requests, -Dgen.assigned, -Dgen.roomsPerHotel, -Dgen.staffPerHotel
+ *                            the size of one table, instead of the scaled one
+ *    -Dgen.seed=1            seed of the random streams
+ *    -Dgen.hotelSkew=1.0     Zipf exponents, 0 for uniform
+ *    -Dgen.customerSkew=1.0
+ *    -Dgen.companySkew=1.0
+ *    -Dgen.fromYear=2000     years the bookings and repairs fall in
+ *    -Dgen.toYear=2018
+ *    -Dgen.threads=<cores>   threads making the rows
+ *
+ * A hotel takes at most half of its room-days in bookings; when the
+ * busiest hotels are full, fewer than gen.bookings bookings are written
+ * and the count is printed.
+ *
+ */
+public class DataGenerator {
+
+   // rows of one chunk, the unit of work of the threads
+   private static final int CHUNK_ROWS = 1 << 16;
+
+   // salts of the random streams
+   private static final int HOTEL = 1;
+   private static final int STAFF = 2;
+   private static final int ROOM = 3;
+   private static final int CUSTOMER = 4;
+   private static final int COMPANY = 5;
+   private static final int BOOKING = 6;
+   private static final int REPAIR = 7;
+   private static final int REQUEST = 8;
+   private static final int ASSIGNED = 9;
+   private static final int ROOMS = 10;
+   private static final int SHARE = 11;
+
+   private static final double[] MONTH_WEIGHTS = {5, 5, 6, 7, 8, 11, 13, 13, 8, 7, 6, 11};
+   private static final String[] REPAIR_TYPES = {"Small", "Medium", "Large"};
+   private static final String[] GENDERS = {"Male", "Female", "Other"};
+   private static final Charset ASCII = Charset.forName("US-ASCII");
+
+   private final long _seed;
+   private final long _hotels;
+   private final int _roomsPerHotel;
+   private final int _staffPerHotel;
+   private final long _customers;
+   private final long _companies;
+   private final long _bookings;
+   private final long _repairs;
+   private final long _requests;
+   private final long _assigned;
+   private final int _threads;
+
+   private final Zipf _hotelZipf;
+   private final Zipf _customerZipf;
+   private final Zipf _companyZipf;
+   private final Permutation _hotelOrder;
+   private final Permutation _customerOrder;
+   private final Permutation _companyOrder;
+
+   // every day of the years, as M/D/YYYY, and the cumulative booking weight of the days
+   private final String[] _days;
+   private final double[] _dayWeights;
+
+   /**
+    * Random stream of one row, a SplitMix64 sequence.
+    */
+   static final class Rng {
+      private long _state;
+
+      Rng (long seed, int table, long id) {
+         this._state = hash(seed, table, id);
+      }
+
+      static long hash (long seed, int table, long id) {
+         return mix(mix(seed + table * 0x9E3779B97F4A7C15L) + id);
+      }
+
+      long nextLong () {
+         _state += 0x9E3779B97F4A7C15L;
+         return mix(_state);
+      }
+
+      double nextDouble () {
+         return (nextLong() >>> 11) * 0x1.0p-53;
+      }
+
+      // in [0, n)
+      long nextLong (long n) {
+         return (nextLong() >>> 1) % n;
+      }
+
+      // in [0, n)
+      int nextInt (int n) {
+         return (int) nextLong(n);
+      }
+
+      static long mix (long z) {
+         z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+         z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+         return z ^ (z >>> 31);
+      }
+   }//end Rng
+
+   /**
+    * Zipf law over the ranks 1 to n: rank k is drawn with a weight of
+    * 1 / k^s. Drawn by rejection-inversion (Hoermann and Derflinger), in
+    * constant time whatever n.
+    */
+   static final class Zipf {
+      private final long _n;
+      private final double _s;
+      private final double _hX1;
+      private final double _hN;
+      private final double _cut;
+
+      Zipf (long n, double s) {
+         this._n = Math.max(1, n);
+         this._s = s;
+         this._hX1 = s <= 0 ? 0 : h(1.5) - 1.0;
+         this._hN = s <= 0 ? 0 : h(_n + 0.5);
+         this._cut = s <= 0 ? 0 : 2.0 - hInverse(h(2.5) - weight(2));
+      }
+
+      long sample (Rng rng) {
+         if (_s <= 0) return 1 + rng.nextLong(_n);
+         while (true) {
+            double u = _hN + rng.nextDouble() * (_hX1 - _hN);
+            double x = hInverse(u);
+            long k = Math.max(1, Math.min(_n, (long) (x + 0.5)));
+            if (k - x <= _cut || u >= h(k + 0.5) - weight(k)) return k;
+         }//end while
+      }
+
+      // the weight of rank k
+      double weight (double k) {
+         return _s <= 0 ? 1.0 : Math.exp(-_s * Math.log(k));
+      }
+
+      // the sum of the weights of all ranks
+      double total () {
+         double sum = 0;
+         for (long k = _n; k >= 1; --k) sum += weight(k);
+         return sum;
+      }
+
+      // integral of the weight, shifted to be 0 at 1
+      private double h (double x) {
+         double logX = Math.log(x);
+         return expm1ByX((1.0 - _s) * logX) * logX;
+      }
+
+      private double hInverse (double x) {
+         double t = Math.max(-1.0, x * (1.0 - _s));
+         return Math.exp(log1pByX(t) * x);
+      }
+
+      private static double log1pByX (double x) {
+         return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+      }
+
+      private static double expm1ByX (double x) {
+         return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+      }
+   }//end Zipf
+
+   /**
+    * Maps the ranks of a Zipf law to IDs 1 to n, so the most drawn IDs
+    * are spread over the range: id - 1 = ((rank - 1) * step + offset) mod n,
+    * with a step near n / golden ratio and an offset drawn from the seed.
+    */
+   static final class Permutation {
+      private final long _n;
+      private final long _step;
+      private final long _inverse;
+      private final long _offset;
+
+      Permutation (long n, long seed) {
+         this._n = Math.max(1, n);
+         long step = Math.max(1, Math.round(this._n * 0.6180339887498949));
+         while (BigInteger.valueOf(step).gcd(BigInteger.valueOf(this._n)).longValue() != 1) ++step;
+         this._step = step % this._n;
+         this._inverse = this._n == 1 ? 0 : BigInteger.valueOf(step).modInverse(BigInteger.valueOf(this._n)).longValue();
+         this._offset = (Rng.mix(seed) >>> 1) % this._n;
+      }
+
+      long id (long rank) {
+         return (mulMod(rank - 1, _step) + _offset) % _n + 1;
+      }
+
+      long rank (long id) {
+         return mulMod((id - 1 - _offset + _n) % _n, _inverse) + 1;
+      }
+
+      private long mulMod (long a, long b) {
+         // a * b cannot overflow below 3e9
+         if (_n <= 3000000000L) return a * b % _n;
+         return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(BigInteger.valueOf(_n)).longValue();
+      }
+   }//end Permutation
+
+   /*
+    * The rows of a table, made a chunk at a time by any thread; a chunk
+    * always holds the same rows.
+    */
+   private interface Chunks {
+      int count ();
+      int write (int chunk, StringBuilder out);
+   }//end Chunks
+
+   /*
+    * A table with one row per ID, from 1 to n.
+    */
+   private abstract static class Rows implements Chunks {
+      private final long _n;
+
+      Rows (long n) {
+         this._n = n;
+      }
+
+      public int count () {
+         return (int) ((_n + CHUNK_ROWS - 1) / CHUNK_ROWS);
+      }
+
+      public int write (int chunk, StringBuilder out) {
+         long first = (long) chunk * CHUNK_ROWS + 1;
+         long last = Math.min(_n, first + CHUNK_ROWS - 1);
+         for (long id = first; id <= last; ++id) row(id, out);
+         return (int) (last - first + 1);
+      }
+
+      abstract void row (long id, StringBuilder out);
+   }//end Rows
+
+   /**
+    * Reads the sizes from the gen.* system properties.
+    */
+   public DataGenerator () {
+      double scale = Double.parseDouble(System.getProperty("gen.scale", "1"));
+      this._seed = Long.getLong("gen.seed", 1L).longValue();
+      this._hotels = Math.max(1, size("gen.hotels", 1000, scale));
+      this._roomsPerHotel = Math.max(1, Integer.getInteger("gen.roomsPerHotel", 10).intValue());
+      this._staffPerHotel = Math.max(1, Integer.getInteger("gen.staffPerHotel", 5).intValue());
+      this._customers = Math.max(1, size("gen.customers", 2000, scale));
+      this._companies = Math.max(1, size("gen.companies", 20, scale));
+      this._bookings = size("gen.bookings", 4000, scale);
+      this._repairs = size("gen.repairs", 2000, scale);
+      this._requests = size("gen.requests", 2000, scale);
+      this._assigned = size("gen.assigned", 2000, scale);
+      this._threads = Math.max(1, Integer.getInteger("gen.threads", Runtime.getRuntime().availableProcessors()).intValue());
+
+      this._hotelZipf = new Zipf(_hotels, Double.parseDouble(System.getProperty("gen.hotelSkew", "1.0")));
+      this._customerZipf = new Zipf(_customers, Double.parseDouble(System.getProperty("gen.customerSkew", "1.0")));
+      this._companyZipf = new Zipf(_companies, Double.parseDouble(System.getProperty("gen.companySkew", "1.0")));
+      this._hotelOrder = new Permutation(_hotels, Rng.hash(_seed, HOTEL, 0));
+      this._customerOrder = new Permutation(_customers, Rng.hash(_seed, CUSTOMER, 0));
+      this._companyOrder = new Permutation(_companies, Rng.hash(_seed, COMPANY, 0));
+
+      int fromYear = Integer.getInteger("gen.fromYear", 2000).intValue();
+      int toYear = Math.max(fromYear, Integer.getInteger("gen.toYear", 2018).intValue());
+      List<String> days = new ArrayList<String>();
+      List<Double> weights = new ArrayList<Double>();
+      Calendar c = Calendar.getInstance();
+      c.clear();
+      c.set(fromYear, Calendar.JANUARY, 1);
+      while (c.get(Calendar.YEAR) <= toYear) {
+         int year = c.get(Calendar.YEAR);
+         int month = c.get(Calendar.MONTH);
+         days.add((month + 1) + "/" + c.get(Calendar.DAY_OF_MONTH) + "/" + year);
+         // three times as many bookings in the last year as in the first one
+         weights.add(Double.valueOf(MONTH_WEIGHTS[month] * (1.0 + 2.0 * (year - fromYear) / Math.max(1, toYear - fromYear))));
+         c.add(Calendar.DAY_OF_MONTH, 1);
+      }//end while
+      this._days = days.toArray(new String[days.size()]);
+      this._dayWeights = new double[weights.size()];
+      double sum = 0;
+      for (int i = 0; i < _dayWeights.length; ++i) _dayWeights[i] = sum += weights.get(i).doubleValue();
+      for (int i = 0; i < _dayWeights.length; ++i) _dayWeights[i] /= sum;
+   }//end DataGenerator
+
+   public static void main (String[] args) throws Exception {
+      if (args.length != 1) {
+         System.err.println("Usage: java [-Dgen.scale=<factor>] " + DataGenerator.class.getName() + " <output folder>");
+         System.exit(2);
+      }//end if
+      File dir = new File(args[0]);
+      if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir.getPath());
+      new DataGenerator().generate(dir);
+   }//end main
+
+   /**
+    * Writes every file into a folder.
+    *
+    * @param dir the output folder
+    * @throws Exception when a file cannot be written
+    */
+   public void generate (File dir) throws Exception {
+      long start = System.nanoTime();
+      long rows = 0;
+      ExecutorService workers = Executors.newFixedThreadPool(_threads);
+      try {
+         rows += write(workers, new File(dir, "hotel.csv"), "0,default,\\N", hotels());
+         rows += write(workers, new File(dir, "staff.csv"), "0,default,default,default,Manager,0", staff());
+         rows += write(workers, new File(dir, "room.csv"), "0,0,default", rooms());
+         rows += write(workers, new File(dir, "customer.csv"), "0,default,default,default,0,1/1/2000,Male", customers());
+         rows += write(workers, new File(dir, "maintenanceCompany.csv"), "0,default,default,TRUE", companies());
+         rows += write(workers, new File(dir, "booking.csv"), "0,0,0,0,1/1/2000,0,0", bookings());
+         rows += write(workers, new File(dir, "repair.csv"), "0,0,0,0,1/1/2000,default,Small", repairs());
+         rows += write(workers, new File(dir, "request.csv"), "0,0,0,1/1/2000,default", requests());
+         rows += write(workers, new File(dir, "assigned.csv"), "0,0,0,0", assigned());
+      } finally {
+         workers.shutdownNow();
+      }//end try
+      double secs = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("Wrote %d rows in %.2f s (%.0f rows/s)", rows, secs, rows / secs));
+   }//end generate
+
+   /*
+    * Makes the chunks of a table on the workers, a few ahead of the one
+    * being written, and writes them to the file in order.
+    */
+   private long write (ExecutorService workers, File file, String defaultRow, final Chunks chunks) throws Exception {
+      long start = System.nanoTime();
+      long rows = 1;
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+         FileChannel channel = out.getChannel();
+         write(channel, (defaultRow + "\n").getBytes(ASCII));
+         ArrayDeque<Future<Object[]>> pending = new ArrayDeque<Future<Object[]>>();
+         int next = 0;
+         while (next < chunks.count() || !pending.isEmpty()) {
+            while (next < chunks.count() && pending.size() < 2 * _threads) {
+               final int chunk = next++;
+               pending.add(workers.submit(new Callable<Object[]>() {
+                  public Object[] call () {
+                     StringBuilder text = new StringBuilder(CHUNK_ROWS * 48);
+                     int n = chunks.write(chunk, text);
+                     return new Object[] {text.toString().getBytes(ASCII), Integer.valueOf(n)};
+                  }
+               }));
+            }//end while
+            Object[] part;
+            try {
+               part = pending.poll().get();
+            } catch (ExecutionException e) {
+               Throwable cause = e.getCause();
+               throw cause instanceof Exception ? (Exception) cause : e;
+            }//end try
+            write(channel, (byte[]) part[0]);
+            rows += ((Integer) part[1]).intValue();
+         }//end while
+      } finally {
+         out.close();
+      }//end try
+      System.out.println(String.format("%-24s %12d rows %8.2f s", file.getName(), rows, (System.nanoTime() - start) / 1e9));
+      return rows;
+   }//end write
+
+   private static void write (FileChannel channel, byte[] bytes) throws IOException {
+      ByteBuffer buf = ByteBuffer.wrap(bytes);
+      while (buf.hasRemaining()) channel.write(buf);
+   }//end write
+
+   private Chunks hotels () {
+      return new Rows(_hotels) {
+         void row (long id, StringBuilder out) {
+            Rng rng = new Rng(_seed, HOTEL, id);
+            // the managers are set by create.sql and BulkLoader once Staff is loaded
+            out.append(id).append(',');
+            letters(rng, 6, out).append(",\\N\n");
+         }
+      };
+   }//end hotels
+
+   /*
+    * Staff of hotel h has SSN (h - 1) * staffPerHotel + 1 + k: k = 0 is
+    * its manager, odd k receptionists and even k house cleaning, as in
+    * the shipped data.
+    */
+   private Chunks staff () {
+      return new Rows(_hotels * _staffPerHotel) {
+         void row (long ssn, StringBuilder out) {
+            Rng rng = new Rng(_seed, STAFF, ssn);
+            long k = (ssn - 1) % _staffPerHotel;
+            out.append(ssn).append(',');
+            letters(rng, 4, out).append(',');
+            letters(rng, 4, out).append(',');
+            letters(rng, 6, out).append(',');
+            out.append(k == 0 ? "Manager" : k % 2 == 1 ? "Receptionist" : "HouseCleaning").append(',')
+               .append((ssn - 1) / _staffPerHotel + 1).append('\n');
+         }
+      };
+   }//end staff
+
+   private Chunks rooms () {
+      // hotels per chunk, about CHUNK_ROWS rooms
+      final long perChunk = Math.max(1, CHUNK_ROWS / _roomsPerHotel);
+      return new Chunks() {
+         public int count () {
+            return (int) ((_hotels + perChunk - 1) / perChunk);
+         }
+
+         public int write (int chunk, StringBuilder out) {
+            int n = 0;
+            long last = Math.min(_hotels, (chunk + 1) * perChunk);
+            for (long h = chunk * perChunk + 1; h <= last; ++h) {
+               int rooms = rooms(h);
+               for (int r = 1; r <= rooms; ++r, ++n)
+                  out.append(h).append(',').append(r).append(',').append(roomType(h, r)).append('\n');
+            }//end for
+            return n;
+         }
+      };
+   }//end rooms
+
+   private Chunks customers () {
+      return new Rows(_customers) {
+         void row (long id, StringBuilder out) {
+            Rng rng = new Rng(_seed, CUSTOMER, id);
+            out.append(id).append(',');
+            letters(rng, 4, out).append(',');
+            letters(rng, 4, out).append(',');
+            letters(rng, 6, out).append(',');
+            out.append(1000000000L + rng.nextLong(9000000000L)).append(',')
+               .append(1 + rng.nextInt(12)).append('/').append(1 + rng.nextInt(28)).append('/').append(1940 + rng.nextInt(60))
+               .append(',').append(GENDERS[rng.nextInt(GENDERS.length)]).append('\n');
+         }
+      };
+   }//end customers
+
+   private Chunks companies () {
+      return new Rows(_companies) {
+         void row (long id, StringBuilder out) {
+            Rng rng = new Rng(_seed, COMPANY, id);
+            out.append(id).append(',');
+            letters(rng, 4, out).append(',');
+            letters(rng, 6, out).append(',').append(rng.nextInt(5) == 0 ? "FALSE" : "TRUE").append('\n');
+         }
+      };
+   }//end companies
+
+   /*
+    * The bookings are made a hotel at a time, so a bitmap of its room-days
+    * keeps them to one per room and day. The number of bookings of every
+    * hotel is known up front, which places the chunks and their first bID.
+    */
+   private Chunks bookings () {
+      // {first hotel, first bID} of every chunk, and the end
+      final List<long[]> starts = new ArrayList<long[]>();
+      final double total = _hotelZipf.total();
+      long id = 1;
+      long inChunk = 0;
+      starts.add(new long[] {1, 1});
+      for (long h = 1; h <= _hotels; ++h) {
+         long n = bookings(h, total);
+         id += n;
+         inChunk += n;
+         if (inChunk >= CHUNK_ROWS && h < _hotels) {
+            starts.add(new long[] {h + 1, id});
+            inChunk = 0;
+         }//end if
+      }//end for
+      starts.add(new long[] {_hotels + 1, id});
+      if (id - 1 < _bookings)
+         System.out.println("Only " + (id - 1) + " of " + _bookings + " bookings, the busiest hotels are full;"
+                            + " raise gen.hotels, gen.roomsPerHotel or the years, or lower gen.hotelSkew");
+
+      return new Chunks() {
+         public int count () {
+            return starts.size() - 1;
+         }
+
+         public int write (int chunk, StringBuilder out) {
+            long id = starts.get(chunk)[1];
+            long first = id;
+            BitSet taken = new BitSet();
+            for (long h = starts.get(chunk)[0]; h < starts.get(chunk + 1)[0]; ++h) {
+               long n = bookings(h, total);
+               if (n == 0) continue;
+               Rng rng = new Rng(_seed, BOOKING, h);
+               int rooms = rooms(h);
+               taken.clear();
+               for (long i = 0; i < n; ++i, ++id) {
+                  int day;
+                  int room;
+                  do {
+                     day = day(rng);
+                     room = 1 + rng.nextInt(rooms);
+                  } while (taken.get((room - 1) * _days.length + day));
+                  taken.set((room - 1) * _days.length + day);
+                  out.append(id).append(',').append(_customerOrder.id(_customerZipf.sample(rng))).append(',')
+                     .append(h).append(',').append(room).append(',').append(_days[day]).append(',')
+                     .append(1 + rng.nextInt(3)).append(',').append(price(roomType(h, room), rng)).append('\n');
+               }//end for
+            }//end for
+            return (int) (id - first);
+         }
+      };
+   }//end bookings
+
+   // the share of the bookings of a hotel, rounded up or down at random, and at most half of its room-days
+   private long bookings (long h, double total) {
+      double share = _bookings * _hotelZipf.weight(_hotelOrder.rank(h)) / total;
+      long n = (long) (share + (Rng.hash(_seed, SHARE, h) >>> 11) * 0x1.0p-53);
+      return Math.min(n, (long) rooms(h) * _days.length / 2);
+   }//end bookings
+
+   private Chunks repairs () {
+      return new Rows(_repairs) {
+         void row (long id, StringBuilder out) {
+            long[] r = new long[4];
+            Rng rng = repair(id, r);
+            out.append(id).append(',').append(r[0]).append(',').append(r[1]).append(',').append(r[2]).append(',')
+               .append(_days[(int) r[3]]).append(',');
+            letters(rng, 4, out).append(',').append(REPAIR_TYPES[rng.nextInt(REPAIR_TYPES.length)]).append('\n');
+         }
+      };
+   }//end repairs
+
+   /*
+    * Draws the hotel, room, company and day of a repair into r, so a
+    * request can find the hotel and day of its repair again.
+    */
+   private Rng repair (long rID, long[] r) {
+      Rng rng = new Rng(_seed, REPAIR, rID);
+      r[0] = _hotelOrder.id(_hotelZipf.sample(rng));
+      r[1] = 1 + rng.nextInt(rooms(r[0]));
+      r[2] = _companyOrder.id(_companyZipf.sample(rng));
+      r[3] = rng.nextInt(_days.length);
+      return rng;
+   }//end repair
+
+   /*
+    * A request is raised by the manager of the hotel of its repair, up
+    * to a month before the repair.
+    */
+   private Chunks requests () {
+      return new Rows(_requests) {
+         void row (long id, StringBuilder out) {
+            Rng rng = new Rng(_seed, REQUEST, id);
+            long rID = _repairs == 0 ? 0 : 1 + rng.nextLong(_repairs);
+            long[] r = new long[4];
+            if (rID > 0) repair(rID, r);
+            long manager = rID == 0 ? 0 : (r[0] - 1) * _staffPerHotel + 1;
+            out.append(id).append(',').append(manager).append(',').append(rID).append(',')
+               .append(_days[(int) Math.max(0, r[3] - rng.nextInt(31))]).append(',');
+            letters(rng, 4, out).append('\n');
+         }
+      };
+   }//end requests
+
+   // a house cleaning staff of the hotel, or its manager when it has none
+   private Chunks assigned () {
+      return new Rows(_assigned) {
+         void row (long id, StringBuilder out) {
+            Rng rng = new Rng(_seed, ASSIGNED, id);
+            long h = _hotelOrder.id(_hotelZipf.sample(rng));
+            int room = 1 + rng.nextInt(rooms(h));
+            int cleaners = (_staffPerHotel - 1) / 2;
+            long staff = (h - 1) * _staffPerHotel + 1 + (cleaners == 0 ? 0 : 2 + 2 * rng.nextInt(cleaners));
+            out.append(id).append(',').append(staff).append(',').append(h).append(',').append(room).append('\n');
+         }
+      };
+   }//end assigned
+
+   // 1 to 2 * roomsPerHotel - 1 rooms, roomsPerHotel on average
+   private int rooms (long h) {
+      return 1 + (int) ((Rng.hash(_seed, ROOMS, h) >>> 1) % (2 * _roomsPerHotel - 1));
+   }//end rooms
+
+   // half Economy, a fifth Deluxe, the rest Suite, as in the shipped data
+   private String roomType (long h, int room) {
+      int x = (int) ((Rng.mix(Rng.hash(_seed, ROOM, h) + room) >>> 1) % 10);
+      return x < 5 ? "Economy" : x < 7 ? "Deluxe" : "Suite";
+   }//end roomType
+
+   private static int price (String roomType, Rng rng) {
+      int base = roomType.equals("Economy") ? 500 : roomType.equals("Deluxe") ? 1000 : 1500;
+      return base + rng.nextInt(500);
+   }//end price
+
+   // a day index drawn by the booking weights of the days
+   private int day (Rng rng) {
+      int i = Arrays.binarySearch(_dayWeights, rng.nextDouble());
+      return Math.min(_dayWeights.length - 1, i >= 0 ? i : -i - 1);
+   }//end day
+
+   private static StringBuilder letters (Rng rng, int n, StringBuilder out) {
+      for (int i = 0; i < n; ++i) out.append((char) ('a' + rng.nextInt(26)));
+      return out;
+   }//end letters
+
+   private static long size (String name, long shipped, double scale) {
+      return Long.getLong(name, Math.round(shipped * scale)).longValue();
+   }//end size
+
+}//end DataGenerator
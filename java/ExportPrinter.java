@@ -0,0 +1,240 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the rows of a report to a file instead of the console, for
+ * extracts too large to print. The cells are copied from the bytes the
+ * driver received, without making a String of them, into one reusable
+ * buffer that is written to the FileChannel of the file, through gzip
+ * when the file name ends with .gz. DBProject runs every query printed
+ * here through a cursor (see scanQuery), so neither the driver nor this
+ * printer holds more than one page of rows.
+ *
+ * The TSV format is the text format of COPY: NULL is \N, and backslash,
+ * tab, newline and carriage return are escaped with a backslash. The CSV
+ * format is that of COPY ... CSV HEADER: NULL is an empty field, fields
+ * holding a comma, quote or line break are quoted. Both start with a
+ * header line. CHAR(n) padding is left out; the bytes are in the client
+ * encoding of the connection.
+ *
+ * Run with java DBProject <dbname> <port> <user> --export <file> <operation> [name=value ...]
+ *
+ */
+public class ExportPrinter extends ResultPrinter {
+
+   private static final int BUFFER_SIZE = 1 << 16;
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+   private static final byte[] NULL_TEXT = {'\\', 'N'};
+
+   private final FileOutputStream _file;
+   private final WritableByteChannel _channel;
+   private final GZIPOutputStream _gzip;
+   private final boolean _csv;
+   private final ByteBuffer _buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+   private boolean _headerWritten = false;
+   private int _rows = 0;
+   private long _bytes = 0;
+   // the first write that failed; nothing is written after it
+   private IOException _error = null;
+
+   /**
+    * Creates or truncates the file.
+    *
+    * @param file where the rows are written; .csv or .csv.gz for CSV,
+    *        anything else for TSV, .gz to compress
+    * @throws java.io.IOException when the file cannot be created
+    */
+   public ExportPrinter (File file) throws IOException {
+      super(NOWHERE, Format.TSV, 0);
+      String name = file.getName().toLowerCase();
+      boolean gzip = name.endsWith(".gz");
+      if (gzip) name = name.substring(0, name.length() - 3);
+      this._csv = name.endsWith(".csv");
+      this._file = new FileOutputStream(file);
+      FileChannel channel = this._file.getChannel();
+      this._gzip = gzip ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) : null;
+      this._channel = gzip ? Channels.newChannel(this._gzip) : channel;
+   }//end ExportPrinter
+
+   @Override
+   public int print (ResultSet rs) throws SQLException {
+      ResultSetMetaData rsmd = rs.getMetaData();
+      int numCol = rsmd.getColumnCount();
+      if (!_headerWritten) {
+         String[] header = new String[numCol];
+         for (int i = 1; i <= numCol; ++i) header[i - 1] = rsmd.getColumnName(i);
+         writeHeader(header);
+      }//end if
+
+      int printed = 0;
+      while (_error == null && rs.next()) {
+         for (int i = 1; i <= numCol; ++i) {
+            if (i > 1) put(_csv ? (byte) ',' : (byte) '\t');
+            byte[] v = rs.getBytes(i);
+            if (v == null) {
+               if (!_csv) put(NULL_TEXT, 0, NULL_TEXT.length);
+            } else {
+               writeCell(v, length(v));
+            }//end if
+         }//end for
+         put((byte) '\n');
+         ++printed;
+      }//end while
+      _rows += printed;
+      if (_error != null) throw new SQLException("cannot write the export file: " + _error.getMessage());
+      return printed;
+   }//end print
+
+   @Override
+   public int print (String[] header, List<String[]> rows) {
+      if (!_headerWritten) writeHeader(header);
+      for (String[] row : rows) writeRow(row);
+      _rows += rows.size();
+      return rows.size();
+   }//end print
+
+   /**
+    * Writes out the rows still in the buffer.
+    *
+    * @return the number of rows written
+    */
+   @Override
+   public int finish () {
+      drain();
+      return _rows;
+   }//end finish
+
+   @Override
+   public void println (String line) {
+      byte[] b = (line + "\n").getBytes(UTF8);
+      put(b, 0, b.length);
+   }//end println
+
+   /**
+    * @return the number of bytes written so far, before compression
+    */
+   @Override
+   public long getCharsRead () {
+      return _bytes + _buf.position();
+   }//end getCharsRead
+
+   @Override
+   public boolean isFull () {
+      return false;
+   }//end isFull
+
+   /**
+    * Writes out the buffer, ends the gzip stream if any and closes the file.
+    *
+    * @throws java.io.IOException when the file could not be written
+    */
+   public void close () throws IOException {
+      try {
+         drain();
+         if (_error != null) throw _error;
+         if (_gzip != null) _gzip.finish();
+      } finally {
+         _file.close();
+      }//end try
+   }//end close
+
+   private void writeHeader (String[] header) {
+      writeRow(header);
+      _headerWritten = true;
+   }//end writeHeader
+
+   private void writeRow (String[] row) {
+      for (int i = 0; i < row.length; ++i) {
+         if (i > 0) put(_csv ? (byte) ',' : (byte) '\t');
+         if (row[i] == null) {
+            if (!_csv) put(NULL_TEXT, 0, NULL_TEXT.length);
+            continue;
+         }//end if
+         byte[] v = row[i].getBytes(UTF8);
+         writeCell(v, length(v));
+      }//end for
+      put((byte) '\n');
+   }//end writeRow
+
+   private void writeCell (byte[] v, int len) {
+      if (_csv) {
+         // an empty string is quoted to tell it from NULL
+         boolean quote = len == 0;
+         for (int i = 0; i < len && !quote; ++i)
+            quote = v[i] == ',' || v[i] == '"' || v[i] == '\n' || v[i] == '\r';
+         if (!quote) {
+            put(v, 0, len);
+            return;
+         }//end if
+         put((byte) '"');
+         for (int i = 0; i < len; ++i) {
+            if (v[i] == '"') put((byte) '"');
+            put(v[i]);
+         }//end for
+         put((byte) '"');
+         return;
+      }//end if
+      int from = 0;
+      for (int i = 0; i < len; ++i) {
+         byte escaped;
+         switch (v[i]) {
+            case '\\': escaped = '\\'; break;
+            case '\t': escaped = 't'; break;
+            case '\n': escaped = 'n'; break;
+            case '\r': escaped = 'r'; break;
+            default: continue;
+         }//end switch
+         put(v, from, i - from);
+         put((byte) '\\');
+         put(escaped);
+         from = i + 1;
+      }//end for
+      put(v, from, len - from);
+   }//end writeCell
+
+   // CHAR(n) columns come back space padded
+   private static int length (byte[] v) {
+      int len = v.length;
+      while (len > 0 && v[len - 1] == ' ') --len;
+      return len;
+   }//end length
+
+   private void put (byte b) {
+      if (!_buf.hasRemaining()) drain();
+      _buf.put(b);
+   }//end put
+
+   private void put (byte[] b, int off, int len) {
+      while (len > 0) {
+         if (!_buf.hasRemaining()) drain();
+         int n = Math.min(len, _buf.remaining());
+         _buf.put(b, off, n);
+         off += n;
+         len -= n;
+      }//end while
+   }//end put
+
+   private void drain () {
+      _buf.flip();
+      try {
+         while (_error == null && _buf.hasRemaining()) _bytes += _channel.write(_buf);
+      } catch (IOException e) {
+         _error = e;
+      } finally {
+         _buf.clear();
+      }//end try
+   }//end drain
+
+}//end ExportPrinter
@@ -0,0 +1,113 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out primary keys for the tables DBProject inserts into. Each table
+ * has a database sequence (see sql/id_sequences.sql) that advances by
+ * BLOCK_SIZE, so one nextval() reserves a whole block of IDs which is then
+ * given out from an in-process counter without any further round trip.
+ *
+ * IDs are unique across processes and threads, but not gap free: the
+ * unused part of a block is lost when the program exits.
+ *
+ */
+public class IdAllocator {
+
+   // must match the INCREMENT BY of the sequences in sql/id_sequences.sql
+   public static final int BLOCK_SIZE = 1000;
+
+   /**
+    * The tables that get their keys from this allocator.
+    */
+   public enum Sequence {
+      CUSTOMER("customer_id_seq"),
+      MAINTENANCE_COMPANY("maintenancecompany_id_seq"),
+      REPAIR("repair_id_seq"),
+      BOOKING("booking_id_seq"),
+      ASSIGNED("assigned_id_seq"),
+      REQUEST("request_id_seq");
+
+      private final String _name;
+
+      Sequence(String name) {
+         this._name = name;
+      }
+
+      public String sequenceName() {
+         return _name;
+      }
+   }//end Sequence
+
+   /*
+    * A reserved range of IDs [next, end).
+    */
+   private static final class Block {
+      final AtomicLong next;
+      final long end;
+
+      Block(long start, long end) {
+         this.next = new AtomicLong(start);
+         this.end = end;
+      }
+   }//end Block
+
+   private final DBProject _esql;
+   private final Map<Sequence, AtomicReference<Block>> _blocks =
+      new EnumMap<Sequence, AtomicReference<Block>>(Sequence.class);
+
+   // block refills taken from the database
+   private final AtomicLong _refills = new AtomicLong();
+
+   public IdAllocator (DBProject esql) {
+      this._esql = esql;
+      for (Sequence seq : Sequence.values())
+         _blocks.put(seq, new AtomicReference<Block>());
+   }//end IdAllocator
+
+   /**
+    * Returns the next free ID of a table. Only the call that exhausts a
+    * block goes to the database; every other call is a single atomic
+    * increment.
+    *
+    * @param seq the table to allocate an ID for
+    * @return an ID that has not been handed out before
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public long nextId (Sequence seq) throws SQLException {
+      AtomicReference<Block> ref = _blocks.get(seq);
+      while (true) {
+         Block block = ref.get();
+         if (block != null) {
+            long id = block.next.getAndIncrement();
+            if (id < block.end) return id;
+         }//end if
+
+         // block is missing or used up; one thread per table refills it
+         synchronized (ref) {
+            if (ref.get() == block) ref.set(reserve(seq));
+         }//end synchronized
+      }//end while
+   }//end nextId
+
+   private Block reserve (Sequence seq) throws SQLException {
+      ResultSet rs;
+      try {
+         rs = _esql.executeQuery("SELECT nextval('" + seq.sequenceName() + "')");
+      } catch (SQLException e) {
+         throw new SQLException("Unable to reserve IDs from " + seq.sequenceName()
+            + " (run sql/id_sequences.sql to create the ID sequences): " + e.getMessage());
+      }//end try
+      if (!rs.next()) throw new SQLException("nextval returned no row for " + seq.sequenceName());
+      long start = rs.getLong(1);
+      _refills.incrementAndGet();
+      return new Block(start, start + BLOCK_SIZE);
+   }//end reserve
+
+   /** @return number of blocks reserved from the database */
+   public long getRefillCount () { return _refills.get(); }
+
+}//end IdAllocator
@@ -0,0 +1,263 @@
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Checks and converts the values typed at the prompts or read from
+ * workload files. Every method reads its text once, character by
+ * character, and returns a primitive or an enum ready to be bound to a
+ * statement: whole numbers as int, dates as days since 1970-01-01, prices
+ * as cents. No regular expression or date format is involved, so the
+ * methods cost next to nothing and can be called from any thread.
+ *
+ * Invalid text raises an Exception with the "Invalid input!" message the
+ * prompts print.
+ *
+ */
+public final class Input {
+
+   private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+   // two digit years fall into the hundred years starting 80 years ago, as with SimpleDateFormat
+   private static final int CENTURY_START = Calendar.getInstance().get(Calendar.YEAR) - 80;
+
+   private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+   /**
+    * The values of the GenderType enum of the database.
+    */
+   public enum GenderType { Male, Female, Other }
+
+   /**
+    * The values of the StaffRole enum of the database.
+    */
+   public enum StaffRole { Receptionist, HouseCleaning, Manager }
+
+   private static final GenderType[] GENDERS = GenderType.values();
+   private static final StaffRole[] ROLES = StaffRole.values();
+
+   private Input () {
+   }
+
+   /**
+    * @param type the name of the value, for the error message
+    * @param str the text, surrounding spaces allowed
+    * @return the whole number it holds
+    * @throws Exception when the text is empty or not a whole number
+    */
+   public static int parseInt (String type, String str) throws Exception {
+      int end = end(str);
+      int pos = start(str, end);
+      if (pos == end) throw new Exception("Invalid input! " + type + " cannot be empty.");
+      boolean negative = str.charAt(pos) == '-';
+      if (negative || str.charAt(pos) == '+') ++pos;
+      if (pos == end) throw new Exception("Invalid input! " + type + " has to be a whole number.");
+      long value = 0;
+      for (; pos < end; ++pos) {
+         int digit = str.charAt(pos) - '0';
+         if (digit < 0 || digit > 9) throw new Exception("Invalid input! " + type + " has to be a whole number.");
+         value = value * 10 + digit;
+         if (value > Integer.MAX_VALUE + 1L) throw new Exception("Invalid input! " + type + " has to be a whole number.");
+      }//end for
+      if (negative) value = -value;
+      if (value > Integer.MAX_VALUE) throw new Exception("Invalid input! " + type + " has to be a whole number.");
+      return (int) value;
+   }//end parseInt
+
+   /**
+    * @param type the name of the value, for the error message
+    * @param str a price such as 150, 150.5 or 150.50
+    * @return the price in cents
+    * @throws Exception when the text is empty, negative or has more than two decimals
+    */
+   public static long parseCents (String type, String str) throws Exception {
+      int end = end(str);
+      int pos = start(str, end);
+      if (pos == end) throw new Exception("Invalid input! " + type + " cannot be empty.");
+      long cents = 0;
+      int decimals = -1;
+      boolean digits = false;
+      for (; pos < end; ++pos) {
+         char c = str.charAt(pos);
+         if (c == '.' && decimals < 0) {
+            decimals = 0;
+            continue;
+         }//end if
+         if (c < '0' || c > '9' || decimals == 2 || cents > Long.MAX_VALUE / 100)
+            throw new Exception("Invalid input! " + type + " has to be an amount with at most two decimals.");
+         cents = cents * 10 + (c - '0');
+         digits = true;
+         if (decimals >= 0) ++decimals;
+      }//end for
+      if (!digits) throw new Exception("Invalid input! " + type + " has to be an amount with at most two decimals.");
+      for (int d = Math.max(decimals, 0); d < 2; ++d) cents *= 10;
+      return cents;
+   }//end parseCents
+
+   /**
+    * @param cents an amount in cents
+    * @return the amount as a NUMERIC(n,2) value
+    */
+   public static BigDecimal fromCents (long cents) {
+      return BigDecimal.valueOf(cents, 2);
+   }//end fromCents
+
+   /**
+    * @param type the name of the value, for the error message
+    * @param str a date written MM/DD/YYYY or MM/DD/YY, leading zeros optional
+    * @return the date as days since 1970-01-01
+    * @throws Exception when the text is not a date in that format or not a day of the calendar
+    */
+   public static int parseEpochDay (String type, String str) throws Exception {
+      int end = end(str);
+      int pos = start(str, end);
+      int month = 0;
+      int day = 0;
+      int year = 0;
+      int from = pos;
+      for (; pos < end && isDigit(str.charAt(pos)); ++pos) month = month * 10 + str.charAt(pos) - '0';
+      boolean ok = pos - from >= 1 && pos - from <= 2 && pos < end && str.charAt(pos++) == '/';
+      from = pos;
+      for (; ok && pos < end && isDigit(str.charAt(pos)); ++pos) day = day * 10 + str.charAt(pos) - '0';
+      ok = ok && pos - from >= 1 && pos - from <= 2 && pos < end && str.charAt(pos++) == '/';
+      from = pos;
+      for (; ok && pos < end && isDigit(str.charAt(pos)); ++pos) year = year * 10 + str.charAt(pos) - '0';
+      ok = ok && pos == end && (pos - from == 2 || pos - from == 4);
+      if (ok && pos - from == 2) {
+         year += CENTURY_START / 100 * 100;
+         if (year < CENTURY_START) year += 100;
+      }//end if
+      if (!ok || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1]
+          || (month == 2 && day == 29 && !isLeapYear(year)))
+         throw new Exception("Invalid input! " + type + " is not in correct date format (MM/DD/YYYY)");
+      return epochDay(year, month, day);
+   }//end parseEpochDay
+
+   /**
+    * @param year the year
+    * @param month the month, 1 to 12
+    * @param day the day of the month
+    * @return the number of days between 1970-01-01 and that day
+    */
+   public static int epochDay (int year, int month, int day) {
+      int y = month <= 2 ? year - 1 : year;
+      int era = (y >= 0 ? y : y - 399) / 400;
+      int yearOfEra = y - era * 400;
+      int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+      int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+      return era * 146097 + dayOfEra - 719468;
+   }//end epochDay
+
+   /**
+    * @param epochDay days since 1970-01-01
+    * @return that day as a DATE parameter, midnight in the default time zone
+    */
+   public static Date toDate (int epochDay) {
+      TimeZone tz = TimeZone.getDefault();
+      long utc = epochDay * MILLIS_PER_DAY;
+      return new Date(utc - tz.getOffset(utc - tz.getRawOffset()));
+   }//end toDate
+
+   /**
+    * @param type the name of the value, for the error message
+    * @param str T or F
+    * @return true for T, false for F
+    * @throws Exception when the text is anything else
+    */
+   public static boolean parseTorF (String type, String str) throws Exception {
+      int end = end(str);
+      int pos = start(str, end);
+      if (end - pos == 1 && str.charAt(pos) == 'T') return true;
+      if (end - pos == 1 && str.charAt(pos) == 'F') return false;
+      throw new Exception("Invalid input! " + type + " has to be T or F.");
+   }//end parseTorF
+
+   /**
+    * @param type the name of the value, for the error message
+    * @param str Male, Female or Other, or empty or null
+    * @return the gender, or null when str is empty or null
+    * @throws Exception when the text is not a gender
+    */
+   public static GenderType parseGender (String type, String str) throws Exception {
+      if (str == null) return null;
+      int end = end(str);
+      int pos = start(str, end);
+      if (pos == end) return null;
+      for (GenderType g : GENDERS)
+         if (matches(str, pos, end, g.name())) return g;
+      throw new Exception("Invalid input! " + type + " has to be Male, Female or Other.");
+   }//end parseGender
+
+   /**
+    * @param type the name of the value, for the error message
+    * @param str Receptionist, HouseCleaning or Manager
+    * @return the role
+    * @throws Exception when the text is not a staff role
+    */
+   public static StaffRole parseStaffRole (String type, String str) throws Exception {
+      int end = end(str);
+      int pos = start(str, end);
+      for (StaffRole r : ROLES)
+         if (matches(str, pos, end, r.name())) return r;
+      throw new Exception("Invalid input! " + type + " has to be Receptionist, HouseCleaning or Manager.");
+   }//end parseStaffRole
+
+   /**
+    * @param str the text to check
+    * @return true when str is null or holds nothing but spaces
+    */
+   public static boolean isBlank (String str) {
+      return str == null || start(str, end(str)) == end(str);
+   }//end isBlank
+
+   /**
+    * @param str the text to check
+    * @return true when str holds a digit
+    */
+   public static boolean hasDigit (String str) {
+      for (int i = 0; i < str.length(); ++i) {
+         if (isDigit(str.charAt(i))) return true;
+      }//end for
+      return false;
+   }//end hasDigit
+
+   /**
+    * @param str the text to check
+    * @return true when str holds a letter a to z or A to Z
+    */
+   public static boolean hasLetter (String str) {
+      for (int i = 0; i < str.length(); ++i) {
+         char c = (char) (str.charAt(i) | 0x20);
+         if (c >= 'a' && c <= 'z') return true;
+      }//end for
+      return false;
+   }//end hasLetter
+
+   private static boolean isDigit (char c) {
+      return c >= '0' && c <= '9';
+   }//end isDigit
+
+   private static boolean isLeapYear (int year) {
+      return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+   }//end isLeapYear
+
+   private static boolean matches (String str, int pos, int end, String name) {
+      return end - pos == name.length() && str.regionMatches(pos, name, 0, name.length());
+   }//end matches
+
+   // first non space character
+   private static int start (String str, int end) {
+      int pos = 0;
+      while (pos < end && Character.isWhitespace(str.charAt(pos))) ++pos;
+      return pos;
+   }//end start
+
+   // one past the last non space character
+   private static int end (String str) {
+      int end = str.length();
+      while (end > 0 && Character.isWhitespace(str.charAt(end - 1))) --end;
+      return end;
+   }//end end
+
+}//end Input
@@ -0,0 +1,107 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with log-linear buckets, in the manner of
+ * HdrHistogram: values below 128 get a bucket each, and every power of two
+ * above is split into 64 buckets, so any recorded value is known to within
+ * 1.6% whatever its magnitude. Recording is a few shifts and one atomic
+ * increment, and can be done from any number of threads.
+ *
+ * Values are usually nanoseconds, but any non-negative long will do.
+ *
+ */
+public class LatencyHistogram {
+
+   private static final int LINEAR = 128;
+   private static final int SUB_BUCKETS = 64;
+   private static final int BUCKETS = LINEAR + 56 * SUB_BUCKETS;
+
+   private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong _count = new AtomicLong();
+   private final AtomicLong _total = new AtomicLong();
+   private final AtomicLong _max = new AtomicLong();
+
+   /**
+    * @param value the value to record, negative values count as 0
+    */
+   public void record (long value) {
+      if (value < 0) value = 0;
+      _counts.incrementAndGet(bucket(value));
+      _count.incrementAndGet();
+      _total.addAndGet(value);
+      long max = _max.get();
+      while (value > max && !_max.compareAndSet(max, value)) max = _max.get();
+   }//end record
+
+   /**
+    * Adds the values recorded by another histogram to this one.
+    *
+    * @param other the histogram to add
+    */
+   public void add (LatencyHistogram other) {
+      for (int i = 0; i < BUCKETS; ++i) {
+         long n = other._counts.get(i);
+         if (n != 0) _counts.addAndGet(i, n);
+      }//end for
+      _count.addAndGet(other._count.get());
+      _total.addAndGet(other._total.get());
+      long max = _max.get();
+      long omax = other._max.get();
+      while (omax > max && !_max.compareAndSet(max, omax)) max = _max.get();
+   }//end add
+
+   public long getCount () { return _count.get(); }
+
+   public long getTotal () { return _total.get(); }
+
+   public long getMax () { return _max.get(); }
+
+   public double getMean () {
+      long n = _count.get();
+      return n == 0 ? 0 : _total.get() / (double) n;
+   }//end getMean
+
+   /**
+    * @param p the percentile, from 0 to 100
+    * @return the largest value of the bucket holding the p-th percentile,
+    *         capped at the largest value recorded, or 0 when empty
+    */
+   public long percentile (double p) {
+      long n = _count.get();
+      if (n == 0) return 0;
+      long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+         seen += _counts.get(i);
+         if (seen >= rank) return Math.min(upperBound(i), _max.get());
+      }//end for
+      return _max.get();
+   }//end percentile
+
+   /**
+    * @param limit an upper bound
+    * @return the number of recorded values at or below limit, to within
+    *         the resolution of the buckets
+    */
+   public long countAtOrBelow (long limit) {
+      long seen = 0;
+      for (int i = 0; i < BUCKETS && upperBound(i) <= limit; ++i)
+         seen += _counts.get(i);
+      return seen;
+   }//end countAtOrBelow
+
+   private static int bucket (long value) {
+      if (value < LINEAR) return (int) value;
+      int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+      return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+   }//end bucket
+
+   private static long upperBound (int bucket) {
+      if (bucket < LINEAR) return bucket;
+      int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+      long sub = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+      return ((sub + 1) << shift) - 1;
+   }//end upperBound
+
+}//end LatencyHistogram
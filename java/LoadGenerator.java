@@ -0,0 +1,247 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Concurrent load generator: many simulated reception desks issuing a mix
+ * of menu operations against one database at a target rate.
+ *
+ * Every client is a small object with its own random stream that issues
+ * requests with exponentially distributed gaps, so together they make an
+ * open workload of load.rate operations per second. One scheduler thread
+ * hands due requests to a pool of load.workers threads, which share the
+ * connection pool of a single DBProject (size it with -Dpool.max). Latency
+ * is measured from the moment a request was due, not from when a worker
+ * got to it, so a saturated database shows up as growing latency instead
+ * of silently lowering the offered rate.
+ *
+ * Usage: java LoadGenerator <dbname> <port> <user>
+ *    -Dload.clients=1000     simulated clients
+ *    -Dload.rate=500         operations per second, over all clients
+ *    -Dload.durationSec=60   length of the run
+ *    -Dload.workers=64       threads running operations
+ *    -Dload.reportSec=5      interval of the progress lines
+ *    -Dload.mix=bookRoom:50,assignHouseCleaningToRoom:15,repairRequest:10,numberOfBookedRooms:10,...
+ *
+ * The inserts really commit: run it against a scratch database.
+ *
+ */
+public class LoadGenerator {
+
+   private static final String DEFAULT_MIX =
+      "bookRoom:50,assignHouseCleaningToRoom:15,repairRequest:10,numberOfAvailableRooms:10,"
+      + "numberOfBookedRooms:5,listHotelRoomBookingsForAWeek:5,topKHighestPriceBookingsForACustomer:5";
+
+   /*
+    * One simulated reception desk.
+    */
+   private static final class Client implements Comparable<Client> {
+      final int id;
+      final Random random;
+      long due;
+
+      Client (int id, long seed) {
+         this.id = id;
+         this.random = new Random(seed);
+      }
+
+      public int compareTo (Client other) {
+         return due < other.due ? -1 : due > other.due ? 1 : 0;
+      }
+   }//end Client
+
+   private final DBProject _esql;
+   private final Operation[] _ops;
+   private final int[] _cumulativeWeights;
+
+   private final AtomicInteger _iteration = new AtomicInteger();
+   private final AtomicInteger _inFlight = new AtomicInteger();
+   private final AtomicLong _errors = new AtomicLong();
+   private final AtomicLong _deadlocks = new AtomicLong();
+   private final AtomicLong _serializationFailures = new AtomicLong();
+   private final AtomicLong _alreadyBooked = new AtomicLong();
+   private final AtomicReference<String> _firstError = new AtomicReference<String>();
+   private final Map<Operation, LatencyHistogram> _latencies =
+      new EnumMap<Operation, LatencyHistogram>(Operation.class);
+   private final AtomicReference<LatencyHistogram> _interval =
+      new AtomicReference<LatencyHistogram>(new LatencyHistogram());
+
+   /**
+    * @param esql the database to load
+    * @param mix the operations and their weights, as name:weight,name:weight,...
+    */
+   public LoadGenerator (DBProject esql, String mix) {
+      this._esql = esql;
+      List<Operation> ops = new ArrayList<Operation>();
+      List<Integer> weights = new ArrayList<Integer>();
+      int total = 0;
+      for (String entry : mix.split(",")) {
+         String[] parts = entry.trim().split(":");
+         Operation op = Operation.forName(parts[0]);
+         if (op == null) throw new IllegalArgumentException("unknown operation " + parts[0] + " in load.mix");
+         total += parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+         ops.add(op);
+         weights.add(Integer.valueOf(total));
+      }//end for
+      this._ops = ops.toArray(new Operation[ops.size()]);
+      this._cumulativeWeights = new int[weights.size()];
+      for (int i = 0; i < _cumulativeWeights.length; ++i) _cumulativeWeights[i] = weights.get(i).intValue();
+      for (Operation op : Operation.values()) _latencies.put(op, new LatencyHistogram());
+   }//end LoadGenerator
+
+   public static void main (String[] args) throws Exception {
+      if (args.length != 3) {
+         System.err.println("Usage: java [-classpath <classpath>] " + LoadGenerator.class.getName()
+                            + " <dbname> <port> <user>");
+         System.exit(2);
+      }//end if
+
+      Class.forName("org.postgresql.Driver");
+      DBProject esql = new DBProject(args[0], args[1], args[2], "");
+      try {
+         esql.buildIndexes();
+         new LoadGenerator(esql, System.getProperty("load.mix", DEFAULT_MIX)).run(
+            Integer.getInteger("load.clients", 1000), Double.parseDouble(System.getProperty("load.rate", "500")),
+            Integer.getInteger("load.durationSec", 60), Integer.getInteger("load.workers", 64),
+            Integer.getInteger("load.reportSec", 5));
+      } finally {
+         esql.cleanup();
+      }//end try
+   }//end main
+
+   /**
+    * Runs the load and prints progress and a final summary.
+    *
+    * @param clients the number of simulated clients
+    * @param rate the target operations per second of all clients together
+    * @param durationSec how long to run
+    * @param workers the number of threads running operations
+    * @param reportSec the interval of the progress lines
+    * @throws InterruptedException when interrupted
+    */
+   public void run (int clients, double rate, int durationSec, int workers, int reportSec) throws InterruptedException {
+      ExecutorService pool = Executors.newFixedThreadPool(workers);
+      // mean gap between two requests of the same client
+      double meanGapNanos = clients * 1e9 / rate;
+
+      long start = System.nanoTime();
+      long end = start + durationSec * 1000000000L;
+      long nextReport = start + reportSec * 1000000000L;
+      PriorityQueue<Client> schedule = new PriorityQueue<Client>();
+      for (int i = 0; i < clients; ++i) {
+         Client c = new Client(i, 31L * i + 17);
+         c.due = start + gap(c, meanGapNanos);
+         schedule.add(c);
+      }//end for
+
+      System.out.println(String.format("%d clients, %.0f ops/s target, %d workers, %d s", clients, rate, workers, durationSec));
+      System.out.println(String.format("%8s %10s %10s %10s %8s %9s %9s", "time s", "ops/s", "p50 ms", "p99 ms",
+                                       "errors", "deadlocks", "in flight"));
+      long lastReport = start;
+      while (true) {
+         long now = System.nanoTime();
+         if (now >= nextReport) {
+            LatencyHistogram h = _interval.getAndSet(new LatencyHistogram());
+            System.out.println(String.format("%8.0f %10.1f %10.1f %10.1f %8d %9d %9d", (now - start) / 1e9,
+                                             h.getCount() * 1e9 / (now - lastReport), h.percentile(50) / 1e6,
+                                             h.percentile(99) / 1e6, _errors.get(), _deadlocks.get(), _inFlight.get()));
+            lastReport = now;
+            nextReport += reportSec * 1000000000L;
+         }//end if
+
+         Client c = schedule.peek();
+         if (c.due >= end) break;
+         if (c.due > now) {
+            long wait = Math.min(c.due, nextReport) - now;
+            TimeUnit.NANOSECONDS.sleep(Math.min(wait, 10000000L));
+            continue;
+         }//end if
+
+         schedule.poll();
+         submit(pool, c, c.due);
+         c.due += gap(c, meanGapNanos);
+         schedule.add(c);
+      }//end while
+
+      pool.shutdown();
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+      summary(System.nanoTime() - start);
+   }//end run
+
+   private void submit (ExecutorService pool, Client c, final long due) {
+      final Operation op = pick(c.random);
+      final Map<String, String> args = Benchmark.sampleArgs(op, _iteration.getAndIncrement());
+      _inFlight.incrementAndGet();
+      pool.execute(new Runnable() {
+         public void run () {
+            try {
+               op.execute(_esql, args, ResultPrinter.discard());
+               long latency = System.nanoTime() - due;
+               _latencies.get(op).record(latency);
+               _interval.get().record(latency);
+            } catch (Exception e) {
+               classify(e);
+            } finally {
+               _inFlight.decrementAndGet();
+            }//end try
+         }
+      });
+   }//end submit
+
+   private Operation pick (Random random) {
+      int r = random.nextInt(_cumulativeWeights[_cumulativeWeights.length - 1]);
+      for (int i = 0; ; ++i)
+         if (r < _cumulativeWeights[i]) return _ops[i];
+   }//end pick
+
+   private static long gap (Client c, double meanGapNanos) {
+      return (long) (-Math.log(1 - c.random.nextDouble()) * meanGapNanos);
+   }//end gap
+
+   // the 7.3 driver does not always fill in the SQLState, so the message is checked too
+   private void classify (Exception e) {
+      if (e instanceof AlreadyBookedException) {
+         _alreadyBooked.incrementAndGet();
+         return;
+      }//end if
+      _errors.incrementAndGet();
+      String state = e instanceof SQLException ? ((SQLException) e).getSQLState() : null;
+      String msg = String.valueOf(e.getMessage());
+      _firstError.compareAndSet(null, msg);
+      if ("40P01".equals(state) || msg.contains("deadlock detected")) _deadlocks.incrementAndGet();
+      else if ("40001".equals(state) || msg.contains("could not serialize")) _serializationFailures.incrementAndGet();
+   }//end classify
+
+   private void summary (long elapsedNanos) {
+      LatencyHistogram all = new LatencyHistogram();
+      System.out.println();
+      System.out.println(String.format("%-36s %8s %10s %10s %10s %10s", "operation", "ops", "p50 ms", "p99 ms",
+                                       "p99.9 ms", "max ms"));
+      for (Operation op : Operation.values()) {
+         LatencyHistogram h = _latencies.get(op);
+         if (h.getCount() == 0) continue;
+         all.add(h);
+         System.out.println(String.format("%-36s %8d %10.1f %10.1f %10.1f %10.1f", op.getName(), h.getCount(),
+                                          h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6,
+                                          h.getMax() / 1e6));
+      }//end for
+      System.out.println(String.format("%d operations in %.1f s: %.1f ops/s, p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms",
+                                       all.getCount(), elapsedNanos / 1e9, all.getCount() * 1e9 / elapsedNanos,
+                                       all.percentile(50) / 1e6, all.percentile(99) / 1e6, all.percentile(99.9) / 1e6));
+      System.out.println(String.format("%d errors, %d deadlocks, %d serialization failures, %d rooms already booked",
+                                       _errors.get(), _deadlocks.get(), _serializationFailures.get(), _alreadyBooked.get()));
+      if (_firstError.get() != null) System.out.println("first error: " + _firstError.get());
+      System.out.println("pool: " + _esql.getPool().stats());
+   }//end summary
+
+}//end LoadGenerator
@@ -0,0 +1,158 @@
+/**
+ * A bounded map from long keys to values, without boxing the keys.
+ *
+ * Entries live in an open addressing table (linear probing, backward
+ * shift deletion). When the cache is full, the entry to drop is chosen
+ * with the CLOCK policy: a hand sweeps the table, clearing the "recently
+ * used" bit of the entries it passes and evicting the first entry whose
+ * bit is already clear, which approximates least-recently-used without
+ * any per-access bookkeeping beyond one boolean.
+ *
+ * All methods are synchronized; lookups are short enough that a single
+ * monitor is cheaper than anything finer.
+ *
+ */
+public class LongCache<V> {
+
+   private final int _capacity;
+   private final int _mask;
+   private final long[] _keys;
+   private final Object[] _values;
+   private final boolean[] _used;
+   private final boolean[] _referenced;
+   private int _size = 0;
+   private int _hand = 0;
+
+   private long _hits = 0;
+   private long _misses = 0;
+   private long _evictions = 0;
+
+   /**
+    * @param capacity the maximum number of entries kept
+    */
+   public LongCache (int capacity) {
+      if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+      int slots = Integer.highestOneBit(capacity) << 2;
+      this._capacity = capacity;
+      this._mask = slots - 1;
+      this._keys = new long[slots];
+      this._values = new Object[slots];
+      this._used = new boolean[slots];
+      this._referenced = new boolean[slots];
+   }//end LongCache
+
+   /**
+    * @param key the key
+    * @return the cached value, or null on a miss
+    */
+   @SuppressWarnings("unchecked")
+   public synchronized V get (long key) {
+      int slot = find(key);
+      if (slot < 0) {
+         ++_misses;
+         return null;
+      }//end if
+      ++_hits;
+      _referenced[slot] = true;
+      return (V) _values[slot];
+   }//end get
+
+   /**
+    * Adds or replaces an entry, evicting another one if the cache is full.
+    *
+    * @param key the key
+    * @param value the value, not null
+    */
+   public synchronized void put (long key, V value) {
+      int slot = find(key);
+      if (slot >= 0) {
+         _values[slot] = value;
+         _referenced[slot] = true;
+         return;
+      }//end if
+      if (_size >= _capacity) evictOne();
+
+      slot = home(key);
+      while (_used[slot]) slot = (slot + 1) & _mask;
+      _used[slot] = true;
+      _keys[slot] = key;
+      _values[slot] = value;
+      _referenced[slot] = false;
+      ++_size;
+   }//end put
+
+   /**
+    * @param key the key to forget
+    */
+   public synchronized void remove (long key) {
+      int slot = find(key);
+      if (slot >= 0) delete(slot);
+   }//end remove
+
+   public synchronized void clear () {
+      java.util.Arrays.fill(_used, false);
+      java.util.Arrays.fill(_values, null);
+      _size = 0;
+   }//end clear
+
+   public synchronized int size () { return _size; }
+
+   public int capacity () { return _capacity; }
+
+   public synchronized long getHitCount () { return _hits; }
+
+   public synchronized long getMissCount () { return _misses; }
+
+   public synchronized long getEvictionCount () { return _evictions; }
+
+   private int find (long key) {
+      int slot = home(key);
+      while (_used[slot]) {
+         if (_keys[slot] == key) return slot;
+         slot = (slot + 1) & _mask;
+      }//end while
+      return -1;
+   }//end find
+
+   private void evictOne () {
+      while (true) {
+         _hand = (_hand + 1) & _mask;
+         if (!_used[_hand]) continue;
+         if (_referenced[_hand]) {
+            _referenced[_hand] = false;
+            continue;
+         }//end if
+         delete(_hand);
+         ++_evictions;
+         return;
+      }//end while
+   }//end evictOne
+
+   // removes the entry in slot and shifts back the entries probing past it
+   private void delete (int slot) {
+      int hole = slot;
+      int next = (hole + 1) & _mask;
+      while (_used[next]) {
+         int home = home(_keys[next]);
+         // moves the entry into the hole unless its home lies in (hole, next]
+         boolean stays = hole <= next ? (home > hole && home <= next) : (home > hole || home <= next);
+         if (!stays) {
+            _keys[hole] = _keys[next];
+            _values[hole] = _values[next];
+            _referenced[hole] = _referenced[next];
+            hole = next;
+         }//end if
+         next = (next + 1) & _mask;
+      }//end while
+      _used[hole] = false;
+      _values[hole] = null;
+      _referenced[hole] = false;
+      --_size;
+   }//end delete
+
+   private int home (long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32)) & _mask;
+   }//end home
+
+}//end LongCache
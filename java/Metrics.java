@@ -0,0 +1,244 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of the menu operations and of the
+ * statements they run. Operations are timed as a whole by Operation;
+ * statements are timed by DBProject, which splits their time into the
+ * time spent waiting for the database and the time spent reading and
+ * printing rows on the client.
+ *
+ * The numbers can be shown from the Statistics menu entry and are written
+ * every metrics.intervalSec seconds to metrics.file in the Prometheus text
+ * exposition format.
+ *
+ */
+public class Metrics {
+
+   private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+   /*
+    * Everything recorded for one operation or one statement.
+    */
+   private static final class Stats {
+      final LatencyHistogram latency = new LatencyHistogram();
+      final AtomicLong clientNanos = new AtomicLong();
+      final AtomicLong rows = new AtomicLong();
+      final AtomicLong chars = new AtomicLong();
+      final AtomicLong errors = new AtomicLong();
+   }//end Stats
+
+   // the names of the Queries constants, by SQL text
+   private static final Map<String, String> QUERY_NAMES = new HashMap<String, String>();
+   static {
+      for (Field f : Queries.class.getFields()) {
+         if (Modifier.isStatic(f.getModifiers()) && f.getType() == String.class) {
+            try {
+               QUERY_NAMES.put((String) f.get(null), f.getName().toLowerCase());
+            } catch (IllegalAccessException e) {
+               // public constants, cannot happen
+            }//end try
+         }//end if
+      }//end for
+   }
+
+   private final Map<Operation, Stats> _operations = new EnumMap<Operation, Stats>(Operation.class);
+   private final ConcurrentHashMap<String, Stats> _statements = new ConcurrentHashMap<String, Stats>();
+   // the entry of _statements of each SQL text seen, to skip the name lookup
+   private final ConcurrentHashMap<String, Stats> _bySql = new ConcurrentHashMap<String, Stats>();
+
+   public Metrics () {
+      for (Operation op : Operation.values()) _operations.put(op, new Stats());
+   }//end Metrics
+
+   /**
+    * Records one run of an operation.
+    *
+    * @param op the operation
+    * @param nanos how long it took
+    * @param rows the rows it inserted or printed
+    * @param ok false when it failed
+    */
+   public void operation (Operation op, long nanos, long rows, boolean ok) {
+      Stats s = _operations.get(op);
+      if (!ok) {
+         s.errors.incrementAndGet();
+         return;
+      }//end if
+      s.latency.record(nanos);
+      s.rows.addAndGet(rows);
+   }//end operation
+
+   /**
+    * Records one run of a statement. Statements of Queries are counted
+    * under their constant name, all others together as "other".
+    *
+    * @param sql the statement
+    * @param dbNanos time spent waiting for the database
+    * @param clientNanos time spent reading or printing its rows
+    * @param rows the rows it returned or changed
+    * @param chars the characters of the rows printed, when printed
+    * @param ok false when it failed
+    */
+   public void statement (String sql, long dbNanos, long clientNanos, long rows, long chars, boolean ok) {
+      Stats s = _bySql.get(sql);
+      if (s == null) {
+         String name = QUERY_NAMES.get(sql);
+         if (name == null) name = "other";
+         s = _statements.get(name);
+         if (s == null) {
+            Stats created = new Stats();
+            s = _statements.putIfAbsent(name, created);
+            if (s == null) s = created;
+         }//end if
+         // only the constants of Queries, so the map stays small
+         if (!name.equals("other")) _bySql.putIfAbsent(sql, s);
+      }//end if
+      if (!ok) {
+         s.errors.incrementAndGet();
+         return;
+      }//end if
+      s.latency.record(dbNanos);
+      s.clientNanos.addAndGet(clientNanos);
+      s.rows.addAndGet(rows);
+      s.chars.addAndGet(chars);
+   }//end statement
+
+   /**
+    * @return a table of the operations and statements run so far
+    */
+   public String report () {
+      StringBuilder b = new StringBuilder();
+      b.append(String.format("%-36s %8s %6s %9s %9s %9s %9s %10s%n",
+                             "operation", "count", "errors", "mean ms", "p50 ms", "p99 ms", "max ms", "rows"));
+      for (Map.Entry<Operation, Stats> e : _operations.entrySet()) {
+         Stats s = e.getValue();
+         if (s.latency.getCount() == 0 && s.errors.get() == 0) continue;
+         b.append(String.format("%-36s %8d %6d %9.2f %9.2f %9.2f %9.2f %10d%n", e.getKey().getName(),
+                                s.latency.getCount(), s.errors.get(), s.latency.getMean() / 1e6,
+                                s.latency.percentile(50) / 1e6, s.latency.percentile(99) / 1e6,
+                                s.latency.getMax() / 1e6, s.rows.get()));
+      }//end for
+      b.append(String.format("%n%-36s %8s %6s %9s %9s %11s %10s %10s%n",
+                             "statement", "count", "errors", "db p50", "db p99", "client ms", "rows", "chars"));
+      for (Map.Entry<String, Stats> e : new TreeMap<String, Stats>(_statements).entrySet()) {
+         Stats s = e.getValue();
+         b.append(String.format("%-36s %8d %6d %9.2f %9.2f %11.1f %10d %10d%n", e.getKey(),
+                                s.latency.getCount(), s.errors.get(), s.latency.percentile(50) / 1e6,
+                                s.latency.percentile(99) / 1e6, s.clientNanos.get() / 1e6, s.rows.get(), s.chars.get()));
+      }//end for
+      return b.toString();
+   }//end report
+
+   /**
+    * Writes every metric in the Prometheus text exposition format.
+    *
+    * @param out where the metrics are written
+    */
+   public void writePrometheus (Writer out) {
+      PrintWriter w = new PrintWriter(out);
+      Map<String, Stats> ops = new TreeMap<String, Stats>();
+      for (Map.Entry<Operation, Stats> e : _operations.entrySet()) ops.put(e.getKey().getName(), e.getValue());
+      Map<String, Stats> stmts = new TreeMap<String, Stats>(_statements);
+
+      summary(w, "dbproject_operation_duration_seconds", "Time spent in each menu operation.", "operation", ops);
+      counter(w, "dbproject_operation_errors_total", "Menu operations that failed.", "operation", ops, 0);
+      counter(w, "dbproject_operation_rows_total", "Rows inserted or printed by menu operations.", "operation", ops, 1);
+      summary(w, "dbproject_statement_db_seconds", "Time spent waiting for the database per statement.", "statement", stmts);
+      counter(w, "dbproject_statement_client_seconds_total", "Time spent reading and printing rows per statement.", "statement", stmts, 2);
+      counter(w, "dbproject_statement_rows_total", "Rows returned or changed per statement.", "statement", stmts, 1);
+      counter(w, "dbproject_statement_chars_total", "Characters of printed rows per statement.", "statement", stmts, 3);
+      counter(w, "dbproject_statement_errors_total", "Statements that failed.", "statement", stmts, 0);
+      w.flush();
+   }//end writePrometheus
+
+   /**
+    * Starts a daemon thread that writes the metrics to a file every
+    * interval. The file is replaced as a whole, so readers never see a
+    * partial dump.
+    *
+    * @param file the file to write
+    * @param intervalMs the time between two dumps
+    */
+   public void startDumper (final File file, final long intervalMs) {
+      Thread t = new Thread(new Runnable() {
+         public void run () {
+            while (true) {
+               try {
+                  Thread.sleep(intervalMs);
+                  dump(file);
+               } catch (InterruptedException e) {
+                  return;
+               } catch (IOException e) {
+                  System.err.println("Metrics not written to " + file + ": " + e.getMessage());
+               }//end try
+            }//end while
+         }
+      }, "metrics-dumper");
+      t.setDaemon(true);
+      t.start();
+   }//end startDumper
+
+   /**
+    * Writes the metrics to a file now.
+    *
+    * @param file the file to write
+    * @throws java.io.IOException when the file cannot be written
+    */
+   public void dump (File file) throws IOException {
+      File tmp = new File(file.getPath() + ".tmp");
+      Writer out = new FileWriter(tmp);
+      try {
+         writePrometheus(out);
+      } finally {
+         out.close();
+      }//end try
+      if (!tmp.renameTo(file)) {
+         file.delete();
+         if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp);
+      }//end if
+   }//end dump
+
+   private static void summary (PrintWriter w, String name, String help, String label, Map<String, Stats> stats) {
+      w.println("# HELP " + name + " " + help);
+      w.println("# TYPE " + name + " summary");
+      for (Map.Entry<String, Stats> e : stats.entrySet()) {
+         LatencyHistogram h = e.getValue().latency;
+         String l = label + "=\"" + e.getKey() + "\"";
+         for (double q : QUANTILES)
+            w.println(name + "{" + l + ",quantile=\"" + q + "\"} " + seconds(h.percentile(q * 100)));
+         w.println(name + "_sum{" + l + "} " + seconds(h.getTotal()));
+         w.println(name + "_count{" + l + "} " + h.getCount());
+      }//end for
+   }//end summary
+
+   // field: 0 errors, 1 rows, 2 client time, 3 chars
+   private static void counter (PrintWriter w, String name, String help, String label, Map<String, Stats> stats, int field) {
+      w.println("# HELP " + name + " " + help);
+      w.println("# TYPE " + name + " counter");
+      for (Map.Entry<String, Stats> e : stats.entrySet()) {
+         Stats s = e.getValue();
+         String value = field == 0 ? String.valueOf(s.errors.get())
+            : field == 1 ? String.valueOf(s.rows.get())
+            : field == 2 ? seconds(s.clientNanos.get())
+            : String.valueOf(s.chars.get());
+         w.println(name + "{" + label + "=\"" + e.getKey() + "\"} " + value);
+      }//end for
+   }//end counter
+
+   private static String seconds (long nanos) {
+      return String.valueOf(nanos / 1e9);
+   }//end seconds
+
+}//end Metrics
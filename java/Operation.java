@@ -0,0 +1,226 @@
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The menu operations, callable with named arguments instead of
+ * through the keyboard prompts. bookRoom, for instance, takes
+ *
+ *    customer=1 hotel=381 room=5 date=05/12/2015 people=2 price=150
+ *
+ * Dates are written MM/DD/YYYY as at the prompts. Arguments that are
+ * optional at the prompts may be left out here too.
+ *
+ */
+public enum Operation {
+
+   ADD_CUSTOMER (1, "addCustomer", "fname", "lname", "address", "phone", "dob", "gender") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         esql.addCustomer(text(a, "fname"), text(a, "lname"), a.get("address"), decimal(a, "phone"), date(a, "dob"),
+                         Input.parseGender("gender", a.get("gender")));
+         return 1;
+      }
+   },
+   ADD_ROOM (2, "addRoom", "hotel", "room", "type") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         esql.addRoom(integer(a, "hotel"), integer(a, "room"), text(a, "type"));
+         return 1;
+      }
+   },
+   ADD_MAINTENANCE_COMPANY (3, "addMaintenanceCompany", "name", "address", "certified") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         esql.addMaintenanceCompany(text(a, "name"), a.get("address"), Input.parseTorF("certified", text(a, "certified")));
+         return 1;
+      }
+   },
+   ADD_REPAIR (4, "addRepair", "hotel", "room", "company", "date", "description", "type") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         esql.addRepair(integer(a, "hotel"), integer(a, "room"), integer(a, "company"), date(a, "date"), a.get("description"), a.get("type"));
+         return 1;
+      }
+   },
+   BOOK_ROOM (5, "bookRoom", "customer", "hotel", "room", "date", "people", "price") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         esql.bookRoom(integer(a, "customer"), integer(a, "hotel"), integer(a, "room"), date(a, "date"), decimal(a, "people"),
+                      Input.parseCents("price", text(a, "price")));
+         return 1;
+      }
+   },
+   ASSIGN_HOUSE_CLEANING (6, "assignHouseCleaningToRoom", "staff", "hotel", "room") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         esql.assignHouseCleaningToRoom(integer(a, "staff"), integer(a, "hotel"), integer(a, "room"));
+         return 1;
+      }
+   },
+   REPAIR_REQUEST (7, "repairRequest", "staff", "hotel", "room", "repair", "date", "description") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         esql.repairRequest(integer(a, "staff"), integer(a, "hotel"), integer(a, "room"), integer(a, "repair"), date(a, "date"), a.get("description"));
+         return 1;
+      }
+   },
+   AVAILABLE_ROOMS (8, "numberOfAvailableRooms", "hotel", "from", "to") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         Date from = a.containsKey("from") ? date(a, "from") : null;
+         Date to = a.containsKey("to") ? date(a, "to") : from;
+         out.println("Available rooms: " + esql.availableRooms(integer(a, "hotel"), from, to));
+         return 1;
+      }
+   },
+   BOOKED_ROOMS (9, "numberOfBookedRooms", "hotel") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         return esql.numberOfBookedRooms(integer(a, "hotel"), out);
+      }
+   },
+   HOTEL_BOOKINGS_FOR_A_WEEK (10, "listHotelRoomBookingsForAWeek", "hotel", "date") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         return esql.listHotelRoomBookingsForAWeek(integer(a, "hotel"), date(a, "date"), out);
+      }
+   },
+   TOP_K_ROOM_PRICE (11, "topKHighestRoomPriceForADateRange", "from", "to", "k") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         return esql.topKHighestRoomPriceForADateRange(date(a, "from"), date(a, "to"), integer(a, "k"), out);
+      }
+   },
+   TOP_K_CUSTOMER_BOOKINGS (12, "topKHighestPriceBookingsForACustomer", "fname", "lname", "k") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         return esql.topKHighestPriceBookingsForACustomer(text(a, "fname"), text(a, "lname"), integer(a, "k"), out);
+      }
+   },
+   CUSTOMER_TOTAL_COST (13, "totalCostForCustomer", "hotel", "fname", "lname", "from", "to") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         return esql.totalCostForCustomer(integer(a, "hotel"), text(a, "fname"), text(a, "lname"), date(a, "from"), date(a, "to"), out);
+      }
+   },
+   REPAIRS_BY_COMPANY (14, "listRepairsMade", "company") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         return esql.listRepairsMade(text(a, "company"), out);
+      }
+   },
+   TOP_K_MAINTENANCE_COMPANY (15, "topKMaintenanceCompany", "k") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         return esql.topKMaintenanceCompany(integer(a, "k"), out);
+      }
+   },
+   REPAIRS_PER_YEAR (16, "numberOfRepairsForEachRoomPerYear", "hotel", "room") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         return esql.numberOfRepairsForEachRoomPerYear(integer(a, "hotel"), integer(a, "room"), out);
+      }
+   },
+   FIND_CUSTOMERS (17, "findCustomers", "lname", "fname", "limit") {
+      int run (DBProject esql, Map<String, String> a, ResultPrinter out) throws Exception {
+         int limit = a.containsKey("limit") ? integer(a, "limit") : 20;
+         return esql.findCustomers(text(a, "lname"), a.get("fname"), limit, out);
+      }
+   };
+
+   private final int _menuNumber;
+   private final String _name;
+   private final String[] _params;
+
+   private Operation (int menuNumber, String name, String... params) {
+      this._menuNumber = menuNumber;
+      this._name = name;
+      this._params = params;
+   }//end Operation
+
+   /**
+    * @return the number of the operation in the main menu
+    */
+   public int getMenuNumber () {
+      return _menuNumber;
+   }//end getMenuNumber
+
+   /**
+    * @return the name of the operation, the same as its menu method
+    */
+   public String getName () {
+      return _name;
+   }//end getName
+
+   /**
+    * @return the names of the arguments the operation takes
+    */
+   public String[] getParams () {
+      return _params.clone();
+   }//end getParams
+
+   /**
+    * @return true for the operations that insert a row, false for the reports
+    */
+   public boolean isUpdate () {
+      return _menuNumber <= 7;
+   }//end isUpdate
+
+   /**
+    * Runs the operation and records its time in the metrics of esql.
+    *
+    * @param esql the database to run against
+    * @param args the arguments by name
+    * @param out where reports print their rows
+    * @return the number of rows inserted or printed
+    * @throws Exception when an argument is missing or invalid, or the statement fails
+    */
+   public int execute (DBProject esql, Map<String, String> args, ResultPrinter out) throws Exception {
+      for (String name : args.keySet())
+         if (!Arrays.asList(_params).contains(name))
+            throw new Exception("Invalid input! " + _name + " has no argument " + name + ".");
+      long t0 = System.nanoTime();
+      boolean ok = false;
+      int rows = 0;
+      try {
+         rows = run(esql, args, out);
+         ok = true;
+         return rows;
+      } finally {
+         esql.metrics().operation(this, System.nanoTime() - t0, rows, ok);
+      }//end try
+   }//end execute
+
+   abstract int run (DBProject esql, Map<String, String> args, ResultPrinter out) throws Exception;
+
+   /**
+    * Builds the arguments of an operation from name, value pairs, leaving
+    * out the null values.
+    *
+    * @param pairs the names and values, alternating
+    * @return the arguments by name
+    */
+   public static Map<String, String> args (String... pairs) {
+      Map<String, String> args = new HashMap<String, String>();
+      for (int i = 0; i + 1 < pairs.length; i += 2)
+         if (pairs[i + 1] != null) args.put(pairs[i], pairs[i + 1]);
+      return args;
+   }//end args
+
+   /**
+    * @param name the name or menu number of an operation
+    * @return the operation, or null if there is no such operation
+    */
+   public static Operation forName (String name) {
+      for (Operation op : values())
+         if (op._name.equals(name) || String.valueOf(op._menuNumber).equals(name)) return op;
+      return null;
+   }//end forName
+
+   private static String text (Map<String, String> args, String name) throws Exception {
+      String value = args.get(name);
+      if (value == null || value.length() == 0) throw new Exception("Invalid input! " + name + " cannot be empty.");
+      return value;
+   }//end text
+
+   private static int integer (Map<String, String> args, String name) throws Exception {
+      return Input.parseInt(name, text(args, name));
+   }//end integer
+
+   private static Date date (Map<String, String> args, String name) throws Exception {
+      return Input.toDate(Input.parseEpochDay(name, text(args, name)));
+   }//end date
+
+   private static BigDecimal decimal (Map<String, String> args, String name) throws Exception {
+      String value = args.get(name);
+      return value == null ? null : DBProject.toDecimal(name, value);
+   }//end decimal
+
+}//end Operation
@@ -0,0 +1,150 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Calendar;
+import java.util.TreeSet;
+
+/**
+ * Maintenance of the yearly partitions of Booking and Repair set up by
+ * sql/partitioning.sql: creates the partitions of the coming years before
+ * rows arrive for them and detaches the partitions of years no longer
+ * kept. Tables that are not partitioned are left alone.
+ *
+ * Run with java DBProject <dbname> <port> <user> --maintain-partitions
+ *    -Dpartitions.aheadYears=2    years after the current one to create
+ *    -Dpartitions.retainYears=0   years before the current one to keep
+ *                                 attached, 0 to keep them all
+ *
+ * Detached partitions stay in the database as ordinary tables
+ * (booking_y2010, ...), out of reach of the reports, to be archived or
+ * dropped by hand.
+ *
+ */
+public final class Partitions {
+
+   // the partitioned tables and their partition keys
+   private static final String[][] TABLES = {
+      {"booking", "bookingDate"},
+      {"repair", "repairDate"}
+   };
+
+   private static final String PARTITIONED =
+      "SELECT 1 FROM pg_class WHERE relname = ? AND relkind = 'p'";
+   private static final String PARTITIONS =
+      "SELECT c.relname FROM pg_inherits i, pg_class c, pg_class p "
+    + "WHERE c.oid = i.inhrelid AND p.oid = i.inhparent AND p.relname = ?";
+
+   private Partitions () {
+   }
+
+   /**
+    * Creates and detaches the yearly partitions of every partitioned table.
+    *
+    * @param conn the connection to use; left in autocommit mode
+    * @param aheadYears partitions are created up to this many years after the current one
+    * @param retainYears partitions older than this many years before the current one are
+    *        detached, or none when 0
+    * @throws java.sql.SQLException when a statement fails
+    */
+   public static void maintain (Connection conn, int aheadYears, int retainYears) throws SQLException {
+      int year = Calendar.getInstance().get(Calendar.YEAR);
+      for (String[] t : TABLES) {
+         if (!isPartitioned(conn, t[0])) {
+            System.out.println(t[0] + " is not partitioned, see sql/partitioning.sql");
+            continue;
+         }//end if
+         TreeSet<Integer> years = years(conn, t[0]);
+         for (int y = year; y <= year + aheadYears; ++y) {
+            if (years.contains(Integer.valueOf(y))) continue;
+            create(conn, t[0], t[1], y);
+            System.out.println("created " + name(t[0], y));
+         }//end for
+         if (retainYears <= 0) continue;
+         for (Integer y : years.headSet(Integer.valueOf(year - retainYears))) {
+            execute(conn, "ALTER TABLE " + t[0] + " DETACH PARTITION " + name(t[0], y.intValue()));
+            System.out.println("detached " + name(t[0], y.intValue()));
+         }//end for
+      }//end for
+   }//end maintain
+
+   /**
+    * @param conn the connection to use
+    * @param table the table name, lower case
+    * @return true when the table is partitioned
+    * @throws java.sql.SQLException when the catalog cannot be read
+    */
+   public static boolean isPartitioned (Connection conn, String table) throws SQLException {
+      PreparedStatement stmt = conn.prepareStatement(PARTITIONED);
+      try {
+         stmt.setString(1, table);
+         ResultSet rs = stmt.executeQuery();
+         return rs.next();
+      } finally {
+         stmt.close();
+      }//end try
+   }//end isPartitioned
+
+   // the years of the attached yearly partitions of a table
+   private static TreeSet<Integer> years (Connection conn, String table) throws SQLException {
+      TreeSet<Integer> years = new TreeSet<Integer>();
+      PreparedStatement stmt = conn.prepareStatement(PARTITIONS);
+      try {
+         stmt.setString(1, table);
+         ResultSet rs = stmt.executeQuery();
+         String prefix = table + "_y";
+         while (rs.next()) {
+            String name = rs.getString(1);
+            if (name.startsWith(prefix)) {
+               try {
+                  years.add(Integer.valueOf(name.substring(prefix.length())));
+               } catch (NumberFormatException e) {
+                  // not one of ours
+               }//end try
+            }//end if
+         }//end while
+      } finally {
+         stmt.close();
+      }//end try
+      return years;
+   }//end years
+
+   /*
+    * Creates the partition of a year. Rows of that year that went to the
+    * default partition meanwhile are moved into it first, since a
+    * partition cannot be attached while the default one holds its rows.
+    */
+   private static void create (Connection conn, String table, String key, int year) throws SQLException {
+      String name = name(table, year);
+      String range = key + " >= DATE '" + year + "-01-01' AND " + key + " < DATE '" + (year + 1) + "-01-01'";
+      conn.setAutoCommit(false);
+      try {
+         execute(conn, "CREATE TABLE " + name + " (LIKE " + table + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+         execute(conn, "INSERT INTO " + name + " SELECT * FROM " + table + "_default WHERE " + range);
+         execute(conn, "DELETE FROM " + table + "_default WHERE " + range);
+         execute(conn, "ALTER TABLE " + table + " ATTACH PARTITION " + name
+                     + " FOR VALUES FROM ('" + year + "-01-01') TO ('" + (year + 1) + "-01-01')");
+         conn.commit();
+      } catch (SQLException e) {
+         conn.rollback();
+         throw e;
+      } finally {
+         conn.setAutoCommit(true);
+      }//end try
+   }//end create
+
+   private static String name (String table, int year) {
+      return table + "_y" + year;
+   }//end name
+
+   private static void execute (Connection conn, String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         stmt.execute(sql);
+      } finally {
+         stmt.close();
+      }//end try
+   }//end execute
+
+}//end Partitions
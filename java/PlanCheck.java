@@ -0,0 +1,200 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plan regression check for the menu queries. Runs every query of
+ * Queries under EXPLAIN (ANALYZE, BUFFERS) against a database seeded from
+ * data/ (with sql/indexes.sql applied) and fails when a plan falls back to
+ * a sequential scan of a table it is not expected to scan, or touches more
+ * shared buffers than its budget. Inserts run inside a transaction that is
+ * rolled back.
+ *
+ * Usage: java PlanCheck <dbname> <port> <user>
+ * The buffer budgets are sized for the shipped data; scale them for bigger
+ * seeds with -Dplancheck.bufferScale=<factor>.
+ *
+ */
+public class PlanCheck {
+
+   private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+   private static final Pattern BUFFERS = Pattern.compile("Buffers: shared(?: hit=(\\d+))?(?: read=(\\d+))?");
+
+   /*
+    * One query, sample parameters from the shipped data, the tables it
+    * may scan sequentially and its shared buffer budget.
+    */
+   private static final class Check {
+      final String name;
+      final String sql;
+      final Object[] params;
+      final Set<String> allowedSeqScans;
+      final long maxBuffers;
+
+      Check(String name, String sql, Object[] params, String[] allowedSeqScans, long maxBuffers) {
+         this.name = name;
+         this.sql = sql;
+         this.params = params;
+         this.allowedSeqScans = new HashSet<String>(Arrays.asList(allowedSeqScans));
+         this.maxBuffers = maxBuffers;
+      }
+   }//end Check
+
+   private static final String[] NONE = new String[0];
+   private static final Integer HOTEL = Integer.valueOf(381);
+   private static final Integer ROOM = Integer.valueOf(5);
+   private static final Date FROM = Date.valueOf("2015-05-12");
+   private static final Date TO = Date.valueOf("2015-05-19");
+   private static final Long NEW_ID = Long.valueOf(999999999L);
+
+   private static final Check[] CHECKS = {
+      new Check("1 addCustomer", Queries.ADD_CUSTOMER,
+         new Object[] {NEW_ID, "plan", "check", "addr", null, FROM, "Other"}, NONE, 50),
+      new Check("2 addRoom", Queries.ADD_ROOM,
+         new Object[] {Integer.valueOf(1), Integer.valueOf(999999), "Suite"}, NONE, 50),
+      new Check("3 addMaintenanceCompany", Queries.ADD_MAINTENANCE_COMPANY,
+         new Object[] {NEW_ID, "plan", "addr", Boolean.TRUE}, NONE, 50),
+      new Check("4 addRepair", Queries.ADD_REPAIR,
+         new Object[] {NEW_ID, HOTEL, ROOM, Integer.valueOf(1), FROM, "desc", "Small"}, NONE, 50),
+      new Check("4 addRepair (company count)", Queries.COUNT_COMPANY_REPAIR,
+         new Object[] {Integer.valueOf(1)}, new String[] {"repaircountbycompany"}, 20),
+      new Check("4 addRepair (room year count)", Queries.COUNT_ROOM_YEAR_REPAIR,
+         new Object[] {Integer.valueOf(1), Integer.valueOf(145), Integer.valueOf(4), Integer.valueOf(2015)}, NONE, 20),
+      new Check("5 bookRoom", Queries.BOOK_ROOM,
+         new Object[] {NEW_ID, Integer.valueOf(1), HOTEL, ROOM, FROM, null, new BigDecimal("100")}, NONE, 50),
+      new Check("6 assignHouseCleaningToRoom", Queries.ASSIGN_HOUSE_CLEANING,
+         new Object[] {NEW_ID, Integer.valueOf(3), HOTEL, ROOM}, NONE, 50),
+      new Check("7 repairRequest", Queries.REPAIR_REQUEST,
+         new Object[] {NEW_ID, Integer.valueOf(1), Integer.valueOf(1), FROM, "desc"}, NONE, 50),
+      new Check("8 numberOfAvailableRooms", Queries.AVAILABLE_ROOMS,
+         new Object[] {HOTEL}, NONE, 50),
+      new Check("8 numberOfAvailableRooms (dates)", Queries.AVAILABLE_ROOMS_FOR_DATES,
+         new Object[] {HOTEL, FROM, TO}, NONE, 50),
+      new Check("9 numberOfBookedRooms", Queries.BOOKED_ROOMS,
+         new Object[] {HOTEL}, NONE, 20),
+      new Check("10 listHotelRoomBookingsForAWeek", Queries.HOTEL_BOOKINGS_FOR_A_WEEK,
+         new Object[] {HOTEL, FROM, TO}, NONE, 20),
+      new Check("10 listHotelRoomBookingsForAWeek (page)", Queries.HOTEL_BOOKINGS_PAGE_AFTER,
+         new Object[] {HOTEL, FROM, TO, FROM, Integer.valueOf(1), Integer.valueOf(20)}, NONE, 20),
+      new Check("10 listHotelRoomBookingsForAWeek (previous page)", Queries.HOTEL_BOOKINGS_PAGE_BEFORE,
+         new Object[] {HOTEL, FROM, TO, TO, Integer.valueOf(1), Integer.valueOf(20)}, NONE, 20),
+      // fallback of the price index; may hash join all of Room for a wide range
+      new Check("11 topKHighestRoomPriceForADateRange", Queries.TOP_K_ROOM_PRICE,
+         new Object[] {FROM, TO, Integer.valueOf(5)}, new String[] {"room"}, 500),
+      new Check("12 topKHighestPriceBookingsForACustomer", Queries.TOP_K_CUSTOMER_BOOKINGS,
+         new Object[] {"rzqs", "eyeg", Integer.valueOf(5)}, NONE, 30),
+      new Check("13 totalCostForCustomer", Queries.CUSTOMER_TOTAL_COST,
+         new Object[] {HOTEL, "rzqs", "eyeg", FROM, TO}, NONE, 30),
+      new Check("12 topKHighestPriceBookingsForACustomer (by ID)", Queries.TOP_K_CUSTOMER_BOOKINGS_BY_ID,
+         new Object[] {Integer.valueOf(1), Integer.valueOf(5)}, NONE, 20),
+      new Check("13 totalCostForCustomer (by ID)", Queries.CUSTOMER_TOTAL_COST_BY_ID,
+         new Object[] {HOTEL, Integer.valueOf(1), FROM, TO}, NONE, 20),
+      // fallback of the customer index; Customer is small and LIKE cannot use customer_name_idx
+      new Check("17 findCustomers", Queries.FIND_CUSTOMERS,
+         new Object[] {"ey%", "%", Integer.valueOf(20)}, new String[] {"customer"}, 200),
+      // MaintenanceCompany fits in a single page
+      new Check("14 listRepairsMade", Queries.REPAIRS_BY_COMPANY,
+         new Object[] {"iqcq"}, new String[] {"maintenancecompany"}, 200),
+      new Check("14 listRepairsMade (page)", Queries.REPAIRS_PAGE_AFTER,
+         new Object[] {"iqcq", Integer.valueOf(1000), Integer.valueOf(20)}, new String[] {"maintenancecompany"}, 50),
+      new Check("14 listRepairsMade (previous page)", Queries.REPAIRS_PAGE_BEFORE,
+         new Object[] {"iqcq", Integer.valueOf(1000), Integer.valueOf(20)}, new String[] {"maintenancecompany"}, 50),
+      // one row per company, a page or two
+      new Check("15 topKMaintenanceCompany", Queries.TOP_K_MAINTENANCE_COMPANY,
+         new Object[] {Integer.valueOf(5)}, new String[] {"repaircountbycompany", "maintenancecompany"}, 30),
+      new Check("16 numberOfRepairsForEachRoomPerYear", Queries.REPAIRS_PER_YEAR,
+         new Object[] {Integer.valueOf(4), Integer.valueOf(145)}, NONE, 20)
+   };
+
+   public static void main (String[] args) throws Exception {
+      if (args.length != 3) {
+         System.err.println("Usage: java [-classpath <classpath>] " + PlanCheck.class.getName()
+                            + " <dbname> <port> <user>");
+         System.exit(2);
+      }//end if
+
+      double scale = Double.parseDouble(System.getProperty("plancheck.bufferScale", "1"));
+      Class.forName("org.postgresql.Driver");
+      Connection conn = DriverManager.getConnection(
+         "jdbc:postgresql://localhost:" + args[1] + "/" + args[0], args[2], "");
+      int failed = 0;
+      try {
+         conn.setAutoCommit(false);
+         for (Check check : CHECKS) {
+            List<String> problems = new ArrayList<String>();
+            List<String> plan = explain(conn, check);
+            long buffers = verify(check, plan, (long) (check.maxBuffers * scale), problems);
+            if (problems.isEmpty()) {
+               System.out.println("PASS " + check.name + " (" + buffers + " buffers)");
+            } else {
+               ++failed;
+               System.out.println("FAIL " + check.name);
+               for (String p : problems) System.out.println("     " + p);
+               for (String line : plan) System.out.println("     | " + line);
+            }//end if
+         }//end for
+      } finally {
+         conn.close();
+      }//end try
+
+      System.out.println(failed == 0 ? "All " + CHECKS.length + " plans OK"
+                                     : failed + " of " + CHECKS.length + " plans regressed");
+      System.exit(failed == 0 ? 0 : 1);
+   }//end main
+
+   private static List<String> explain (Connection conn, Check check) throws SQLException {
+      List<String> plan = new ArrayList<String>();
+      PreparedStatement stmt = conn.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + check.sql);
+      try {
+         DBProject.bind(stmt, check.params);
+         ResultSet rs = stmt.executeQuery();
+         while (rs.next()) plan.add(rs.getString(1));
+         rs.close();
+      } finally {
+         stmt.close();
+         // ANALYZE really runs the statement; never keep what it wrote
+         conn.rollback();
+      }//end try
+      return plan;
+   }//end explain
+
+   /*
+    * Collects the problems of one plan and returns the shared buffers
+    * touched by its top node, which includes those of every child.
+    */
+   private static long verify (Check check, List<String> plan, long budget, List<String> problems) {
+      for (String line : plan) {
+         Matcher m = SEQ_SCAN.matcher(line);
+         while (m.find()) {
+            String table = m.group(1).toLowerCase();
+            if (!check.allowedSeqScans.contains(table))
+               problems.add("sequential scan on " + table);
+         }//end while
+      }//end for
+
+      long buffers = 0;
+      for (String line : plan) {
+         Matcher m = BUFFERS.matcher(line);
+         if (m.find()) {
+            if (m.group(1) != null) buffers += Long.parseLong(m.group(1));
+            if (m.group(2) != null) buffers += Long.parseLong(m.group(2));
+            break;
+         }//end if
+      }//end for
+      if (buffers > budget)
+         problems.add(buffers + " shared buffers, budget is " + budget);
+      return buffers;
+   }//end verify
+
+}//end PlanCheck
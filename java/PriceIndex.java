@@ -0,0 +1,281 @@
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of booking prices by day, used to answer "the k highest
+ * priced rooms booked between D1 and D2" (menu option 11) without sorting
+ * every booking of the range.
+ *
+ * The days are the leaves of a segment tree. Every node keeps the distinct
+ * (price, hotel, room) entries of its days, highest price first, cut off
+ * after maxK entries. A range is covered by O(log days) nodes, and the top
+ * k of the range is merged from their lists. A booking is added to the
+ * leaf of its day and to every node above it.
+ *
+ * Entries are packed into a long, price in cents in the high bits, so
+ * comparing two entries compares their prices first. Bookings whose
+ * values do not fit mark the index stale, and callers fall back to SQL,
+ * as they do for a k above maxK. So do ranges reaching a booking dated
+ * more than a year before or after the days covered, which is kept out of
+ * the tree rather than growing it to a mistyped year.
+ *
+ */
+public class PriceIndex {
+
+   private static final int ROOM_BITS = 21;
+   private static final int HOTEL_BITS = 22;
+   private static final int CENTS_BITS = 20;
+   // the tree grows a year past the latest booking, so new bookings rarely resize it
+   private static final int HEADROOM_DAYS = 366;
+   // how far before the first day covered a booking may resize the tree
+   private static final int MAX_GROWTH_DAYS = 366;
+
+   private final int _maxK;
+   private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+   // days of leaf 0 and number of leaves, a power of two
+   private int _baseDay;
+   private int _leaves;
+   // node i has children 2i and 2i+1; leaf d is node _leaves + d
+   private long[][] _nodes;
+   private int[] _sizes;
+   private boolean _stale = false;
+   // the first and last day of the bookings left out of the tree
+   private int _outsideFrom = Integer.MAX_VALUE;
+   private int _outsideTo = Integer.MIN_VALUE;
+
+   private PriceIndex (int maxK, int firstDay, int lastDay) {
+      this._maxK = maxK;
+      resize(firstDay, lastDay + HEADROOM_DAYS);
+   }//end PriceIndex
+
+   /**
+    * Builds the index from the Booking table.
+    *
+    * @param esql the database to read from
+    * @param maxK the largest k the index answers
+    * @return the loaded index
+    * @throws java.sql.SQLException when the table cannot be read
+    */
+   public static PriceIndex build (DBProject esql, int maxK) throws SQLException {
+      // one row per shard
+      final int[] range = {Integer.MAX_VALUE, Integer.MIN_VALUE};
+      esql.scanQuery("SELECT MIN(bookingDate), MAX(bookingDate) FROM Booking", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n) {
+               if (rs.getDate(1) == null) continue;
+               range[0] = Math.min(range[0], AvailabilityIndex.epochDay(rs.getDate(1)));
+               range[1] = Math.max(range[1], AvailabilityIndex.epochDay(rs.getDate(2)));
+            }//end for
+            return n;
+         }
+      });
+      int today = AvailabilityIndex.epochDay(new java.util.Date());
+      final PriceIndex index = range[0] == Integer.MAX_VALUE ? new PriceIndex(maxK, today, today)
+                                                             : new PriceIndex(maxK, range[0], range[1]);
+
+      // fills the leaves only, the nodes above are merged once at the end
+      esql.scanQuery("SELECT hotelID, roomNo, bookingDate, price FROM Booking", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n) {
+               long entry = entry(rs.getInt(1), rs.getInt(2), cents(rs.getBigDecimal(4)));
+               int day = AvailabilityIndex.epochDay(rs.getDate(3));
+               if (entry < 0) index._stale = true;
+               else if (day < index._baseDay || day >= index._baseDay + index._leaves) index.outside(day);
+               else index.insert(index._leaves + day - index._baseDay, entry);
+            }//end for
+            return n;
+         }
+      });
+      index.mergeAll();
+      return index;
+   }//end build
+
+   /**
+    * Records a booking.
+    *
+    * @param hotelID the hotel of the booked room
+    * @param roomNo the booked room
+    * @param day the booking date as days since 1970-01-01 (see AvailabilityIndex.epochDay)
+    * @param priceCents the price of the booking in cents
+    */
+   public void booked (int hotelID, int roomNo, int day, long priceCents) {
+      long entry = entry(hotelID, roomNo, priceCents);
+      _lock.writeLock().lock();
+      try {
+         if (entry < 0) {
+            _stale = true;
+            return;
+         }//end if
+         if (day < _baseDay - MAX_GROWTH_DAYS || day >= _baseDay + _leaves + HEADROOM_DAYS) {
+            outside(day);
+            return;
+         }//end if
+         if (day < _baseDay || day >= _baseDay + _leaves)
+            resize(Math.min(day, _baseDay), Math.max(day, _baseDay + _leaves - 1) + HEADROOM_DAYS);
+         for (int node = _leaves + day - _baseDay; node >= 1; node >>= 1) insert(node, entry);
+      } finally {
+         _lock.writeLock().unlock();
+      }//end try
+   }//end booked
+
+   /**
+    * Finds the k highest priced distinct (hotel, room, price) entries of
+    * the bookings from fromDay to toDay (both included), highest first.
+    *
+    * @param fromDay first day, as days since 1970-01-01
+    * @param toDay last day, as days since 1970-01-01
+    * @param k the number of entries to return
+    * @return the entries (see hotelID, roomNo and cents), or null when the index cannot tell
+    */
+   public long[] topK (int fromDay, int toDay, int k) {
+      if (k > _maxK) return null;
+      _lock.readLock().lock();
+      try {
+         if (_stale || (fromDay <= _outsideTo && toDay >= _outsideFrom)) return null;
+         int from = Math.max(fromDay - _baseDay, 0);
+         int to = Math.min(toDay - _baseDay, _leaves - 1);
+         if (k <= 0 || from > to) return new long[0];
+
+         // the nodes covering [from, to], found bottom up
+         int[] cover = new int[64];
+         int n = 0;
+         for (int lo = from + _leaves, hi = to + _leaves + 1; lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) cover[n++] = lo++;
+            if ((hi & 1) == 1) cover[n++] = --hi;
+         }//end for
+         return merge(cover, n, k);
+      } finally {
+         _lock.readLock().unlock();
+      }//end try
+   }//end topK
+
+   /**
+    * @param entry an entry returned by topK
+    * @return its hotel
+    */
+   public static int hotelID (long entry) {
+      return (int) (entry >>> ROOM_BITS) & ((1 << HOTEL_BITS) - 1);
+   }//end hotelID
+
+   /**
+    * @param entry an entry returned by topK
+    * @return its room number
+    */
+   public static int roomNo (long entry) {
+      return (int) entry & ((1 << ROOM_BITS) - 1);
+   }//end roomNo
+
+   /**
+    * @param entry an entry returned by topK
+    * @return its price in cents
+    */
+   public static int cents (long entry) {
+      return (int) (entry >>> (ROOM_BITS + HOTEL_BITS));
+   }//end cents
+
+   // packs a booking, or returns -1 when one of its values does not fit
+   private static long entry (int hotelID, int roomNo, long cents) {
+      if (cents < 0 || cents >= 1 << CENTS_BITS || hotelID < 0 || hotelID >= 1 << HOTEL_BITS
+          || roomNo < 0 || roomNo >= 1 << ROOM_BITS) return -1;
+      return (cents << (ROOM_BITS + HOTEL_BITS)) | ((long) hotelID << ROOM_BITS) | roomNo;
+   }//end entry
+
+   // a price read from the database in cents, or -1 when it is not a whole number of cents
+   private static long cents (BigDecimal price) {
+      if (price == null) return -1;
+      BigDecimal c = price.movePointRight(2);
+      if (c.remainder(BigDecimal.ONE).signum() != 0 || c.compareTo(BigDecimal.valueOf(1 << CENTS_BITS)) >= 0) return -1;
+      return c.longValue();
+   }//end cents
+
+   // notes a booking of a day the tree does not cover
+   private void outside (int day) {
+      _outsideFrom = Math.min(_outsideFrom, day);
+      _outsideTo = Math.max(_outsideTo, day);
+   }//end outside
+
+   // adds an entry to the descending list of a node, keeping at most _maxK distinct entries
+   private void insert (int node, long entry) {
+      long[] list = _nodes[node];
+      int size = _sizes[node];
+      int lo = 0;
+      int hi = size;
+      while (lo < hi) {
+         int mid = (lo + hi) >>> 1;
+         if (list[mid] > entry) lo = mid + 1;
+         else hi = mid;
+      }//end while
+      if (lo < size && list[lo] == entry) return;
+      if (lo >= _maxK) return;
+
+      if (list == null || (size == list.length && size < _maxK)) {
+         long[] grown = new long[Math.min(_maxK, list == null ? 4 : list.length * 2)];
+         if (list != null) System.arraycopy(list, 0, grown, 0, size);
+         _nodes[node] = list = grown;
+      }//end if
+      if (size == _maxK) --size;
+      System.arraycopy(list, lo, list, lo + 1, size - lo);
+      list[lo] = entry;
+      _sizes[node] = size + 1;
+   }//end insert
+
+   // merges the lists of n nodes into their k highest distinct entries
+   private long[] merge (int[] nodes, int n, int k) {
+      int[] pos = new int[n];
+      long[] top = new long[k];
+      int count = 0;
+      while (count < k) {
+         int best = -1;
+         for (int i = 0; i < n; ++i) {
+            if (pos[i] < _sizes[nodes[i]]
+                && (best < 0 || _nodes[nodes[i]][pos[i]] > _nodes[nodes[best]][pos[best]])) best = i;
+         }//end for
+         if (best < 0) break;
+         long entry = _nodes[nodes[best]][pos[best]++];
+         // the same room at the same price on several days is one row, as with SELECT DISTINCT
+         if (count == 0 || top[count - 1] != entry) top[count++] = entry;
+      }//end while
+      if (count == k) return top;
+      long[] shorter = new long[count];
+      System.arraycopy(top, 0, shorter, 0, count);
+      return shorter;
+   }//end merge
+
+   // recomputes every node above the leaves from its children
+   private void mergeAll () {
+      for (int node = _leaves - 1; node >= 1; --node) {
+         _nodes[node] = null;
+         _sizes[node] = 0;
+         long[] both = merge(new int[] {2 * node, 2 * node + 1}, 2, _maxK);
+         if (both.length > 0) {
+            _nodes[node] = both;
+            _sizes[node] = both.length;
+         }//end if
+      }//end for
+   }//end mergeAll
+
+   // makes the leaves cover firstDay to lastDay, keeping the leaves already filled
+   private void resize (int firstDay, int lastDay) {
+      int leaves = 1;
+      while (leaves < lastDay - firstDay + 1) leaves <<= 1;
+      long[][] nodes = new long[2 * leaves][];
+      int[] sizes = new int[2 * leaves];
+      if (_nodes != null) {
+         for (int d = 0; d < _leaves; ++d) {
+            nodes[leaves + _baseDay + d - firstDay] = _nodes[_leaves + d];
+            sizes[leaves + _baseDay + d - firstDay] = _sizes[_leaves + d];
+         }//end for
+      }//end if
+      _baseDay = firstDay;
+      _leaves = leaves;
+      _nodes = nodes;
+      _sizes = sizes;
+      mergeAll();
+   }//end resize
+
+}//end PriceIndex
@@ -0,0 +1,143 @@
+/**
+ * The SQL text of the menu operations, kept apart from the
+ * prompts in DBProject so other tools (e.g. PlanCheck) run exactly the
+ * statements the menu runs. Every input is a ? parameter; parameters
+ * compared with CHAR(30) columns are cast so the indexes in
+ * sql/indexes.sql apply whether or not the statement is server prepared,
+ * and date bounds are cast to DATE so a partitioned Booking (see
+ * sql/partitioning.sql) is pruned to the partitions of the range.
+ *
+ */
+public final class Queries {
+
+   // Option 1: new customer
+   public static final String ADD_CUSTOMER =
+      "INSERT INTO CUSTOMER (customerID, fName, lName, Address, phNo, DOB, gender) VALUES(?, ?, ?, ?, ?, ?, CAST(? AS GenderType))";
+   // takes a new customer back from the shards that got it when another shard failed
+   public static final String UNDO_ADD_CUSTOMER =
+      "DELETE FROM CUSTOMER WHERE customerID = ?";
+
+   // Option 2: new room
+   public static final String ADD_ROOM =
+      "INSERT INTO ROOM (hotelID, roomNo, roomType) VALUES(?, ?, ?)";
+
+   // Option 3: new maintenance company
+   public static final String ADD_MAINTENANCE_COMPANY =
+      "INSERT INTO MaintenanceCompany (cmpID, name, address, isCertified) VALUES(?, ?, ?, ?)";
+   public static final String UNDO_ADD_MAINTENANCE_COMPANY =
+      "DELETE FROM MaintenanceCompany WHERE cmpID = ?";
+
+   // Option 4: new repair
+   public static final String ADD_REPAIR =
+      "INSERT INTO Repair (rID, hotelID, roomNo, mCompany, repairDate, description, repairType) VALUES(?, ?, ?, ?, ?, ?, ?)";
+
+   // Option 4: repair counts kept for options 15 and 16, see RepairCounts
+   public static final String COUNT_COMPANY_REPAIR =
+      "UPDATE RepairCountByCompany SET repairs = repairs + 1 WHERE mCompany = ?";
+   public static final String FIRST_COMPANY_REPAIR =
+      "INSERT INTO RepairCountByCompany (mCompany, repairs) VALUES (?, 1)";
+   public static final String COUNT_ROOM_YEAR_REPAIR =
+      "UPDATE RepairCountByRoomYear SET repairs = repairs + ? WHERE hotelID = ? AND roomNo = ? AND repairYear = ?";
+   public static final String FIRST_ROOM_YEAR_REPAIR =
+      "INSERT INTO RepairCountByRoomYear (hotelID, roomNo, repairYear, repairs) VALUES (?, ?, ?, ?)";
+
+   // Option 5: new booking
+   public static final String BOOK_ROOM =
+      "INSERT INTO Booking (bID, customer, hotelID, roomNo, bookingDate, noOfPeople, price) VALUES(?, ?, ?, ?, ?, ?, ?)";
+
+   // Option 6: house cleaning staff assignment
+   public static final String ASSIGN_HOUSE_CLEANING =
+      "INSERT INTO Assigned (asgID, staffID, hotelID, roomNo) VALUES(?, ?, ?, ?)";
+
+   // Option 7: repair request
+   public static final String REPAIR_REQUEST =
+      "INSERT INTO Request (reqID, managerID, repairID, requestDate, description) VALUES(?, ?, ?, ?, ?)";
+
+   // Option 8: number of rooms of a hotel that were never booked
+   public static final String AVAILABLE_ROOMS =
+      "SELECT Count(*) FROM Room R WHERE R.hotelID = ? "
+    + "AND NOT EXISTS ( SELECT 1 FROM Booking B WHERE B.hotelID = R.hotelID AND B.roomNo = R.roomNo )";
+
+   // Option 8: number of rooms of a hotel that are free on every day of a date range
+   public static final String AVAILABLE_ROOMS_FOR_DATES =
+      "SELECT Count(*) FROM Room R WHERE R.hotelID = ? "
+    + "AND NOT EXISTS ( SELECT 1 FROM Booking B WHERE B.hotelID = R.hotelID AND B.roomNo = R.roomNo "
+    + "AND B.bookingDate BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) )";
+
+   // Option 9: number of booked rooms of a hotel
+   public static final String BOOKED_ROOMS =
+      "SELECT Count(*) FROM Booking B WHERE B.HotelID = ?";
+
+   // Option 10: bookings of a hotel for the week starting on a date
+   public static final String HOTEL_BOOKINGS_FOR_A_WEEK =
+      "SELECT B.roomNo, B.bookingDate FROM Booking B WHERE B.HotelID = ? AND B.bookingDate BETWEEN CAST(? AS DATE) AND CAST(? AS DATE)";
+
+   // Option 10 a page at a time: the page after, or before, the booking at (bookingDate, roomNo) =
+   // (?, ?), in (bookingDate, roomNo) order; the page before comes back last booking first
+   public static final String HOTEL_BOOKINGS_PAGE_AFTER =
+      "SELECT B.roomNo, B.bookingDate FROM Booking B WHERE B.HotelID = ? AND B.bookingDate BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) "
+    + "AND (B.bookingDate, B.roomNo) > (CAST(? AS DATE), ?) ORDER BY B.bookingDate, B.roomNo LIMIT ?";
+   public static final String HOTEL_BOOKINGS_PAGE_BEFORE =
+      "SELECT B.roomNo, B.bookingDate FROM Booking B WHERE B.HotelID = ? AND B.bookingDate BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) "
+    + "AND (B.bookingDate, B.roomNo) < (CAST(? AS DATE), ?) ORDER BY B.bookingDate DESC, B.roomNo DESC LIMIT ?";
+
+   // Option 11: top k room prices for a date range
+   public static final String TOP_K_ROOM_PRICE =
+      "SELECT DISTINCT B.hotelID, R.roomNo, R.roomType, B.price FROM Booking B, Room R WHERE B.hotelID = R.hotelID "
+    + "AND B.roomNo = R.roomNo AND B.bookingDate BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) ORDER BY B.price DESC LIMIT ?";
+
+   // Option 12: top k booking prices of a customer
+   public static final String TOP_K_CUSTOMER_BOOKINGS =
+      "SELECT B.price FROM Booking B, Customer C WHERE B.customer = C.customerID AND C.fname = CAST(? AS CHAR(30)) AND C.lname = CAST(? AS CHAR(30)) "
+    + "ORDER BY B.price DESC LIMIT ?";
+
+   // Option 12 for a customer found in the customer index
+   public static final String TOP_K_CUSTOMER_BOOKINGS_BY_ID =
+      "SELECT B.price FROM Booking B WHERE B.customer = ? ORDER BY B.price DESC LIMIT ?";
+
+   // Option 13: total cost of a customer at a hotel for a date range
+   public static final String CUSTOMER_TOTAL_COST =
+      "SELECT SUM(B.price) FROM Booking B, Customer C WHERE B.hotelID = ? AND B.customer = C.customerID "
+    + "AND C.fname = CAST(? AS CHAR(30)) AND C.lname = CAST(? AS CHAR(30)) AND B.bookingDate BETWEEN CAST(? AS DATE) AND CAST(? AS DATE)";
+
+   // Option 13 for a customer found in the customer index
+   public static final String CUSTOMER_TOTAL_COST_BY_ID =
+      "SELECT SUM(B.price) FROM Booking B WHERE B.hotelID = ? AND B.customer = ? AND B.bookingDate BETWEEN CAST(? AS DATE) AND CAST(? AS DATE)";
+
+   // Option 14: repairs made by a maintenance company
+   public static final String REPAIRS_BY_COMPANY =
+      "SELECT R.rID, R.repairType, R.hotelID, R.roomNo FROM Repair R, MaintenanceCompany M WHERE M.name = CAST(? AS CHAR(30)) AND M.cmpID = R.mCompany";
+
+   // Option 14 a page at a time: the page after, or before, the repair with rID = ?, in rID order;
+   // the page before comes back last repair first
+   public static final String REPAIRS_PAGE_AFTER =
+      "SELECT R.rID, R.repairType, R.hotelID, R.roomNo FROM Repair R, MaintenanceCompany M WHERE M.name = CAST(? AS CHAR(30)) AND M.cmpID = R.mCompany "
+    + "AND R.rID > ? ORDER BY R.rID LIMIT ?";
+   public static final String REPAIRS_PAGE_BEFORE =
+      "SELECT R.rID, R.repairType, R.hotelID, R.roomNo FROM Repair R, MaintenanceCompany M WHERE M.name = CAST(? AS CHAR(30)) AND M.cmpID = R.mCompany "
+    + "AND R.rID < ? ORDER BY R.rID DESC LIMIT ?";
+
+   // Option 15: top k maintenance companies by repair count, from the counts kept by option 4
+   public static final String TOP_K_MAINTENANCE_COMPANY =
+      "SELECT M.name, C.repairs FROM ( SELECT mCompany, repairs FROM RepairCountByCompany ORDER BY repairs DESC LIMIT ? ) C, "
+    + "MaintenanceCompany M WHERE M.cmpID = C.mCompany ORDER BY C.repairs DESC";
+
+   // Option 15 on shards: the counts of every company, summed over the shards by the client
+   public static final String REPAIR_COUNTS_BY_COMPANY =
+      "SELECT mCompany, repairs FROM RepairCountByCompany";
+
+   // Option 16: repairs per year for a hotel room, from the counts kept by option 4
+   public static final String REPAIRS_PER_YEAR =
+      "SELECT C.repairYear, C.repairs FROM RepairCountByRoomYear C WHERE C.roomNo = ? AND C.hotelID = ? "
+    + "ORDER BY C.repairYear DESC";
+
+   // Option 17: customers by last name and first name patterns, when the customer index is not loaded;
+   // lname is blank padded and its pattern has no trailing % when it is the whole name
+   public static final String FIND_CUSTOMERS =
+      "SELECT customerID, fname, lname FROM Customer WHERE rtrim(lname) LIKE ? AND fname LIKE ? "
+    + "ORDER BY lname, fname, customerID LIMIT ?";
+
+   private Queries () {
+   }
+
+}//end Queries
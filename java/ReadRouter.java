@@ -0,0 +1,200 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the queries of the reports to a replica of the database, a hot
+ * standby fed by streaming replication, while the inserts and the checks
+ * they make stay on the primary.
+ *
+ * Every replica.checkMs a background thread reads the current WAL position
+ * of the primary and the replayed WAL position of the replica. The replica
+ * holds every transaction committed before a primary position it has
+ * replayed, so the router knows the latest time the replica is known to be
+ * caught up to. A report goes to the replica when that time is
+ * - no more than replica.maxLagMs ago, and
+ * - after the last insert of the calling thread, so each thread (a menu
+ *   session, a LoadGenerator client) reads its own writes.
+ * Otherwise, or while the replica cannot be reached, the report goes to
+ * the primary.
+ *
+ * A replica that is not in recovery (a second primary) has no replay
+ * position and is taken as caught up. Needs PostgreSQL 10 or later.
+ *
+ * Configured by the replica.* system properties, see fromSystemProperties.
+ *
+ */
+public class ReadRouter {
+
+   private static final String PRIMARY_POSITION = "SELECT pg_current_wal_lsn()";
+   private static final String REPLAYED_POSITION = "SELECT pg_last_wal_replay_lsn()";
+
+   // primary WAL positions still to be replayed by the replica, oldest first
+   private static final int MAX_SAMPLES = 1024;
+
+   private final ConnectionPool _primary;
+   private final ConnectionPool _replica;
+   private final long _maxLagMs;
+   private final ScheduledExecutorService _checker;
+
+   // (time, position) pairs read from the primary; only the checker thread touches them
+   private final ArrayDeque<long[]> _samples = new ArrayDeque<long[]>();
+
+   // the replica holds every transaction committed before this time
+   private volatile long _caughtUpTo = 0;
+   private volatile boolean _replicaUp = false;
+   private volatile String _lastError = null;
+
+   // time of the last insert of each thread
+   private final ThreadLocal<long[]> _lastWrite = new ThreadLocal<long[]>() {
+      protected long[] initialValue () {
+         return new long[1];
+      }
+   };
+
+   // counters
+   private final AtomicLong _toReplica = new AtomicLong();
+   private final AtomicLong _staleReplica = new AtomicLong();
+   private final AtomicLong _ownWrites = new AtomicLong();
+
+   /**
+    * Starts checking the replica.
+    *
+    * @param primary the pool of the primary
+    * @param replica the pool of the replica
+    * @param maxLagMs the most the replica may be behind for a report to go there
+    * @param checkMs the time between two checks of the replica
+    */
+   public ReadRouter (ConnectionPool primary, ConnectionPool replica, long maxLagMs, long checkMs) {
+      this._primary = primary;
+      this._replica = replica;
+      this._maxLagMs = maxLagMs;
+      this._checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "replica-check");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      check();
+      this._checker.scheduleWithFixedDelay(new Runnable() {
+         public void run() { check(); }
+      }, checkMs, checkMs, TimeUnit.MILLISECONDS);
+   }//end ReadRouter
+
+   /**
+    * Creates a router configured from the replica.* system properties, or
+    * none when replica.port is not set:
+    *    -Dreplica.port=<port>           port of the replica
+    *    -Dreplica.host=localhost        host of the replica
+    *    -Dreplica.dbname=<dbname>       database name on the replica
+    *    -Dreplica.maxLagMs=1000         staleness bound of the reports
+    *    -Dreplica.checkMs=200           time between two checks of the replica
+    * The replica pool is sized by the pool.* properties, like the primary one.
+    *
+    * @param primary the pool of the primary
+    * @param dbname the database name on the primary
+    * @param user the user name used to login to the replica
+    * @param passwd the user login password
+    * @return the router, or null when no replica is configured
+    * @throws java.sql.SQLException when the replica pool cannot be opened
+    */
+   public static ReadRouter fromSystemProperties (ConnectionPool primary, String dbname, String user, String passwd) throws SQLException {
+      String port = System.getProperty("replica.port");
+      if (port == null || port.length() == 0) return null;
+      String url = "jdbc:postgresql://" + System.getProperty("replica.host", "localhost") + ":" + port + "/"
+         + System.getProperty("replica.dbname", dbname);
+      System.out.println ("Replica URL: " + url);
+      return new ReadRouter(primary, ConnectionPool.fromSystemProperties(url, user, passwd),
+                            Long.getLong("replica.maxLagMs", 1000L), Math.max(10L, Long.getLong("replica.checkMs", 200L)));
+   }//end fromSystemProperties
+
+   /**
+    * @return the pool the next report of the calling thread reads from
+    */
+   public ConnectionPool route () {
+      long caughtUpTo = _caughtUpTo;
+      if (!_replicaUp || System.currentTimeMillis() - caughtUpTo > _maxLagMs) {
+         _staleReplica.incrementAndGet();
+         return _primary;
+      }//end if
+      if (_lastWrite.get()[0] >= caughtUpTo) {
+         _ownWrites.incrementAndGet();
+         return _primary;
+      }//end if
+      _toReplica.incrementAndGet();
+      return _replica;
+   }//end route
+
+   /**
+    * Records that the calling thread committed an insert, so its reports
+    * go to the primary until the replica has replayed it.
+    */
+   public void wrote () {
+      _lastWrite.get()[0] = System.currentTimeMillis();
+   }//end wrote
+
+   /**
+    * Stops checking the replica and closes its pool.
+    */
+   public void close () {
+      _checker.shutdownNow();
+      _replica.close();
+   }//end close
+
+   /**
+    * @return a one line summary of the routing counters
+    */
+   public String stats () {
+      return "replica=" + _toReplica.get() + " primary(lag)=" + _staleReplica.get()
+         + " primary(own writes)=" + _ownWrites.get() + " lag="
+         + (_replicaUp ? (System.currentTimeMillis() - _caughtUpTo) + "ms" : "down (" + _lastError + ")");
+   }//end stats
+
+   // reads the positions of both servers and moves _caughtUpTo forward
+   private void check () {
+      try {
+         long now = System.currentTimeMillis();
+         long primary = position(_primary, PRIMARY_POSITION);
+         if (_samples.size() == MAX_SAMPLES) _samples.pollFirst();
+         _samples.addLast(new long[] {now, primary});
+
+         long replayed = position(_replica, REPLAYED_POSITION);
+         long caughtUpTo = _caughtUpTo;
+         while (!_samples.isEmpty() && (replayed < 0 || _samples.peekFirst()[1] <= replayed))
+            caughtUpTo = _samples.pollFirst()[0];
+         _caughtUpTo = caughtUpTo;
+         _replicaUp = true;
+      } catch (SQLException e) {
+         _replicaUp = false;
+         _lastError = e.getMessage();
+      }//end try
+   }//end check
+
+   // a WAL position as a number, or -1 when the server has none
+   private static long position (ConnectionPool pool, String query) throws SQLException {
+      Connection conn = pool.acquire();
+      try {
+         Statement stmt = conn.createStatement();
+         try {
+            ResultSet rs = stmt.executeQuery(query);
+            String lsn = rs.next() ? rs.getString(1) : null;
+            if (lsn == null) return -1;
+            int slash = lsn.indexOf('/');
+            return (Long.parseLong(lsn.substring(0, slash), 16) << 32) | Long.parseLong(lsn.substring(slash + 1), 16);
+         } finally {
+            stmt.close();
+         }//end try
+      } finally {
+         pool.release(conn);
+      }//end try
+   }//end position
+
+}//end ReadRouter
@@ -0,0 +1,212 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Read-through cache of the small, rarely changing tables: hotels, room
+ * types, maintenance company names and staff roles. The caches are filled
+ * at startup and bounded by refcache.capacity entries each; a miss is
+ * looked up in the database and cached, so a row created by another
+ * process is found on first use. Rows that do not exist are not cached.
+ *
+ */
+public class ReferenceData {
+
+   private static final String HOTEL_BY_ID =
+      "SELECT hotelID, address, manager FROM Hotel WHERE hotelID = ?";
+   private static final String ROOM_TYPE_BY_ID =
+      "SELECT roomType FROM Room WHERE hotelID = ? AND roomNo = ?";
+   private static final String COMPANY_BY_ID =
+      "SELECT name FROM MaintenanceCompany WHERE cmpID = ?";
+   private static final String STAFF_ROLE_BY_ID =
+      "SELECT role FROM Staff WHERE SSN = ?";
+
+   /**
+    * A row of the Hotel table.
+    */
+   public static final class Hotel {
+      public final int hotelID;
+      public final String address;
+      public final long manager;
+
+      Hotel(int hotelID, String address, long manager) {
+         this.hotelID = hotelID;
+         this.address = address;
+         this.manager = manager;
+      }
+   }//end Hotel
+
+   private final DBProject _esql;
+   private final LongCache<Hotel> _hotels;
+   private final LongCache<String> _roomTypes;
+   private final LongCache<String> _companies;
+   private final LongCache<String> _staffRoles;
+
+   /**
+    * Creates empty caches; see load() to fill them up front.
+    *
+    * @param esql the database misses are looked up in
+    * @param capacity maximum number of entries of each cache
+    */
+   public ReferenceData (DBProject esql, int capacity) {
+      this._esql = esql;
+      this._hotels = new LongCache<Hotel>(capacity);
+      this._roomTypes = new LongCache<String>(capacity);
+      this._companies = new LongCache<String>(capacity);
+      this._staffRoles = new LongCache<String>(capacity);
+   }//end ReferenceData
+
+   /**
+    * Fills every cache from its table, up to the cache capacity.
+    *
+    * @throws java.sql.SQLException when a table cannot be read
+    */
+   public void load () throws SQLException {
+      // global, see ShardRouter
+      _esql.scanGlobal("SELECT hotelID, address, manager FROM Hotel", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n) {
+               if (_hotels.size() >= _hotels.capacity()) return -1;
+               _hotels.put(rs.getInt(1), new Hotel(rs.getInt(1), rs.getString(2), rs.getLong(3)));
+            }//end for
+            return n;
+         }
+      });
+      _esql.scanQuery("SELECT hotelID, roomNo, roomType FROM Room", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n) {
+               if (_roomTypes.size() >= _roomTypes.capacity()) return -1;
+               _roomTypes.put(roomKey(rs.getInt(1), rs.getInt(2)), rs.getString(3).trim());
+            }//end for
+            return n;
+         }
+      });
+      _esql.scanGlobal("SELECT cmpID, name FROM MaintenanceCompany", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n) {
+               if (_companies.size() >= _companies.capacity()) return -1;
+               _companies.put(rs.getInt(1), rs.getString(2).trim());
+            }//end for
+            return n;
+         }
+      });
+      _esql.scanGlobal("SELECT SSN, role FROM Staff", new DBProject.PageHandler() {
+         public int page(ResultSet rs) throws SQLException {
+            int n = 0;
+            for (; rs.next(); ++n) {
+               if (_staffRoles.size() >= _staffRoles.capacity()) return -1;
+               _staffRoles.put(rs.getLong(1), rs.getString(2));
+            }//end for
+            return n;
+         }
+      });
+   }//end load
+
+   /**
+    * @param hotelID the hotel
+    * @return the hotel, or null if there is no such hotel
+    * @throws java.sql.SQLException when the lookup fails
+    */
+   public Hotel hotel (int hotelID) throws SQLException {
+      Hotel h = _hotels.get(hotelID);
+      if (h == null) {
+         ResultSet rs = _esql.executeHotelQuery(hotelID, HOTEL_BY_ID, hotelID);
+         if (!rs.next()) return null;
+         h = new Hotel(rs.getInt(1), rs.getString(2), rs.getLong(3));
+         _hotels.put(hotelID, h);
+      }//end if
+      return h;
+   }//end hotel
+
+   /**
+    * @param hotelID the hotel of the room
+    * @param roomNo the room number
+    * @return the room type, or null if the hotel has no such room
+    * @throws java.sql.SQLException when the lookup fails
+    */
+   public String roomType (int hotelID, int roomNo) throws SQLException {
+      long key = roomKey(hotelID, roomNo);
+      String type = _roomTypes.get(key);
+      if (type == null) {
+         ResultSet rs = _esql.executeHotelQuery(hotelID, ROOM_TYPE_BY_ID, hotelID, roomNo);
+         if (!rs.next()) return null;
+         type = rs.getString(1).trim();
+         _roomTypes.put(key, type);
+      }//end if
+      return type;
+   }//end roomType
+
+   /**
+    * @param cmpID the maintenance company
+    * @return its name, or null if there is no such company
+    * @throws java.sql.SQLException when the lookup fails
+    */
+   public String companyName (int cmpID) throws SQLException {
+      String name = _companies.get(cmpID);
+      if (name == null) {
+         ResultSet rs = _esql.executeQuery(COMPANY_BY_ID, cmpID);
+         if (!rs.next()) return null;
+         name = rs.getString(1).trim();
+         _companies.put(cmpID, name);
+      }//end if
+      return name;
+   }//end companyName
+
+   /**
+    * @param ssn the staff member
+    * @return the StaffRole of that staff member, or null if there is no such staff member
+    * @throws java.sql.SQLException when the lookup fails
+    */
+   public String staffRole (long ssn) throws SQLException {
+      String role = _staffRoles.get(ssn);
+      if (role == null) {
+         ResultSet rs = _esql.executeQuery(STAFF_ROLE_BY_ID, ssn);
+         if (!rs.next()) return null;
+         role = rs.getString(1);
+         _staffRoles.put(ssn, role);
+      }//end if
+      return role;
+   }//end staffRole
+
+   /**
+    * Records a room written by this process.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNo the room number
+    * @param roomType the room type
+    */
+   public void roomAdded (int hotelID, int roomNo, String roomType) {
+      _roomTypes.put(roomKey(hotelID, roomNo), roomType.trim());
+   }//end roomAdded
+
+   /**
+    * Records a maintenance company written by this process.
+    *
+    * @param cmpID the company ID
+    * @param name the company name
+    */
+   public void companyAdded (long cmpID, String name) {
+      _companies.put(cmpID, name.trim());
+   }//end companyAdded
+
+   /**
+    * @return a one line summary of the cache counters
+    */
+   public String stats () {
+      return "hotels=" + stats(_hotels) + " rooms=" + stats(_roomTypes)
+         + " companies=" + stats(_companies) + " staff=" + stats(_staffRoles);
+   }//end stats
+
+   private static String stats (LongCache<?> cache) {
+      return cache.size() + "/" + cache.capacity() + "(hits=" + cache.getHitCount()
+         + ",misses=" + cache.getMissCount() + ",evictions=" + cache.getEvictionCount() + ")";
+   }//end stats
+
+   // (hotelID, roomNo) packed into one key
+   private static long roomKey (int hotelID, int roomNo) {
+      return ((long) hotelID << 32) | (roomNo & 0xFFFFFFFFL);
+   }//end roomKey
+
+}//end ReferenceData
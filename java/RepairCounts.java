@@ -0,0 +1,94 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Calendar;
+
+/**
+ * Maintains the summary tables RepairCountByCompany and
+ * RepairCountByRoomYear (see sql/repair_counts.sql), which hold the repair
+ * counts behind menu options 15 and 16 so those reports read k rows of an
+ * index instead of grouping all of Repair.
+ *
+ * addRepair updates both tables in the transaction that inserts the
+ * repair. The first repair of a company, or of a room in a year, inserts
+ * its count row; when two such repairs race, the second insert fails on
+ * the primary key and rolls back its transaction (the 7.3 driver has no
+ * savepoints), and addRepair runs the transaction again, which then
+ * updates the row the first one committed. Rows written to Repair any
+ * other way are picked up by a rebuild:
+ * java DBProject <dbname> <port> <user> --rebuild-counts, which the bulk
+ * loader also runs.
+ *
+ */
+public final class RepairCounts {
+
+   private static final String[] REBUILD = {
+      "DELETE FROM RepairCountByCompany",
+      "INSERT INTO RepairCountByCompany (mCompany, repairs) "
+         + "SELECT mCompany, Count(*) FROM Repair GROUP BY mCompany",
+      "DELETE FROM RepairCountByRoomYear",
+      // Count(repairType) as in the original per-year report, which skips repairs without a type
+      "INSERT INTO RepairCountByRoomYear (hotelID, roomNo, repairYear, repairs) "
+         + "SELECT hotelID, roomNo, EXTRACT(YEAR FROM repairDate), Count(repairType) FROM Repair "
+         + "GROUP BY hotelID, roomNo, EXTRACT(YEAR FROM repairDate)"
+   };
+
+   private RepairCounts () {
+   }
+
+   /**
+    * Counts a repair just inserted on conn, inside the same transaction.
+    *
+    * @param esql runs the statements
+    * @param conn the connection holding the transaction that inserted the repair
+    * @param hotelID the hotel of the repaired room
+    * @param roomNo the repaired room
+    * @param mCompany the company that made the repair
+    * @param repairDate the date of the repair
+    * @param typed false when the repair has no repairType
+    * @throws java.sql.SQLException when the counts cannot be updated
+    */
+   public static void repairAdded (DBProject esql, Connection conn, int hotelID, int roomNo, int mCompany,
+                                   java.util.Date repairDate, boolean typed) throws SQLException {
+      if (esql.executeUpdate(conn, Queries.COUNT_COMPANY_REPAIR, mCompany) == 0)
+         esql.executeUpdate(conn, Queries.FIRST_COMPANY_REPAIR, mCompany);
+
+      Calendar cal = Calendar.getInstance();
+      cal.setTime(repairDate);
+      int year = cal.get(Calendar.YEAR);
+      int n = typed ? 1 : 0;
+      if (esql.executeUpdate(conn, Queries.COUNT_ROOM_YEAR_REPAIR, n, hotelID, roomNo, year) == 0)
+         esql.executeUpdate(conn, Queries.FIRST_ROOM_YEAR_REPAIR, hotelID, roomNo, year, n);
+   }//end repairAdded
+
+   /**
+    * @param e the error of a transaction that called repairAdded
+    * @return true when it failed because another transaction inserted the same count row first
+    */
+   public static boolean lostFirstCount (SQLException e) {
+      return String.valueOf(e.getMessage()).toLowerCase().contains("repaircountby")
+         && ("23505".equals(e.getSQLState()) || String.valueOf(e.getMessage()).contains("duplicate key"));
+   }//end lostFirstCount
+
+   /**
+    * Recomputes both summary tables from Repair in one transaction.
+    *
+    * @param conn the connection to use; left in autocommit mode
+    * @throws java.sql.SQLException when a statement fails
+    */
+   public static void rebuild (Connection conn) throws SQLException {
+      conn.setAutoCommit(false);
+      Statement stmt = conn.createStatement();
+      try {
+         for (String sql : REBUILD) stmt.executeUpdate(sql);
+         conn.commit();
+      } catch (SQLException e) {
+         conn.rollback();
+         throw e;
+      } finally {
+         stmt.close();
+         conn.setAutoCommit(true);
+      }//end try
+   }//end rebuild
+
+}//end RepairCounts
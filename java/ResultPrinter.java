@@ -0,0 +1,255 @@
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints query results to standard out through one shared, buffered
+ * writer. Rows are written as they are read, so a result never has to be
+ * held in memory as a whole; only the aligned table format keeps the
+ * first SAMPLE_ROWS rows back to size its columns.
+ *
+ * A printer holds the state of one result and is not shared between
+ * threads; the underlying writer is, one page of rows at a time.
+ *
+ */
+public class ResultPrinter {
+
+   /**
+    * The supported output formats.
+    */
+   public enum Format { TABLE, TSV, CSV }
+
+   // rows used to work out the column widths of the aligned table format
+   private static final int SAMPLE_ROWS = 100;
+
+   // buffered writer reused by every printer
+   private static final PrintWriter OUT = new PrintWriter(new BufferedWriter(
+      new OutputStreamWriter(System.out), 1 << 16), false);
+
+   // writer of the printers that write nowhere
+   static final Writer NOWHERE = new Writer() {
+      public void write (char[] buf, int off, int len) {}
+      public void flush () {}
+      public void close () {}
+   };
+
+   private final PrintWriter _out;
+   private final Format _format;
+   private final int _maxRows;
+
+   private String[] _header = null;
+   private int[] _widths = null;
+   private List<String[]> _sample = new ArrayList<String[]>();
+   private int _rows = 0;
+   private long _chars = 0;
+   private boolean _truncated = false;
+
+   /**
+    * @param out where the rows are written
+    * @param format the output format
+    * @param maxRows stop after this many rows, or 0 for no limit
+    */
+   public ResultPrinter (Writer out, Format format, int maxRows) {
+      this._out = out instanceof PrintWriter ? (PrintWriter) out : new PrintWriter(out);
+      this._format = format;
+      this._maxRows = maxRows;
+   }//end ResultPrinter
+
+   /**
+    * Creates a printer on standard out configured from the output.*
+    * system properties.
+    *
+    * @return the new printer
+    */
+   public static ResultPrinter fromSystemProperties () {
+      Format format = Format.valueOf(System.getProperty("output.format", "table").toUpperCase());
+      return new ResultPrinter(OUT, format, Integer.getInteger("output.maxRows", 0));
+   }//end fromSystemProperties
+
+   /**
+    * Creates a printer that formats the rows as TSV and drops them, for
+    * when only the cost of running a report matters.
+    *
+    * @return the new printer
+    */
+   public static ResultPrinter discard () {
+      return new ResultPrinter(NOWHERE, Format.TSV, 0);
+   }//end discard
+
+   /**
+    * Prints the rows of a result set, or of one page of a cursor. Can be
+    * called repeatedly for the pages of the same result.
+    *
+    * @param rs the rows to print
+    * @return the number of rows printed, which is less than the number of
+    *         rows in rs once the row cap is reached
+    * @throws java.sql.SQLException when the rows cannot be read
+    */
+   public int print (ResultSet rs) throws SQLException {
+      ResultSetMetaData rsmd = rs.getMetaData ();
+      int numCol = rsmd.getColumnCount ();
+      if (_header == null) {
+         _header = new String[numCol];
+         for (int i = 1; i <= numCol; ++i)
+            _header[i - 1] = rsmd.getColumnName (i);
+      }//end if
+
+      int printed = 0;
+      synchronized (_out) {
+         while (!isFull() && rs.next()) {
+            String[] row = new String[numCol];
+            for (int i = 1; i <= numCol; ++i) {
+               row[i - 1] = rs.getString (i);
+               if (row[i - 1] != null) _chars += row[i - 1].length ();
+            }//end for
+            emit(row);
+            ++printed;
+         }//end while
+         if (isFull() && rs.next()) _truncated = true;
+         _out.flush();
+      }//end synchronized
+      return printed;
+   }//end print
+
+   /**
+    * Prints rows computed in memory instead of read from the database.
+    *
+    * @param header the column names
+    * @param rows the rows to print, one value per column
+    * @return the number of rows printed
+    */
+   public int print (String[] header, List<String[]> rows) {
+      if (_header == null) _header = header.clone();
+      int printed = 0;
+      synchronized (_out) {
+         for (String[] row : rows) {
+            if (isFull()) {
+               _truncated = true;
+               break;
+            }//end if
+            for (String v : row)
+               if (v != null) _chars += v.length();
+            emit(row);
+            ++printed;
+         }//end for
+         _out.flush();
+      }//end synchronized
+      return printed;
+   }//end print
+
+   /**
+    * Writes whatever rows are still held back and a row count footer.
+    *
+    * @return the number of rows printed
+    */
+   public int finish () {
+      synchronized (_out) {
+         if (_format == Format.TABLE && _widths == null && _header != null) flushSample();
+         if (_format == Format.TABLE) {
+            _out.println("(" + _rows + (_rows == 1 ? " row" : " rows")
+                         + (_truncated ? ", truncated at " + _maxRows : "") + ")");
+         }//end if
+         _out.flush();
+      }//end synchronized
+      return _rows;
+   }//end finish
+
+   /**
+    * Prints a line of text, such as a single computed value.
+    *
+    * @param line the text to print
+    */
+   public void println (String line) {
+      synchronized (_out) {
+         _out.println(line);
+         _out.flush();
+      }//end synchronized
+   }//end println
+
+   /**
+    * @return the number of characters in the cells read so far
+    */
+   public long getCharsRead () {
+      return _chars;
+   }//end getCharsRead
+
+   /**
+    * @return true once the row cap has been reached
+    */
+   public boolean isFull () {
+      return _maxRows > 0 && _rows >= _maxRows;
+   }//end isFull
+
+   private void emit (String[] row) {
+      ++_rows;
+      if (_format != Format.TABLE) {
+         if (_rows == 1) writeDelimited(_header);
+         writeDelimited(row);
+         return;
+      }//end if
+      if (_widths == null) {
+         _sample.add(row);
+         if (_sample.size() >= SAMPLE_ROWS) flushSample();
+         return;
+      }//end if
+      writeAligned(row);
+   }//end emit
+
+   // sizes the columns from the header and the held back rows, then prints them
+   private void flushSample () {
+      _widths = new int[_header.length];
+      for (int i = 0; i < _header.length; ++i)
+         _widths[i] = _header[i].length();
+      for (String[] row : _sample)
+         for (int i = 0; i < row.length; ++i)
+            _widths[i] = Math.max(_widths[i], cell(row[i]).length());
+
+      writeAligned(_header);
+      for (int i = 0; i < _widths.length; ++i) {
+         if (i > 0) _out.print("-+-");
+         for (int j = 0; j < _widths[i]; ++j) _out.print('-');
+      }//end for
+      _out.println();
+      for (String[] row : _sample)
+         writeAligned(row);
+      _sample = null;
+   }//end flushSample
+
+   private void writeAligned (String[] row) {
+      StringBuilder line = new StringBuilder();
+      for (int i = 0; i < row.length; ++i) {
+         if (i > 0) line.append(" | ");
+         String v = cell(row[i]);
+         line.append(v);
+         if (i < row.length - 1)
+            for (int pad = v.length(); pad < _widths[i]; ++pad) line.append(' ');
+      }//end for
+      _out.println(line);
+   }//end writeAligned
+
+   private void writeDelimited (String[] row) {
+      StringBuilder line = new StringBuilder();
+      for (int i = 0; i < row.length; ++i) {
+         if (i > 0) line.append(_format == Format.CSV ? ',' : '\t');
+         String v = row[i] == null ? "" : row[i].trim();
+         if (_format == Format.CSV && (v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0))
+            v = "\"" + v.replace("\"", "\"\"") + "\"";
+         else if (_format == Format.TSV)
+            v = v.replace("\t", " ").replace("\n", " ");
+         line.append(v);
+      }//end for
+      _out.println(line);
+   }//end writeDelimited
+
+   // CHAR(n) columns come back space padded
+   private static String cell (String v) {
+      return v == null ? "null" : v.trim();
+   }//end cell
+
+}//end ResultPrinter
@@ -0,0 +1,304 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Spreads the hotels over several databases of the same schema (shards).
+ * A hotel, its rooms and everything booked, repaired or assigned in them
+ * live on one shard, picked by hotelID: by range when shards.ranges is
+ * set, by hash otherwise. Customer, MaintenanceCompany, Staff and Hotel
+ * are global tables: every shard holds all of their rows, and they are
+ * read from the first shard. Hotel has to be among them because every
+ * Staff row references the Hotel that employs it; with all of Staff and
+ * Hotel on each shard, the foreign keys hold on each shard. The first
+ * shard is the database given on the command line; it also holds the ID
+ * sequences, so IDs stay unique across shards.
+ *
+ * --load fills the shards: it loads the full data into every one of them,
+ * then keepOwnHotels deletes from each shard the rooms of the hotels it
+ * does not own, with their bookings, repairs, requests and assignments.
+ *
+ * Operations on one hotel run on its shard. Reports over all hotels run on
+ * every shard in parallel (see scatter) and their sorted results are
+ * merged on the client (see merge).
+ *
+ * Configured by the shards.* system properties, see fromSystemProperties.
+ *
+ */
+public class ShardRouter {
+
+   /**
+    * Work to run on one shard.
+    */
+   public interface ShardCall<T> {
+      /**
+       * @param pool the pool of the shard
+       * @return the result of the shard
+       * @throws java.sql.SQLException when a statement fails
+       */
+      T call (ConnectionPool pool) throws SQLException;
+   }//end ShardCall
+
+   private final ConnectionPool[] _pools;
+   // deletes the rows of one hotel, in foreign key order, see keepOwnHotels
+   private static final String[] HOTEL_ROWS = {
+      "DELETE FROM Request WHERE repairID IN (SELECT rID FROM Repair WHERE hotelID = ?)",
+      "DELETE FROM Assigned WHERE hotelID = ?",
+      "DELETE FROM Booking WHERE hotelID = ?",
+      "DELETE FROM Repair WHERE hotelID = ?",
+      "DELETE FROM Room WHERE hotelID = ?"
+   };
+
+   // lowest hotelID of every shard, ascending; null to spread hotels by hash
+   private final int[] _ranges;
+   private final ExecutorService _fanOut;
+
+   /**
+    * @param pools the pools of the shards, the first one being the pool of the command line database
+    * @param ranges the lowest hotelID of every shard, ascending, or null to spread the hotels by hash
+    */
+   public ShardRouter (ConnectionPool[] pools, int[] ranges) {
+      if (ranges != null && ranges.length != pools.length)
+         throw new IllegalArgumentException("shards.ranges needs one bound per shard, " + pools.length + " shards");
+      this._pools = pools.clone();
+      this._ranges = ranges == null ? null : ranges.clone();
+      this._fanOut = Executors.newFixedThreadPool(pools.length, new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "shard-fan-out");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }//end ShardRouter
+
+   /**
+    * Creates a router configured from the shards.* system properties, or
+    * none when shards.urls is not set:
+    *    -Dshards.urls=<host>:<port>/<dbname>,...   the shards after the first one
+    *    -Dshards.ranges=0,1000,...                 lowest hotelID of every shard, the
+    *                                               first shard included; hash when unset
+    * The pools of the shards are sized by the pool.* properties.
+    *
+    * @param first the pool of the command line database
+    * @param user the user name used to login to the shards
+    * @param passwd the user login password
+    * @return the router, or null when there is a single database
+    * @throws java.sql.SQLException when a shard cannot be reached
+    */
+   public static ShardRouter fromSystemProperties (ConnectionPool first, String user, String passwd) throws SQLException {
+      String urls = System.getProperty("shards.urls");
+      if (urls == null || urls.trim().length() == 0) return null;
+      List<ConnectionPool> pools = new ArrayList<ConnectionPool>();
+      pools.add(first);
+      for (String shard : urls.split(",")) {
+         String url = "jdbc:postgresql://" + shard.trim();
+         System.out.println ("Shard URL: " + url);
+         pools.add(ConnectionPool.fromSystemProperties(url, user, passwd));
+      }//end for
+
+      int[] ranges = null;
+      String bounds = System.getProperty("shards.ranges");
+      if (bounds != null && bounds.trim().length() > 0) {
+         String[] b = bounds.split(",");
+         ranges = new int[b.length];
+         for (int i = 0; i < b.length; ++i) {
+            ranges[i] = Integer.parseInt(b[i].trim());
+            if (i > 0 && ranges[i] <= ranges[i - 1])
+               throw new IllegalArgumentException("shards.ranges has to be ascending");
+         }//end for
+      }//end if
+      return new ShardRouter(pools.toArray(new ConnectionPool[pools.size()]), ranges);
+   }//end fromSystemProperties
+
+   /**
+    * @param hotelID the hotel
+    * @return the number of the shard holding the hotel
+    */
+   public int shard (int hotelID) {
+      if (_ranges == null) {
+         int h = hotelID * 0x9E3779B1;
+         return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % _pools.length;
+      }//end if
+      int shard = 0;
+      while (shard + 1 < _ranges.length && hotelID >= _ranges[shard + 1]) ++shard;
+      return shard;
+   }//end shard
+
+   /**
+    * @param hotelID the hotel
+    * @return the pool of the shard holding the hotel
+    */
+   public ConnectionPool forHotel (int hotelID) {
+      return _pools[shard(hotelID)];
+   }//end forHotel
+
+   /**
+    * @param shard the number of a shard
+    * @return its pool
+    */
+   public ConnectionPool get (int shard) {
+      return _pools[shard];
+   }//end get
+
+   /**
+    * @return the pools of every shard, the first shard first
+    */
+   public ConnectionPool[] pools () {
+      return _pools.clone();
+   }//end pools
+
+   /**
+    * @param conn a connection borrowed from one of the shards
+    * @return the pool it was borrowed from
+    */
+   public ConnectionPool owner (Connection conn) {
+      for (ConnectionPool pool : _pools)
+         if (pool.owns(conn)) return pool;
+      return _pools[0];
+   }//end owner
+
+   /**
+    * Deletes from every shard the rooms of the hotels other shards own and
+    * everything booked, repaired, requested or assigned in them, then
+    * counts the repairs left (see RepairCounts). Run once every shard
+    * holds the full data; the Hotel rows stay, as Hotel is global.
+    *
+    * @throws java.sql.SQLException when a shard cannot be trimmed; the shards before it are done
+    */
+   public void keepOwnHotels () throws SQLException {
+      for (int s = 0; s < _pools.length; ++s) {
+         Connection conn = _pools[s].acquire();
+         try {
+            List<Integer> others = new ArrayList<Integer>();
+            Statement stmt = conn.createStatement();
+            try {
+               ResultSet rs = stmt.executeQuery("SELECT hotelID FROM Hotel");
+               while (rs.next())
+                  if (shard(rs.getInt(1)) != s) others.add(Integer.valueOf(rs.getInt(1)));
+            } finally {
+               stmt.close();
+            }//end try
+
+            conn.setAutoCommit(false);
+            try {
+               for (String sql : HOTEL_ROWS) {
+                  if (others.isEmpty()) break;
+                  PreparedStatement delete = conn.prepareStatement(sql);
+                  try {
+                     for (Integer hotelID : others) {
+                        delete.setInt(1, hotelID.intValue());
+                        delete.addBatch();
+                     }//end for
+                     delete.executeBatch();
+                  } finally {
+                     delete.close();
+                  }//end try
+               }//end for
+               conn.commit();
+            } catch (SQLException e) {
+               conn.rollback();
+               throw e;
+            } finally {
+               conn.setAutoCommit(true);
+            }//end try
+            RepairCounts.rebuild(conn);
+            System.out.println("Shard " + s + ": removed the rooms of " + others.size() + " hotels of other shards");
+         } finally {
+            _pools[s].release(conn);
+         }//end try
+      }//end for
+   }//end keepOwnHotels
+
+   /**
+    * Runs the same work on every shard in parallel.
+    *
+    * @param work what to run on each shard
+    * @return the result of every shard, the first shard first
+    * @throws java.sql.SQLException the error of the first shard that failed
+    */
+   public <T> List<T> scatter (final ShardCall<T> work) throws SQLException {
+      List<Future<T>> futures = new ArrayList<Future<T>>(_pools.length);
+      for (final ConnectionPool pool : _pools) {
+         futures.add(_fanOut.submit(new Callable<T>() {
+            public T call () throws SQLException {
+               return work.call(pool);
+            }
+         }));
+      }//end for
+      List<T> results = new ArrayList<T>(_pools.length);
+      SQLException error = null;
+      for (Future<T> f : futures) {
+         try {
+            results.add(f.get());
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for the shards");
+         } catch (ExecutionException e) {
+            if (error == null) error = e.getCause() instanceof SQLException
+               ? (SQLException) e.getCause() : new SQLException(String.valueOf(e.getCause()));
+         }//end try
+      }//end for
+      if (error != null) throw error;
+      return results;
+   }//end scatter
+
+   /**
+    * Merges lists that are each sorted in the same order into the first
+    * limit rows of their union, keeping that order.
+    *
+    * @param sorted the lists, each sorted by order
+    * @param order the order of the lists
+    * @param limit the most rows to return
+    * @return the merged rows
+    */
+   public static List<String[]> merge (final List<List<String[]>> sorted, final Comparator<String[]> order, int limit) {
+      // the next row of every list, as (list, position)
+      PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Math.max(1, sorted.size()), new Comparator<int[]>() {
+         public int compare (int[] a, int[] b) {
+            return order.compare(sorted.get(a[0]).get(a[1]), sorted.get(b[0]).get(b[1]));
+         }
+      });
+      for (int i = 0; i < sorted.size(); ++i)
+         if (!sorted.get(i).isEmpty()) heads.add(new int[] {i, 0});
+      List<String[]> rows = new ArrayList<String[]>();
+      while (rows.size() < limit && !heads.isEmpty()) {
+         int[] head = heads.poll();
+         List<String[]> list = sorted.get(head[0]);
+         rows.add(list.get(head[1]));
+         if (++head[1] < list.size()) heads.add(head);
+      }//end while
+      return rows;
+   }//end merge
+
+   /**
+    * Stops the fan-out threads and closes the pools of the shards after
+    * the first one.
+    */
+   public void close () {
+      _fanOut.shutdownNow();
+      for (int i = 1; i < _pools.length; ++i) _pools[i].close();
+   }//end close
+
+   /**
+    * @return a one line summary of the pools of the shards
+    */
+   public String stats () {
+      StringBuilder s = new StringBuilder();
+      for (int i = 0; i < _pools.length; ++i)
+         s.append(i == 0 ? "" : " ").append("shard").append(i).append("=[").append(_pools[i].stats()).append(']');
+      return s.toString();
+   }//end stats
+
+}//end ShardRouter
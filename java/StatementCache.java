@@ -0,0 +1,166 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the prepared statements of one physical connection, keyed by SQL
+ * text and evicted least-recently-used first. A statement that has been
+ * executed serverPrepareThreshold times is switched to a server side
+ * prepared statement so that Postgres stops re-parsing and re-planning it.
+ *
+ * A cache belongs to a single connection and, like the connection, is
+ * only used by the thread that currently borrowed it from the pool.
+ *
+ */
+public class StatementCache {
+
+   private final Connection _conn;
+   private final int _capacity;
+   private final int _serverPrepareThreshold;
+
+   // access ordered, so the eldest entry is the least recently used one
+   private final LinkedHashMap<String, Entry> _statements;
+
+   private long _hits = 0;
+   private long _misses = 0;
+   private long _evictions = 0;
+   private long _promotions = 0;
+
+   /*
+    * A cached statement together with the number of times it was handed out.
+    */
+   private static final class Entry {
+      final PreparedStatement stmt;
+      int uses = 0;
+      boolean serverPrepared = false;
+
+      Entry(PreparedStatement stmt) {
+         this.stmt = stmt;
+      }
+   }//end Entry
+
+   /**
+    * Creates an empty cache for the given connection.
+    *
+    * @param conn the connection the statements are prepared on
+    * @param capacity maximum number of statements kept open
+    * @param serverPrepareThreshold number of uses after which a statement is
+    *        prepared on the server, or 0 to never do so
+    */
+   public StatementCache (Connection conn, int capacity, int serverPrepareThreshold) {
+      this._conn = conn;
+      this._capacity = capacity;
+      this._serverPrepareThreshold = serverPrepareThreshold;
+      this._statements = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+   }//end StatementCache
+
+   /**
+    * Creates a cache configured from the stmt.* system properties.
+    *
+    * @param conn the connection the statements are prepared on
+    * @return the new cache
+    */
+   public static StatementCache fromSystemProperties (Connection conn) {
+      return new StatementCache(conn,
+         Integer.getInteger("stmt.cacheSize", 32),
+         Integer.getInteger("stmt.serverPrepareThreshold", 5));
+   }//end fromSystemProperties
+
+   /**
+    * Returns the prepared statement for the given SQL text, preparing it on
+    * first use. The statement stays owned by the cache: callers must not
+    * close it, only consume and close its result sets.
+    *
+    * @param sql the SQL text with ? placeholders
+    * @return a prepared statement with its parameters cleared
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare (String sql) throws SQLException {
+      return prepare(sql, true);
+   }//end prepare
+
+   /**
+    * Same as prepare(sql), for statements that Postgres cannot run as a
+    * server side prepared statement (e.g. DECLARE or FETCH) when
+    * serverPrepare is false.
+    *
+    * @param sql the SQL text with ? placeholders
+    * @param serverPrepare whether the statement may be promoted
+    * @return a prepared statement with its parameters cleared
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare (String sql, boolean serverPrepare) throws SQLException {
+      Entry entry = _statements.get(sql);
+      if (entry == null) {
+         ++_misses;
+         entry = new Entry(_conn.prepareStatement(sql));
+         _statements.put(sql, entry);
+         evictOverflow();
+      } else {
+         ++_hits;
+         entry.stmt.clearParameters();
+      }//end if
+
+      ++entry.uses;
+      if (serverPrepare && !entry.serverPrepared && _serverPrepareThreshold > 0
+          && entry.uses >= _serverPrepareThreshold
+          && entry.stmt instanceof org.postgresql.PGStatement) {
+         ((org.postgresql.PGStatement) entry.stmt).setUseServerPrepare(true);
+         entry.serverPrepared = true;
+         ++_promotions;
+      }//end if
+      return entry.stmt;
+   }//end prepare
+
+   /**
+    * Closes and forgets the statement for the given SQL text, e.g. after it
+    * failed in a way that may have left it unusable.
+    *
+    * @param sql the SQL text the statement was prepared from
+    */
+   public void discard (String sql) {
+      Entry entry = _statements.remove(sql);
+      if (entry != null) closeQuietly(entry.stmt);
+   }//end discard
+
+   /**
+    * Closes every cached statement.
+    */
+   public void close () {
+      for (Entry entry : _statements.values())
+         closeQuietly(entry.stmt);
+      _statements.clear();
+   }//end close
+
+   private void evictOverflow () {
+      Iterator<Map.Entry<String, Entry>> it = _statements.entrySet().iterator();
+      while (_statements.size() > _capacity && it.hasNext()) {
+         Entry eldest = it.next().getValue();
+         it.remove();
+         closeQuietly(eldest.stmt);
+         ++_evictions;
+      }//end while
+   }//end evictOverflow
+
+   private static void closeQuietly (PreparedStatement stmt) {
+      try {
+         stmt.close();
+      } catch (SQLException e) {
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+   public int size () { return _statements.size(); }
+
+   public long getHitCount () { return _hits; }
+
+   public long getMissCount () { return _misses; }
+
+   public long getEvictionCount () { return _evictions; }
+
+   public long getPromotionCount () { return _promotions; }
+
+}//end StatementCache
@@ -0,0 +1,326 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group commit for the inserts of the menu operations. Callers hand in a
+ * statement (or a small transaction) and get a Future; one committer
+ * thread collects what was handed in until writes.batchSize commands are
+ * waiting or the first of them has waited writes.maxDelayMs, then runs
+ * them all in one transaction. Runs of the same statement go to the
+ * database as one JDBC batch, so a burst of bookings costs one round trip
+ * and one WAL flush instead of one each.
+ *
+ * Commands run in the order they were handed in. When the transaction
+ * fails, for instance on a foreign key violation of a single booking, it
+ * is rolled back and every command of the batch is run again on its own,
+ * so each caller sees its own result or error. (The 7.3 driver has no
+ * savepoints to skip just the failing command.) A RuntimeException of a
+ * command is handled like an SQLException, wrapped in one for its caller,
+ * so the committer thread never dies with callers waiting on it.
+ *
+ * Used by DBProject when -Dwrites.groupCommit=true.
+ *
+ */
+public class WritePipeline {
+
+   /*
+    * One statement or transaction handed in, and the Future of its caller.
+    */
+   private static final class Command implements Future<Integer> {
+      final String sql;
+      final Object[] params;
+      final DBProject.Transaction work;
+      final long enqueued = System.nanoTime();
+
+      private final CountDownLatch _done = new CountDownLatch(1);
+      private int _rows;
+      private SQLException _error;
+
+      Command (String sql, Object[] params, DBProject.Transaction work) {
+         this.sql = sql;
+         this.params = params;
+         this.work = work;
+      }
+
+      void complete (int rows, SQLException error) {
+         _rows = rows;
+         _error = error;
+         _done.countDown();
+      }
+
+      public boolean cancel (boolean mayInterrupt) {
+         return false;
+      }
+
+      public boolean isCancelled () {
+         return false;
+      }
+
+      public boolean isDone () {
+         return _done.getCount() == 0;
+      }
+
+      public Integer get () throws InterruptedException, ExecutionException {
+         _done.await();
+         return result();
+      }
+
+      public Integer get (long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+         if (!_done.await(timeout, unit)) throw new TimeoutException();
+         return result();
+      }
+
+      private Integer result () throws ExecutionException {
+         if (_error != null) throw new ExecutionException(_error);
+         return Integer.valueOf(_rows);
+      }
+   }//end Command
+
+   // marks the end of the queue
+   private static final Command STOP = new Command(null, null, null);
+
+   private final DBProject _esql;
+   private final ConnectionPool _pool;
+   private final int _batchSize;
+   private final long _maxDelayNanos;
+   private final BlockingQueue<Command> _queue = new LinkedBlockingQueue<Command>();
+   private final Thread _committer;
+   private volatile boolean _closed = false;
+
+   /**
+    * Starts the committer thread.
+    *
+    * @param esql the database to write to
+    * @param pool the pool of the database, or of the shard, the commands run on
+    * @param batchSize the most commands committed together
+    * @param maxDelayMs the longest a command waits for others to join its batch
+    */
+   public WritePipeline (DBProject esql, ConnectionPool pool, int batchSize, long maxDelayMs) {
+      this._esql = esql;
+      this._pool = pool;
+      this._batchSize = Math.max(1, batchSize);
+      this._maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMs));
+      this._committer = new Thread(new Runnable() {
+         public void run () {
+            commitLoop();
+         }
+      }, "write-pipeline");
+      this._committer.setDaemon(true);
+      this._committer.start();
+   }//end WritePipeline
+
+   /**
+    * Hands in an insert, update or delete.
+    *
+    * @param sql the statement, with a ? placeholder for every parameter
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows the statement changed, once it is committed
+    */
+   public Future<Integer> submit (String sql, Object... params) {
+      return enqueue(new Command(sql, params, null));
+   }//end submit
+
+   /**
+    * Hands in statements that have to run together. They run in the
+    * transaction of the batch, after the commands handed in before them.
+    *
+    * @param work the statements to run
+    * @return 0, once the work is committed
+    */
+   public Future<Integer> submit (DBProject.Transaction work) {
+      return enqueue(new Command(null, null, work));
+   }//end submit
+
+   /**
+    * Commits whatever was handed in and stops the committer thread.
+    */
+   public void close () {
+      _closed = true;
+      _queue.add(STOP);
+      try {
+         _committer.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }//end try
+   }//end close
+
+   /**
+    * Waits for a command handed in to this pipeline.
+    *
+    * @param result the Future returned by submit
+    * @return the number of rows changed
+    * @throws java.sql.SQLException the error of the command, when it failed
+    */
+   public static int await (Future<Integer> result) throws SQLException {
+      try {
+         return result.get().intValue();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SQLException("interrupted while waiting for the commit");
+      } catch (ExecutionException e) {
+         throw (SQLException) e.getCause();
+      }//end try
+   }//end await
+
+   private Future<Integer> enqueue (Command c) {
+      if (_closed) {
+         c.complete(0, new SQLException("write pipeline is closed"));
+         return c;
+      }//end if
+      _queue.add(c);
+      return c;
+   }//end enqueue
+
+   private void commitLoop () {
+      List<Command> batch = new ArrayList<Command>(_batchSize);
+      boolean stop = false;
+      while (!stop) {
+         try {
+            Command first = _queue.take();
+            if (first == STOP) break;
+            batch.add(first);
+            // waits for more commands until the batch is full or the first one is due
+            long deadline = first.enqueued + _maxDelayNanos;
+            while (batch.size() < _batchSize) {
+               Command next = _queue.poll();
+               if (next == null) {
+                  long wait = deadline - System.nanoTime();
+                  if (wait <= 0) break;
+                  next = _queue.poll(wait, TimeUnit.NANOSECONDS);
+                  if (next == null) break;
+               }//end if
+               if (next == STOP) {
+                  stop = true;
+                  break;
+               }//end if
+               batch.add(next);
+            }//end while
+         } catch (InterruptedException e) {
+            stop = true;
+         }//end try
+         try {
+            if (!batch.isEmpty()) commit(batch);
+         } catch (RuntimeException e) {
+            // not one command's fault; fails the rest of the batch and goes on with the next one
+            SQLException error = wrap(e);
+            for (Command c : batch)
+               if (!c.isDone()) c.complete(0, error);
+         }//end try
+         batch.clear();
+      }//end while
+
+      // fails whatever was handed in after the end
+      Command left;
+      while ((left = _queue.poll()) != null)
+         if (left != STOP) left.complete(0, new SQLException("write pipeline is closed"));
+   }//end commitLoop
+
+   private void commit (List<Command> batch) {
+      Connection conn;
+      try {
+         conn = _pool.acquire();
+      } catch (SQLException e) {
+         for (Command c : batch) c.complete(0, e);
+         return;
+      }//end try
+
+      try {
+         int[] rows = new int[batch.size()];
+         boolean committed = false;
+         try {
+            conn.setAutoCommit(false);
+            runTogether(conn, batch, rows);
+            conn.commit();
+            committed = true;
+         } catch (SQLException e) {
+            conn.rollback();
+         } catch (RuntimeException e) {
+            conn.rollback();
+         }//end try
+
+         if (committed) {
+            for (int i = 0; i < rows.length; ++i) batch.get(i).complete(rows[i], null);
+            return;
+         }//end if
+         // runs every command on its own, so each caller gets its own error
+         for (Command c : batch) {
+            try {
+               c.complete(runAlone(conn, c), null);
+            } catch (SQLException e) {
+               conn.rollback();
+               c.complete(0, e);
+            } catch (RuntimeException e) {
+               conn.rollback();
+               c.complete(0, wrap(e));
+            }//end try
+         }//end for
+      } catch (SQLException e) {
+         // the connection is gone; whatever is not complete yet fails with it
+         for (Command c : batch)
+            if (!c.isDone()) c.complete(0, e);
+      } finally {
+         _pool.release(conn);
+      }//end try
+   }//end commit
+
+   // runs the commands in order, sending each run of the same statement as one JDBC batch
+   private void runTogether (Connection conn, List<Command> batch, int[] rows) throws SQLException {
+      int i = 0;
+      while (i < batch.size()) {
+         Command c = batch.get(i);
+         if (c.work != null) {
+            c.work.run(conn);
+            ++i;
+            continue;
+         }//end if
+         int end = i + 1;
+         while (end < batch.size() && c.sql.equals(batch.get(end).sql)) ++end;
+
+         PreparedStatement stmt = _pool.statements(conn).prepare(c.sql);
+         long t0 = System.nanoTime();
+         int total = 0;
+         if (end - i == 1) {
+            DBProject.bind(stmt, c.params);
+            total = rows[i] = stmt.executeUpdate();
+         } else {
+            for (int j = i; j < end; ++j) {
+               DBProject.bind(stmt, batch.get(j).params);
+               stmt.addBatch();
+            }//end for
+            int[] counts = stmt.executeBatch();
+            for (int j = 0; j < counts.length; ++j) total += rows[i + j] = Math.max(counts[j], 0);
+         }//end if
+         _esql.metrics().statement(c.sql, System.nanoTime() - t0, 0, total, 0, true);
+         i = end;
+      }//end while
+   }//end runTogether
+
+   // the error a caller gets for a RuntimeException of its command
+   private static SQLException wrap (RuntimeException e) {
+      SQLException error = new SQLException("write failed: " + e);
+      error.initCause(e);
+      return error;
+   }//end wrap
+
+   private int runAlone (Connection conn, Command c) throws SQLException {
+      if (c.work != null) {
+         c.work.run(conn);
+         conn.commit();
+         return 0;
+      }//end if
+      int rows = _esql.executeUpdate(conn, c.sql, c.params);
+      conn.commit();
+      return rows;
+   }//end runAlone
+
+}//end WritePipeline
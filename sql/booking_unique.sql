@@ -0,0 +1,15 @@
+-- One booking per room and day. The Java client serializes bookings of
+-- the same room within a process (see DBProject.bookRoom); this index
+-- rejects a second booking of a room and day made by another process.
+-- create.sql creates the same index; run this file on databases created
+-- before it existed. It fails if the table already holds such doubles,
+-- which the query below lists.
+--
+-- SELECT hotelID, roomNo, bookingDate, Count(*) FROM Booking
+-- GROUP BY hotelID, roomNo, bookingDate HAVING Count(*) > 1;
+
+DROP INDEX IF EXISTS booking_room_day_idx;
+
+CREATE UNIQUE INDEX booking_room_day_idx ON Booking(hotelID, roomNo, bookingDate);
+
+ANALYZE Booking;
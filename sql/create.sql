@@ -228,4 +228,60 @@ COPY Assigned(asgID,
 			  roomNo)
 FROM 'assigned.csv'
 WITH DELIMITER ',';		
-	
\ No newline at end of file
+	
+-- ID sequences for the Java client, started after the loaded data.
+-- sql/id_sequences.sql holds the same statements for existing databases.
+DROP SEQUENCE IF EXISTS customer_id_seq;
+DROP SEQUENCE IF EXISTS maintenancecompany_id_seq;
+DROP SEQUENCE IF EXISTS repair_id_seq;
+DROP SEQUENCE IF EXISTS booking_id_seq;
+DROP SEQUENCE IF EXISTS assigned_id_seq;
+DROP SEQUENCE IF EXISTS request_id_seq;
+
+CREATE SEQUENCE customer_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE maintenancecompany_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE repair_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE booking_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE assigned_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE request_id_seq INCREMENT BY 1000 MINVALUE 0;
+
+SELECT setval('customer_id_seq', (SELECT COALESCE(MAX(customerID), 0) + 1 FROM Customer), false);
+SELECT setval('maintenancecompany_id_seq', (SELECT COALESCE(MAX(cmpID), 0) + 1 FROM MaintenanceCompany), false);
+SELECT setval('repair_id_seq', (SELECT COALESCE(MAX(rID), 0) + 1 FROM Repair), false);
+SELECT setval('booking_id_seq', (SELECT COALESCE(MAX(bID), 0) + 1 FROM Booking), false);
+SELECT setval('assigned_id_seq', (SELECT COALESCE(MAX(asgID), 0) + 1 FROM Assigned), false);
+SELECT setval('request_id_seq', (SELECT COALESCE(MAX(reqID), 0) + 1 FROM Request), false);
+
+-- Secondary indexes for the report queries (menu options 8 to 16).
+-- sql/indexes.sql holds the same statements for existing databases.
+CREATE INDEX booking_hotel_date_idx ON Booking(hotelID, bookingDate, roomNo);
+CREATE INDEX booking_date_idx ON Booking(bookingDate);
+CREATE INDEX booking_customer_price_idx ON Booking(customer, price);
+CREATE INDEX repair_company_idx ON Repair(mCompany, rID);
+CREATE INDEX repair_room_date_idx ON Repair(hotelID, roomNo, repairDate);
+CREATE INDEX customer_name_idx ON Customer(fName, lName);
+CREATE INDEX maintenancecompany_name_idx ON MaintenanceCompany(name);
+
+-- One booking per room and day, see sql/booking_unique.sql.
+CREATE UNIQUE INDEX booking_room_day_idx ON Booking(hotelID, roomNo, bookingDate);
+
+-- Repair counts for options 15 and 16, kept by the client on every new
+-- repair. sql/repair_counts.sql holds the same statements for existing databases.
+DROP TABLE IF EXISTS RepairCountByCompany;
+DROP TABLE IF EXISTS RepairCountByRoomYear;
+CREATE TABLE RepairCountByCompany( mCompany Numeric NOT NULL,
+				   repairs Numeric NOT NULL,
+				   PRIMARY KEY(mCompany));
+CREATE INDEX repaircountbycompany_repairs_idx ON RepairCountByCompany(repairs);
+CREATE TABLE RepairCountByRoomYear( hotelID Numeric NOT NULL,
+				    roomNo Numeric NOT NULL,
+				    repairYear Numeric NOT NULL,
+				    repairs Numeric NOT NULL,
+				    PRIMARY KEY(hotelID, roomNo, repairYear));
+INSERT INTO RepairCountByCompany (mCompany, repairs)
+SELECT mCompany, Count(*) FROM Repair GROUP BY mCompany;
+INSERT INTO RepairCountByRoomYear (hotelID, roomNo, repairYear, repairs)
+SELECT hotelID, roomNo, EXTRACT(YEAR FROM repairDate), Count(repairType) FROM Repair
+GROUP BY hotelID, roomNo, EXTRACT(YEAR FROM repairDate);
+
+ANALYZE;
@@ -0,0 +1,30 @@
+-- ID sequences used by the Java client to allocate primary keys.
+-- Each sequence advances by 1000, so one nextval() reserves a block of
+-- 1000 IDs that the client hands out without further round trips
+-- (see IdAllocator.BLOCK_SIZE).
+--
+-- Migration for an existing database whose keys were assigned with
+-- SELECT MAX(id)+1: run this file once, with no client connected. Each
+-- sequence starts right after the largest key already in its table.
+-- The primary key columns stay Numeric; sequence values fit in them.
+
+DROP SEQUENCE IF EXISTS customer_id_seq;
+DROP SEQUENCE IF EXISTS maintenancecompany_id_seq;
+DROP SEQUENCE IF EXISTS repair_id_seq;
+DROP SEQUENCE IF EXISTS booking_id_seq;
+DROP SEQUENCE IF EXISTS assigned_id_seq;
+DROP SEQUENCE IF EXISTS request_id_seq;
+
+CREATE SEQUENCE customer_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE maintenancecompany_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE repair_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE booking_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE assigned_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE request_id_seq INCREMENT BY 1000 MINVALUE 0;
+
+SELECT setval('customer_id_seq', (SELECT COALESCE(MAX(customerID), 0) + 1 FROM Customer), false);
+SELECT setval('maintenancecompany_id_seq', (SELECT COALESCE(MAX(cmpID), 0) + 1 FROM MaintenanceCompany), false);
+SELECT setval('repair_id_seq', (SELECT COALESCE(MAX(rID), 0) + 1 FROM Repair), false);
+SELECT setval('booking_id_seq', (SELECT COALESCE(MAX(bID), 0) + 1 FROM Booking), false);
+SELECT setval('assigned_id_seq', (SELECT COALESCE(MAX(asgID), 0) + 1 FROM Assigned), false);
+SELECT setval('request_id_seq', (SELECT COALESCE(MAX(reqID), 0) + 1 FROM Request), false);
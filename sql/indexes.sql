@@ -0,0 +1,33 @@
+-- Secondary indexes for the report queries of the Java client (menu
+-- options 8 to 16). create.sql creates the same indexes; run this file
+-- on databases created before they existed. java PlanCheck checks that
+-- the report queries keep using them.
+
+DROP INDEX IF EXISTS booking_hotel_date_idx;
+DROP INDEX IF EXISTS booking_date_idx;
+DROP INDEX IF EXISTS booking_customer_price_idx;
+DROP INDEX IF EXISTS repair_company_idx;
+DROP INDEX IF EXISTS repair_room_date_idx;
+DROP INDEX IF EXISTS customer_name_idx;
+DROP INDEX IF EXISTS maintenancecompany_name_idx;
+
+-- options 9, 10, 13: bookings of one hotel, optionally within a date range;
+-- roomNo for the pages of option 10, in (bookingDate, roomNo) order
+CREATE INDEX booking_hotel_date_idx ON Booking(hotelID, bookingDate, roomNo);
+-- option 11: bookings of all hotels within a date range
+CREATE INDEX booking_date_idx ON Booking(bookingDate);
+-- options 12, 13: bookings of one customer, highest price first
+CREATE INDEX booking_customer_price_idx ON Booking(customer, price);
+-- options 14, 15: repairs of one maintenance company, by rID for the pages of option 14
+CREATE INDEX repair_company_idx ON Repair(mCompany, rID);
+-- option 16: repairs of one room, by date
+CREATE INDEX repair_room_date_idx ON Repair(hotelID, roomNo, repairDate);
+-- options 12, 13: customer lookup by name
+CREATE INDEX customer_name_idx ON Customer(fName, lName);
+-- option 14: maintenance company lookup by name
+CREATE INDEX maintenancecompany_name_idx ON MaintenanceCompany(name);
+
+ANALYZE Booking;
+ANALYZE Repair;
+ANALYZE Customer;
+ANALYZE MaintenanceCompany;
@@ -0,0 +1,102 @@
+-- Optional: yearly range partitioning of Booking by bookingDate and of
+-- Repair by repairDate (PostgreSQL 11 or later). Reports bounded by date
+-- (menu options 10, 11 and 13) then read only the partitions of the years
+-- they ask for.
+--
+-- Run once on a database created by create.sql. The rows are copied into
+-- new partitioned tables, one partition per year from the first booking
+-- (repair) to two years ahead, plus a default partition for anything
+-- outside. Keep partitions ahead of time and detach old ones with
+-- java DBProject <dbname> <port> <user> --maintain-partitions
+-- (see Partitions.java).
+--
+-- A primary key of a partitioned table must contain the partition key, so
+-- the keys become (bID, bookingDate) and (rID, repairDate). Request can
+-- then no longer reference Repair(rID), and requestRepairConstraint is
+-- dropped; the IDs stay unique through repair_id_seq.
+
+BEGIN;
+
+ALTER TABLE Booking RENAME TO Booking_unpartitioned;
+ALTER TABLE Repair RENAME TO Repair_unpartitioned;
+
+CREATE TABLE Booking( bID Numeric NOT NULL,
+		      customer Numeric NOT NULL DEFAULT 0,
+		      hotelID Numeric NOT NULL DEFAULT 0,
+		      roomNo Numeric NOT NULL DEFAULT 0,
+		      bookingDate Date NOT NULL,
+		      noOfPeople Numeric,
+		      price Numeric(6,2) NOT NULL,
+		      PRIMARY KEY(bID, bookingDate)) PARTITION BY RANGE (bookingDate);
+CREATE TABLE booking_default PARTITION OF Booking DEFAULT;
+
+CREATE TABLE Repair( rID Numeric NOT NULL,
+		     hotelID Numeric NOT NULL DEFAULT 0,
+		     roomNo Numeric NOT NULL DEFAULT 0,
+		     mCompany Numeric NOT NULL DEFAULT 0,
+		     repairDate Date NOT NULL,
+		     description TEXT,
+		     repairType CHAR(10),
+		     PRIMARY KEY(rID, repairDate)) PARTITION BY RANGE (repairDate);
+CREATE TABLE repair_default PARTITION OF Repair DEFAULT;
+
+-- one partition per year, named booking_y2015, repair_y2015, ...
+DO $$
+DECLARE
+   y int;
+BEGIN
+   FOR y IN SELECT generate_series(EXTRACT(YEAR FROM MIN(bookingDate))::int, EXTRACT(YEAR FROM now())::int + 2)
+            FROM Booking_unpartitioned LOOP
+      EXECUTE format('CREATE TABLE booking_y%s PARTITION OF Booking FOR VALUES FROM (%L) TO (%L)',
+                     y, make_date(y, 1, 1), make_date(y + 1, 1, 1));
+   END LOOP;
+   FOR y IN SELECT generate_series(EXTRACT(YEAR FROM MIN(repairDate))::int, EXTRACT(YEAR FROM now())::int + 2)
+            FROM Repair_unpartitioned LOOP
+      EXECUTE format('CREATE TABLE repair_y%s PARTITION OF Repair FOR VALUES FROM (%L) TO (%L)',
+                     y, make_date(y, 1, 1), make_date(y + 1, 1, 1));
+   END LOOP;
+END $$;
+
+INSERT INTO Booking SELECT * FROM Booking_unpartitioned;
+INSERT INTO Repair SELECT * FROM Repair_unpartitioned;
+
+-- also drops requestRepairConstraint and the indexes of the old tables
+DROP TABLE Booking_unpartitioned CASCADE;
+DROP TABLE Repair_unpartitioned CASCADE;
+
+ALTER TABLE Booking
+ADD CONSTRAINT bookingCustomerConstraint
+FOREIGN KEY(customer)
+REFERENCES Customer(customerID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Booking
+ADD CONSTRAINT bookingRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Repair
+ADD CONSTRAINT repairMcmpConstraint
+FOREIGN KEY(mCompany)
+REFERENCES MaintenanceCompany(cmpID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Repair
+ADD CONSTRAINT repairRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;
+
+-- the indexes of create.sql, created on every partition
+CREATE INDEX booking_hotel_date_idx ON Booking(hotelID, bookingDate, roomNo);
+CREATE INDEX booking_date_idx ON Booking(bookingDate);
+CREATE INDEX booking_customer_price_idx ON Booking(customer, price);
+CREATE UNIQUE INDEX booking_room_day_idx ON Booking(hotelID, roomNo, bookingDate);
+CREATE INDEX repair_company_idx ON Repair(mCompany, rID);
+CREATE INDEX repair_room_date_idx ON Repair(hotelID, roomNo, repairDate);
+
+COMMIT;
+
+ANALYZE Booking;
+ANALYZE Repair;
@@ -0,0 +1,32 @@
+-- Repair counts kept by the Java client for menu options 15 and 16.
+-- Option 4 (addRepair) updates them in the transaction that inserts the
+-- repair, so the reports read a few rows instead of grouping all of
+-- Repair. create.sql creates the same tables; run this file on databases
+-- created before they existed. To recompute the counts after writing to
+-- Repair by other means, run java DBProject <dbname> <port> <user> --rebuild-counts
+
+DROP TABLE IF EXISTS RepairCountByCompany;
+DROP TABLE IF EXISTS RepairCountByRoomYear;
+
+CREATE TABLE RepairCountByCompany( mCompany Numeric NOT NULL,
+				   repairs Numeric NOT NULL,
+				   PRIMARY KEY(mCompany));
+-- option 15: companies with the most repairs first
+CREATE INDEX repaircountbycompany_repairs_idx ON RepairCountByCompany(repairs);
+
+-- repairs counts only repairs with a repairType, as the per-year report always did
+CREATE TABLE RepairCountByRoomYear( hotelID Numeric NOT NULL,
+				    roomNo Numeric NOT NULL,
+				    repairYear Numeric NOT NULL,
+				    repairs Numeric NOT NULL,
+				    PRIMARY KEY(hotelID, roomNo, repairYear));
+
+INSERT INTO RepairCountByCompany (mCompany, repairs)
+SELECT mCompany, Count(*) FROM Repair GROUP BY mCompany;
+
+INSERT INTO RepairCountByRoomYear (hotelID, roomNo, repairYear, repairs)
+SELECT hotelID, roomNo, EXTRACT(YEAR FROM repairDate), Count(repairType) FROM Repair
+GROUP BY hotelID, roomNo, EXTRACT(YEAR FROM repairDate);
+
+ANALYZE RepairCountByCompany;
+ANALYZE RepairCountByRoomYear;